@@ -0,0 +1,168 @@
+package expressivo.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import expressivo.Commands;
+import expressivo.Expression;
+import expressivo.ParallelEvaluator;
+import expressivo.bench.ExpressionGenerator.Shape;
+
+/**
+ * Benchmarks the expression pipeline over generated expressions of every shape and size.
+ *
+ * For each operation, shape and size it reports throughput, latency percentiles and the
+ * allocation of the measuring thread. Run it from the project root after compiling src and
+ * bench into bin (as the Eclipse project does):
+ *
+ *   java -cp bin:lib/antlr.jar expressivo.bench.BenchmarkRunner [options]
+ *
+ * Options, each of the form --name=value:
+ *   --operations  comma-separated subset of parse, toString, equals, hashCode, differentiate,
+ *                 simplify (default: all)
+ *   --shapes      comma-separated subset of shallow, deep, wide, variable_heavy (default: all)
+ *   --sizes       comma-separated node counts (default: 10,1000,100000,1000000)
+ *   --seed        seed of the expression generator (default: 42)
+ *   --warmup      warmup time per benchmark in milliseconds (default: 500)
+ *   --time        measurement time per benchmark in milliseconds (default: 1000)
+ *   --caches      on to keep the parse and derivative caches that Commands uses, so repeated
+ *                 calls measure cache hits; off to measure every call in full (default: off)
+ *   --scaling     on to also measure ParallelEvaluator at every pool size up to the number of
+ *                 processors (default: off)
+ *   --csv         on to print comma-separated values instead of a table (default: off)
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * @param args options, as described above
+     */
+    public static void main(String[] args) {
+        final Map<String, String> options = new LinkedHashMap<>();
+        options.put("operations", "parse,toString,equals,hashCode,differentiate,simplify");
+        options.put("shapes", "shallow,deep,wide,variable_heavy");
+        options.put("sizes", "10,1000,100000,1000000");
+        options.put("seed", "42");
+        options.put("warmup", "500");
+        options.put("time", "1000");
+        options.put("caches", "off");
+        options.put("scaling", "off");
+        options.put("csv", "off");
+        for (String arg : args) {
+            final int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0 || !options.containsKey(arg.substring(2, equals))) {
+                System.err.println("Unknown option: " + arg + "; expected one of --" + String.join("=, --", options.keySet()) + "=");
+                System.exit(2);
+            }
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+
+        if (!"on".equals(options.get("caches"))) {
+            // must happen before Commands first uses the caches, which reads these properties
+            System.setProperty("expressivo.parseCache.size", "0");
+            System.setProperty("expressivo.derivativeCache.size", "0");
+        }
+        final boolean csv = "on".equals(options.get("csv"));
+        final long seed = Long.parseLong(options.get("seed"));
+        final Harness harness = new Harness(Long.parseLong(options.get("warmup")), Long.parseLong(options.get("time")));
+
+        System.out.println(csv
+                ? "operation,shape,nodes,operations,ops_per_s,p50_ns,p90_ns,p99_ns,p999_ns,bytes_per_op,alloc_mb_per_s"
+                : String.format(Locale.ROOT, "%-14s %-15s %8s %10s %12s %11s %11s %11s %11s %13s %10s",
+                        "operation", "shape", "nodes", "ops", "ops/s", "p50 ns", "p90 ns", "p99 ns", "p99.9 ns", "B/op", "MB/s"));
+        for (String shapeName : options.get("shapes").split(",")) {
+            final Shape shape = Shape.valueOf(shapeName.trim().toUpperCase(Locale.ROOT));
+            for (String sizeName : options.get("sizes").split(",")) {
+                final int size = Integer.parseInt(sizeName.trim());
+                final Expression expression = new ExpressionGenerator(seed).generate(shape, size);
+                final Expression copy = new ExpressionGenerator(seed).generate(shape, size);
+                final String source = ExpressionGenerator.toSource(expression);
+                final String variable = expression.variables().isEmpty() ? "x" : expression.variables().iterator().next();
+                final Map<String, Double> environment = Collections.singletonMap(variable, 2.0);
+
+                for (String operation : options.get("operations").split(",")) {
+                    final Supplier<?> body;
+                    switch (operation.trim()) {
+                    case "parse":
+                        body = () -> Expression.parse(source);
+                        break;
+                    case "toString":
+                        body = () -> expression.toString();
+                        break;
+                    case "equals":
+                        body = () -> expression.equals(copy);
+                        break;
+                    case "hashCode":
+                        body = () -> copy.hashCode();
+                        break;
+                    case "differentiate":
+                        body = () -> Commands.differentiate(source, variable);
+                        break;
+                    case "simplify":
+                        body = () -> Commands.simplify(source, environment);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown operation: " + operation);
+                    }
+                    report(csv, operation.trim(), shape.name().toLowerCase(Locale.ROOT), size, harness.measure(body));
+                }
+            }
+        }
+
+        if ("on".equals(options.get("scaling"))) {
+            scaling(harness, seed, csv);
+        }
+    }
+
+    /**
+     * Measure ParallelEvaluator over many environments at every pool size from 1 to the number
+     * of processors, doubling each time.
+     */
+    private static void scaling(Harness harness, long seed, boolean csv) {
+        final Expression expression = new ExpressionGenerator(seed).generate(Shape.SHALLOW, 1000);
+        final List<Map<String, Double>> environments = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            final Map<String, Double> environment = new LinkedHashMap<>();
+            for (String variable : expression.variables()) {
+                environment.put(variable, (double) (i % 17));
+            }
+            environments.add(environment);
+        }
+        final int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(processors, threads * 2)) {
+            final ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                final ParallelEvaluator evaluator = new ParallelEvaluator(pool);
+                report(csv, "parallel-" + threads, "shallow", environments.size(),
+                        harness.measure(() -> evaluator.evaluate(expression, environments)));
+            } finally {
+                pool.shutdown();
+            }
+            if (threads == processors) {
+                break;
+            }
+        }
+    }
+
+    private static void report(boolean csv, String operation, String shape, int nodes, Harness.Result result) {
+        if (csv) {
+            System.out.println(String.format(Locale.ROOT, "%s,%s,%d,%d,%.1f,%d,%d,%d,%d,%.1f,%.1f",
+                    operation, shape, nodes, result.getOperations(), result.getThroughput(),
+                    result.getLatency(0.5), result.getLatency(0.9), result.getLatency(0.99), result.getLatency(0.999),
+                    result.getBytesPerOperation(), result.getAllocationRate()));
+        } else {
+            System.out.println(String.format(Locale.ROOT, "%-14s %-15s %8d %10d %12.1f %11d %11d %11d %11d %13.1f %10.1f",
+                    operation, shape, nodes, result.getOperations(), result.getThroughput(),
+                    result.getLatency(0.5), result.getLatency(0.9), result.getLatency(0.99), result.getLatency(0.999),
+                    result.getBytesPerOperation(), result.getAllocationRate()));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package expressivo.bench;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import expressivo.Addition;
+import expressivo.Expression;
+import expressivo.Multiplication;
+import expressivo.Number;
+import expressivo.Variable;
+
+/**
+ * Generates random expressions of a given shape and approximate size, reproducibly from a seed.
+ *
+ * Products only appear near the leaves, so every shape stays a polynomial with about as many
+ * terms as nodes, and simplifying it takes time roughly linear in its size.
+ */
+public final class ExpressionGenerator {
+
+    /**
+     * Shapes of generated expressions.
+     */
+    public enum Shape {
+        /** Balanced tree of sums over small products of sums: depth logarithmic in size. */
+        SHALLOW,
+        /** Chain of sums nested randomly to the left and right: depth linear in size. */
+        DEEP,
+        /** Left-grouped sum of small products, as written without parentheses: one long chain. */
+        WIDE,
+        /** Balanced sum of products of two variables, with a new variable every few nodes. */
+        VARIABLE_HEAVY
+    }
+
+    private static final String[] FEW_VARIABLES = { "x", "y", "z" };
+
+    private final Random random;
+
+    /**
+     * @param seed seed of the random choices; equal seeds generate equal expressions
+     */
+    public ExpressionGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param shape shape of the expression
+     * @param nodes approximate number of nodes, at least 1
+     * @return a random expression of that shape with about that many nodes
+     */
+    public Expression generate(Shape shape, int nodes) {
+        switch (shape) {
+        case SHALLOW:
+            // (a + b) * (c + d) has 7 nodes, plus one addition to join it to the next unit
+            final List<Expression> units = new ArrayList<>();
+            for (int i = 0; i < Math.max(1, (nodes + 1) / 8); i++) {
+                units.add(new Multiplication(new Addition(leaf(), leaf()), new Addition(leaf(), leaf())));
+            }
+            return balancedSum(units);
+        case DEEP:
+            Expression chain = term();
+            for (int size = termSize(chain); size < nodes; ) {
+                final Expression next = term();
+                size += termSize(next) + 1;
+                chain = random.nextBoolean() ? new Addition(chain, next) : new Addition(next, chain);
+            }
+            return chain;
+        case WIDE:
+            Expression sum = term();
+            for (int size = termSize(sum); size < nodes; ) {
+                final Expression next = term();
+                size += termSize(next) + 1;
+                sum = new Addition(sum, next);
+            }
+            return sum;
+        case VARIABLE_HEAVY:
+        default:
+            final List<Expression> products = new ArrayList<>();
+            for (int i = 0; i < Math.max(1, (nodes + 1) / 4); i++) {
+                // about one new variable per product
+                products.add(new Multiplication(new Variable(name(i)), new Variable(name(random.nextInt(i + 1)))));
+            }
+            return balancedSum(products);
+        }
+    }
+
+    /**
+     * Print an expression so that Expression.parse() reads it back, structurally equal:
+     * integral numbers without a decimal point, and parentheses only where grouping needs them.
+     *
+     * @param expression an expression of Numbers with integral values, Variables, Additions and
+     *                   Multiplications
+     * @return parsable source text of expression
+     */
+    public static String toSource(Expression expression) {
+        final StringBuilder out = new StringBuilder();
+        // each entry is either a subexpression still to print or a literal piece of text
+        final Deque<Object> pending = new ArrayDeque<>();
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            final Object item = pending.pop();
+            if (item instanceof String) {
+                out.append((String) item);
+            } else if (item instanceof Number) {
+                out.append((long) ((Number) item).getValue());
+            } else if (item instanceof Variable) {
+                out.append(((Variable) item).getName());
+            } else {
+                final boolean isAddition = item instanceof Addition;
+                final Expression left = isAddition ? ((Addition) item).getLeft() : ((Multiplication) item).getLeft();
+                final Expression right = isAddition ? ((Addition) item).getRight() : ((Multiplication) item).getRight();
+                // both operators group to the left and * binds tighter than +
+                final int precedence = isAddition ? 1 : 2;
+                final boolean parenthesizeRight = precedence(right) <= precedence;
+                final boolean parenthesizeLeft = precedence(left) < precedence;
+                if (parenthesizeRight) {
+                    pending.push(")");
+                }
+                pending.push(right);
+                pending.push(parenthesizeRight ? (isAddition ? " + (" : " * (") : (isAddition ? " + " : " * "));
+                if (parenthesizeLeft) {
+                    pending.push(")");
+                }
+                pending.push(left);
+                if (parenthesizeLeft) {
+                    pending.push("(");
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static int precedence(Expression expression) {
+        if (expression instanceof Addition) {
+            return 1;
+        } else if (expression instanceof Multiplication) {
+            return 2;
+        }
+        return 3;
+    }
+
+    private Expression balancedSum(List<Expression> operands) {
+        List<Expression> level = operands;
+        while (level.size() > 1) {
+            final List<Expression> next = new ArrayList<>();
+            for (int i = 0; i + 1 < level.size(); i += 2) {
+                next.add(new Addition(level.get(i), level.get(i + 1)));
+            }
+            if (level.size() % 2 == 1) {
+                next.add(level.get(level.size() - 1));
+            }
+            level = next;
+        }
+        return level.get(0);
+    }
+
+    /**
+     * @return a leaf or a product of two leaves
+     */
+    private Expression term() {
+        return random.nextInt(3) == 0 ? leaf() : new Multiplication(leaf(), leaf());
+    }
+
+    private static int termSize(Expression term) {
+        return term instanceof Multiplication ? 3 : 1;
+    }
+
+    private Expression leaf() {
+        return random.nextBoolean()
+                ? new Number(random.nextInt(100))
+                : new Variable(FEW_VARIABLES[random.nextInt(FEW_VARIABLES.length)]);
+    }
+
+    /**
+     * @return a distinct variable name of letters for each i, in the sequence a, b, ..., z, ba, bb, ...
+     */
+    private static String name(int i) {
+        final StringBuilder name = new StringBuilder();
+        do {
+            name.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return name.reverse().toString();
+    }
+}
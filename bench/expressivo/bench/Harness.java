@@ -0,0 +1,128 @@
+package expressivo.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Times one operation: warms it up, then runs it repeatedly for a fixed time, recording the
+ * latency of every call and the bytes the measuring thread allocated meanwhile.
+ *
+ * Each call is timed with System.nanoTime(), which adds a few tens of nanoseconds to every
+ * sample, so latencies of the fastest operations are upper bounds.
+ */
+final class Harness {
+
+    /** Results are written here so the JIT cannot discard the operation as dead code. */
+    static volatile Object sink;
+
+    private final long warmupNanos;
+    private final long measureNanos;
+
+    /**
+     * @param warmupMillis time to run an operation before measuring it
+     * @param measureMillis time to measure an operation for; it runs at least once
+     */
+    Harness(long warmupMillis, long measureMillis) {
+        this.warmupNanos = warmupMillis * 1_000_000;
+        this.measureNanos = measureMillis * 1_000_000;
+    }
+
+    /**
+     * @param operation operation to measure
+     * @return measurement of operation
+     */
+    Result measure(Supplier<?> operation) {
+        final long warmupEnd = System.nanoTime() + warmupNanos;
+        do {
+            sink = operation.get();
+        } while (System.nanoTime() < warmupEnd);
+
+        long[] samples = new long[1024];
+        int count = 0;
+        final long allocatedBefore = allocatedBytes();
+        final long start = System.nanoTime();
+        final long end = start + measureNanos;
+        long now = start;
+        do {
+            final long before = now;
+            sink = operation.get();
+            now = System.nanoTime();
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = now - before;
+        } while (now < end);
+        final long allocated = allocatedBytes() - allocatedBefore;
+
+        final long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return new Result(count, now - start, sorted, allocatedBefore < 0 ? -1 : allocated);
+    }
+
+    /**
+     * @return bytes allocated so far by the current thread, or -1 if the JVM cannot tell
+     */
+    private static long allocatedBytes() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Measurement of one operation.
+     */
+    static final class Result {
+        private final int operations;
+        private final long elapsedNanos;
+        private final long[] sortedLatencies;
+        private final long allocatedBytes;
+
+        Result(int operations, long elapsedNanos, long[] sortedLatencies, long allocatedBytes) {
+            this.operations = operations;
+            this.elapsedNanos = elapsedNanos;
+            this.sortedLatencies = sortedLatencies;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        int getOperations() {
+            return operations;
+        }
+
+        /**
+         * @return operations per second
+         */
+        double getThroughput() {
+            return operations * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @param quantile between 0 and 1
+         * @return latency in nanoseconds below which that fraction of calls completed
+         */
+        long getLatency(double quantile) {
+            final int rank = (int) Math.ceil(quantile * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, Math.min(sortedLatencies.length - 1, rank))];
+        }
+
+        /**
+         * @return bytes allocated per operation, or -1 if unknown
+         */
+        double getBytesPerOperation() {
+            return allocatedBytes < 0 ? -1 : (double) allocatedBytes / operations;
+        }
+
+        /**
+         * @return allocation rate in megabytes per second, or -1 if unknown
+         */
+        double getAllocationRate() {
+            return allocatedBytes < 0 ? -1 : allocatedBytes * 1e9 / elapsedNanos / (1 << 20);
+        }
+    }
+}
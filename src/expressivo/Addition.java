@@ -5,28 +5,44 @@ import java.util.Objects;
 public class Addition implements Expression {
     private final Expression left;
     private final Expression right;
+    private final int hash;
 
     public Addition(Expression left, Expression right) {
         this.left = left;
         this.right = right;
+        this.hash = Objects.hash(left, right);
+    }
+
+    public Expression getLeft() {
+        return left;
+    }
+
+    public Expression getRight() {
+        return right;
     }
 
     @Override
     public String toString() {
-        return "(" + left.toString() + " + " + right.toString() + ")";
+        return ExpressionPrinter.print(this);
     }
 
     @Override
     public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
         if (obj instanceof Addition) {
             Addition other = (Addition) obj;
-            return left.equals(other.left) && right.equals(other.right);
+            return hash == other.hash && StructuralEquality.test(this, other);
+        }
+        if (obj instanceof Sum) {
+            return hash == obj.hashCode() && StructuralEquality.test(this, (Sum) obj);
         }
         return false;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(left, right);
+        return hash;
     }
 }
@@ -0,0 +1,294 @@
+package expressivo;
+
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates one expression over many rows of variable values stored column by column.
+ *
+ * The expression is compiled once into a postfix program for a stack machine whose stack
+ * entries are blocks of rows rather than single values. Each instruction then runs as a
+ * simple loop over a block of primitive doubles with no per-row dispatch, which the JIT
+ * compiles into SIMD code. Operations whose right operand is a variable or a number are
+ * fused into one instruction, so left-grouped sums and products never need more than one
+ * block of stack.
+ */
+public final class BatchEvaluator {
+
+    /** Rows processed per block; small enough that the working blocks stay in cache. */
+    private static final int BLOCK = 512;
+
+    private static final int PUSH_VARIABLE = 0;
+    private static final int PUSH_NUMBER = 1;
+    private static final int ADD = 2;
+    private static final int MULTIPLY = 3;
+    private static final int ADD_VARIABLE = 4;
+    private static final int MULTIPLY_VARIABLE = 5;
+    private static final int ADD_NUMBER = 6;
+    private static final int MULTIPLY_NUMBER = 7;
+
+    private final String[] variables;
+    private final int[] opcodes;
+    // for each instruction: index into variables, index into numbers, or unused
+    private final int[] operands;
+    private final double[] numbers;
+    private final int maxDepth;
+
+    private BatchEvaluator(String[] variables, int[] opcodes, int[] operands, double[] numbers, int maxDepth) {
+        this.variables = variables;
+        this.opcodes = opcodes;
+        this.operands = operands;
+        this.numbers = numbers;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @param expression expression to evaluate
+     * @return an evaluator for expression
+     */
+    public static BatchEvaluator compile(Expression expression) {
+        final Compiler compiler = new Compiler();
+        final Expression leaf = compiler.apply(expression);
+        if (leaf != null) {
+            compiler.push(leaf);
+        }
+        return compiler.finish();
+    }
+
+    /**
+     * @return names of the variables whose columns evaluate() reads
+     */
+    public List<String> variables() {
+        return Collections.unmodifiableList(Arrays.asList(variables));
+    }
+
+    /**
+     * Evaluate the expression for every row.
+     *
+     * @param columns maps each variable of the expression to its column of values, one per row;
+     *                every column must have at least output.length values
+     * @param output receives the value of the expression for row i at index i
+     * @throws IllegalArgumentException if a variable has no column or its column is too short
+     */
+    public void evaluate(Map<String, double[]> columns, double[] output) {
+        final double[][] inputs = new double[variables.length][];
+        for (int v = 0; v < variables.length; v++) {
+            inputs[v] = columns.get(variables[v]);
+            checkColumn(variables[v], inputs[v] == null ? -1 : inputs[v].length, output.length);
+        }
+        run(output, (block, start, length) -> {
+            for (int v = 0; v < inputs.length; v++) {
+                System.arraycopy(inputs[v], start, block[v], 0, length);
+            }
+        });
+    }
+
+    /**
+     * Evaluate the expression for every row, reading columns from buffers, which may be direct
+     * or memory-mapped. Values are read from each buffer's position onward; positions are not changed.
+     *
+     * @param columns maps each variable of the expression to its column of values, one per row;
+     *                every column must have at least output.length values remaining
+     * @param output receives the value of the expression for row i at index i
+     * @throws IllegalArgumentException if a variable has no column or its column is too short
+     */
+    public void evaluateBuffers(Map<String, DoubleBuffer> columns, double[] output) {
+        final DoubleBuffer[] inputs = new DoubleBuffer[variables.length];
+        for (int v = 0; v < variables.length; v++) {
+            final DoubleBuffer column = columns.get(variables[v]);
+            checkColumn(variables[v], column == null ? -1 : column.remaining(), output.length);
+            inputs[v] = column.duplicate();
+        }
+        run(output, (block, start, length) -> {
+            for (int v = 0; v < inputs.length; v++) {
+                inputs[v].get(block[v], 0, length);
+            }
+        });
+    }
+
+    private static void checkColumn(String variable, int length, int rows) {
+        if (length < 0) {
+            throw new IllegalArgumentException("No column for variable " + variable);
+        }
+        if (length < rows) {
+            throw new IllegalArgumentException("Column for " + variable + " has " + length + " values, need " + rows);
+        }
+    }
+
+    /**
+     * Copies the values of rows [start, start + length) into one block per variable.
+     */
+    private interface BlockLoader {
+        void load(double[][] block, int start, int length);
+    }
+
+    private void run(double[] output, BlockLoader loader) {
+        final double[][] inputs = new double[variables.length][BLOCK];
+        final double[][] stack = new double[maxDepth][BLOCK];
+        for (int start = 0; start < output.length; start += BLOCK) {
+            final int n = Math.min(BLOCK, output.length - start);
+            loader.load(inputs, start, n);
+            int top = -1;
+            for (int pc = 0; pc < opcodes.length; pc++) {
+                final int operand = operands[pc];
+                switch (opcodes[pc]) {
+                case PUSH_VARIABLE:
+                    System.arraycopy(inputs[operand], 0, stack[++top], 0, n);
+                    break;
+                case PUSH_NUMBER:
+                    Arrays.fill(stack[++top], 0, n, numbers[operand]);
+                    break;
+                case ADD:
+                    add(stack[top - 1], stack[top], n);
+                    top--;
+                    break;
+                case MULTIPLY:
+                    multiply(stack[top - 1], stack[top], n);
+                    top--;
+                    break;
+                case ADD_VARIABLE:
+                    add(stack[top], inputs[operand], n);
+                    break;
+                case MULTIPLY_VARIABLE:
+                    multiply(stack[top], inputs[operand], n);
+                    break;
+                case ADD_NUMBER:
+                    add(stack[top], numbers[operand], n);
+                    break;
+                case MULTIPLY_NUMBER:
+                    multiply(stack[top], numbers[operand], n);
+                    break;
+                default:
+                    throw new AssertionError("Unknown opcode " + opcodes[pc]);
+                }
+            }
+            System.arraycopy(stack[0], 0, output, start, n);
+        }
+    }
+
+    // Kernels: plain counted loops over primitive arrays, which C2 vectorizes.
+
+    private static void add(double[] target, double[] operand, int n) {
+        for (int i = 0; i < n; i++) {
+            target[i] += operand[i];
+        }
+    }
+
+    private static void multiply(double[] target, double[] operand, int n) {
+        for (int i = 0; i < n; i++) {
+            target[i] *= operand[i];
+        }
+    }
+
+    private static void add(double[] target, double operand, int n) {
+        for (int i = 0; i < n; i++) {
+            target[i] += operand;
+        }
+    }
+
+    private static void multiply(double[] target, double operand, int n) {
+        for (int i = 0; i < n; i++) {
+            target[i] *= operand;
+        }
+    }
+
+    /**
+     * Emits the postfix program. The fold result for a subexpression is the subexpression itself
+     * if it is a leaf whose push has been deferred, or null if its value is already on the stack.
+     * Deferring leaves lets the parent fuse them into its instruction; since + and * are
+     * commutative in floating point, a deferred left leaf can be applied after the right operand.
+     */
+    private static final class Compiler implements ExpressionFold<Expression> {
+        private final Map<String, Integer> variableIndexes = new HashMap<>();
+        private final List<String> variables = new ArrayList<>();
+        private int[] opcodes = new int[16];
+        private int[] operands = new int[16];
+        private double[] numbers = new double[4];
+        private int length;
+        private int numberCount;
+        private int depth;
+        private int maxDepth;
+
+        @Override
+        public Expression number(Number number) {
+            return number;
+        }
+
+        @Override
+        public Expression variable(Variable variable) {
+            return variable;
+        }
+
+        @Override
+        public Expression addition(Addition addition, Expression left, Expression right) {
+            return combine(left, right, ADD, ADD_VARIABLE, ADD_NUMBER);
+        }
+
+        @Override
+        public Expression multiplication(Multiplication multiplication, Expression left, Expression right) {
+            return combine(left, right, MULTIPLY, MULTIPLY_VARIABLE, MULTIPLY_NUMBER);
+        }
+
+        private Expression combine(Expression left, Expression right, int onStack, int withVariable, int withNumber) {
+            if (left != null && right != null) {
+                push(left);
+            }
+            final Expression leaf = right != null ? right : left;
+            if (leaf == null) {
+                emit(onStack, 0);
+                depth--;
+            } else if (leaf instanceof Variable) {
+                emit(withVariable, variableIndex(((Variable) leaf).getName()));
+            } else {
+                emit(withNumber, numberIndex(((Number) leaf).getValue()));
+            }
+            return null;
+        }
+
+        void push(Expression leaf) {
+            if (leaf instanceof Variable) {
+                emit(PUSH_VARIABLE, variableIndex(((Variable) leaf).getName()));
+            } else {
+                emit(PUSH_NUMBER, numberIndex(((Number) leaf).getValue()));
+            }
+            maxDepth = Math.max(maxDepth, ++depth);
+        }
+
+        BatchEvaluator finish() {
+            return new BatchEvaluator(variables.toArray(new String[0]), Arrays.copyOf(opcodes, length),
+                    Arrays.copyOf(operands, length), Arrays.copyOf(numbers, numberCount), maxDepth);
+        }
+
+        private void emit(int opcode, int operand) {
+            if (length == opcodes.length) {
+                opcodes = Arrays.copyOf(opcodes, length * 2);
+                operands = Arrays.copyOf(operands, length * 2);
+            }
+            opcodes[length] = opcode;
+            operands[length++] = operand;
+        }
+
+        private int variableIndex(String name) {
+            Integer index = variableIndexes.get(name);
+            if (index == null) {
+                index = variables.size();
+                variableIndexes.put(name, index);
+                variables.add(name);
+            }
+            return index;
+        }
+
+        private int numberIndex(double value) {
+            if (numberCount == numbers.length) {
+                numbers = Arrays.copyOf(numbers, numberCount * 2);
+            }
+            numbers[numberCount] = value;
+            return numberCount++;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package expressivo;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -17,20 +19,80 @@ public class Commands {
      * @throws IllegalArgumentException if the expression or variable is invalid
      */
     public static String differentiate(String expression, String variable) {
+        final OperationMetrics.Call call = OperationMetrics.ENABLED
+                ? OperationMetrics.global().begin(OperationMetrics.Operation.DIFFERENTIATE, inputSize(expression))
+                : null;
+        // Parse the input expression; invalid input is reported once, without an exception to rethrow
+        final ParseResult parsed = ParseCache.shared().tryParse(expression);
+        if (!parsed.isSuccess()) {
+            if (call != null) {
+                call.fail();
+            }
+            throw new IllegalArgumentException("Invalid expression or variable for differentiation: " + parsed.getShortMessage());
+        }
         try {
-            // Parse the input expression
-            Expression expr = Expression.parse(expression);
+            Expression expr = parsed.getExpression();
 
             // Differentiate the expression with respect to the given variable
             Expression differentiatedExpr = expr.differentiate(variable);
+            if (call != null) {
+                call.end(differentiatedExpr);
+            }
 
             // Return the result as a string
             return differentiatedExpr.toString();
         } catch (RuntimeException e) {
+            if (call != null) {
+                call.fail();
+            }
             throw new IllegalArgumentException("Invalid expression or variable for differentiation: " + e.getMessage());
         }
     }
 
+    /**
+     * Differentiate an expression with respect to a variable and simplify the derivative.
+     *
+     * @param expression the expression to differentiate
+     * @param variable the variable to differentiate by, a case-sensitive nonempty string of letters.
+     * @param environment maps variables to values, as for simplify(String, Map)
+     * @return the derivative of expression with respect to variable, simplified under environment:
+     *         equal to simplify(differentiate(expression, variable), environment). If environment
+     *         binds every variable of the expression, this is a single number.
+     * @throws IllegalArgumentException if the expression, variable or environment is invalid
+     */
+    public static String differentiate(String expression, String variable, Map<String, Double> environment) {
+        try {
+            return differentiate(ParseCache.shared().parse(expression), variable, environment).toString();
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid expression, variable or environment for differentiation: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Differentiate and simplify, as specified by differentiate(String, String, Map). When the
+     * environment binds every variable, the derivative is evaluated numerically in forward mode,
+     * without building the derivative expression.
+     */
+    static Expression differentiate(Expression expression, String variable, Map<String, Double> environment) {
+        return differentiate(expression, variable, Environment.of(environment));
+    }
+
+    /**
+     * Differentiate and simplify, as specified by differentiate(String, String, Map), under an
+     * environment looked up by slot.
+     */
+    static Expression differentiate(Expression expression, String variable, Environment environment) {
+        if (!Variable.isValidName(variable)) {
+            throw new IllegalArgumentException("Invalid variable: " + variable);
+        }
+        for (String name : expression.variables()) {
+            if (!environment.isBound(name)) {
+                return expression.differentiate(variable).simplify(environment);
+            }
+        }
+        return new Number(TaylorEvaluator.of(expression).derivative(environment, variable, 1));
+    }
+
     /**
      * Simplify an expression.
      * 
@@ -45,17 +107,74 @@ public class Commands {
      * @throws IllegalArgumentException if the expression is invalid
      */
     public static String simplify(String expression, Map<String, Double> environment) {
+        final OperationMetrics.Call call = OperationMetrics.ENABLED
+                ? OperationMetrics.global().begin(OperationMetrics.Operation.SIMPLIFY, inputSize(expression))
+                : null;
+        // Parse the input expression; invalid input is reported once, without an exception to rethrow
+        final ParseResult parsed = ParseCache.shared().tryParse(expression);
+        if (!parsed.isSuccess()) {
+            if (call != null) {
+                call.fail();
+            }
+            throw new IllegalArgumentException("Invalid expression or environment for simplification: " + parsed.getShortMessage());
+        }
         try {
-            // Parse the input expression
-            Expression expr = Expression.parse(expression);
+            Expression expr = parsed.getExpression();
 
             // Simplify the expression with the given environment
             Expression simplifiedExpr = expr.simplify(environment);
+            if (call != null) {
+                call.end(simplifiedExpr);
+            }
 
             // Return the result as a string
             return simplifiedExpr.toString();
+        } catch (RuntimeException e) {
+            if (call != null) {
+                call.fail();
+            }
+            throw new IllegalArgumentException("Invalid expression or environment for simplification: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Simplify an expression, looking variables up by slot instead of by name.
+     * 
+     * @param expression the expression to simplify
+     * @param environment values for variables, as specified for simplify(String, Map)
+     * @return the simplified expression, as specified by simplify(String, Map)
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public static String simplify(String expression, Environment environment) {
+        try {
+            return ParseCache.shared().parse(expression).simplify(environment).toString();
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid expression or environment for simplification: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Simplify an expression under each of many environments, using all available cores.
+     * 
+     * @param expression the expression to simplify
+     * @param environments environments as specified by simplify(String, Map)
+     * @return list whose entry i equals simplify(expression, environments.get(i))
+     * @throws IllegalArgumentException if the expression or some environment is invalid
+     */
+    public static List<String> simplifyAll(String expression, List<Map<String, Double>> environments) {
+        try {
+            Expression expr = ParseCache.shared().parse(expression);
+            List<String> results = new ArrayList<>(environments.size());
+            for (Expression simplifiedExpr : new ParallelEvaluator().simplify(expr, environments)) {
+                results.add(simplifiedExpr.toString());
+            }
+            return results;
         } catch (RuntimeException e) {
             throw new IllegalArgumentException("Invalid expression or environment for simplification: " + e.getMessage());
         }
     }
+
+    private static int inputSize(String expression) {
+        return expression == null ? 0 : expression.length();
+    }
 }
@@ -0,0 +1,293 @@
+package expressivo;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Common subexpression elimination.
+ *
+ * Structurally equal subtrees of an expression are merged into one shared node by interning,
+ * and the resulting DAG is numbered into a slot table in which every distinct subexpression
+ * has one slot and every operation refers to the slots of its operands. Evaluating, printing
+ * and differentiating through this form process each shared subexpression once.
+ */
+public final class CommonSubexpressions {
+
+    private static final int NUMBER = 0;
+    private static final int VARIABLE = 1;
+    private static final int ADDITION = 2;
+    private static final int MULTIPLICATION = 3;
+
+    private final Expression dag;
+    private final long treeSize;
+    // slot table in topological order: operands always have lower slots than their users
+    private final int[] kinds;
+    private final int[] lefts;
+    private final int[] rights;
+    private final double[] values;
+    private final String[] names;
+    private final int[] uses;
+
+    private CommonSubexpressions(Expression dag, long treeSize, SlotBuilder slots) {
+        this.dag = dag;
+        this.treeSize = treeSize;
+        this.kinds = Arrays.copyOf(slots.kinds, slots.count);
+        this.lefts = Arrays.copyOf(slots.lefts, slots.count);
+        this.rights = Arrays.copyOf(slots.rights, slots.count);
+        this.values = Arrays.copyOf(slots.values, slots.count);
+        this.names = Arrays.copyOf(slots.names, slots.count);
+        this.uses = new int[slots.count];
+        for (int slot = 0; slot < slots.count; slot++) {
+            if (kinds[slot] >= ADDITION) {
+                uses[lefts[slot]]++;
+                uses[rights[slot]]++;
+            }
+        }
+    }
+
+    /**
+     * Eliminate the common subexpressions of an expression.
+     *
+     * @param expression any expression, possibly already sharing subexpressions
+     * @return the shared form of expression
+     */
+    public static CommonSubexpressions of(Expression expression) {
+        final long treeSize = treeSize(expression);
+        final Expression dag = new ExpressionInterner().intern(expression);
+        final SlotBuilder slots = new SlotBuilder();
+        slots.applyShared(dag);
+        return new CommonSubexpressions(dag, treeSize, slots);
+    }
+
+    /**
+     * @return an expression structurally equal to the original, in which equal subexpressions
+     *         are the same object
+     */
+    public Expression getDag() {
+        return dag;
+    }
+
+    /**
+     * @return number of nodes of the original expression written out as a tree,
+     *         or Long.MAX_VALUE if that number does not fit in a long
+     */
+    public long getTreeSize() {
+        return treeSize;
+    }
+
+    /**
+     * @return number of distinct subexpressions, i.e. slots of the shared form
+     */
+    public int getSlotCount() {
+        return kinds.length;
+    }
+
+    /**
+     * @return number of tree nodes saved by sharing, getTreeSize() - getSlotCount()
+     */
+    public long getReduction() {
+        return treeSize - kinds.length;
+    }
+
+    /**
+     * Evaluate the expression, computing each distinct subexpression once.
+     *
+     * @param environment maps every variable of the expression to a value
+     * @return value of the expression
+     * @throws IllegalArgumentException if environment does not bind a variable of the expression
+     */
+    public double evaluate(Map<String, Double> environment) {
+        final double[] results = new double[kinds.length];
+        for (int slot = 0; slot < kinds.length; slot++) {
+            switch (kinds[slot]) {
+            case NUMBER:
+                results[slot] = values[slot];
+                break;
+            case VARIABLE:
+                final Double value = environment.get(names[slot]);
+                if (value == null) {
+                    throw new IllegalArgumentException("No value for variable " + names[slot]);
+                }
+                results[slot] = value;
+                break;
+            case ADDITION:
+                results[slot] = results[lefts[slot]] + results[rights[slot]];
+                break;
+            default:
+                results[slot] = results[lefts[slot]] * results[rights[slot]];
+                break;
+            }
+        }
+        return results[results.length - 1];
+    }
+
+    /**
+     * Differentiate the expression, differentiating each distinct subexpression once.
+     *
+     * @param variable the variable to differentiate by, a case-sensitive nonempty string of letters
+     * @return the derivative, as specified by Expression.differentiate(), sharing subexpressions
+     * @throws IllegalArgumentException if variable is not a valid variable name
+     */
+    public Expression differentiate(String variable) {
+        return new Differentiator(variable).applyShared(dag);
+    }
+
+    /**
+     * Print the shared form. Every operation used more than once is bound once to a name tN and
+     * referred to by that name, as in "let t0 = (x + 1.0) in (t0 * t0)"; with nothing shared,
+     * this is just the fully parenthesized expression. Not parsable by Expression.parse().
+     *
+     * @return let-bound representation of the expression
+     */
+    public String toLetString() {
+        final StringBuilder out = new StringBuilder();
+        final int[] bindings = new int[kinds.length];
+        Arrays.fill(bindings, -1);
+        int bound = 0;
+        for (int slot = 0; slot < kinds.length; slot++) {
+            if (kinds[slot] >= ADDITION && uses[slot] > 1) {
+                out.append(bound == 0 ? "let " : ", ").append('t').append(bound).append(" = ");
+                print(slot, bindings, out);
+                bindings[slot] = bound++;
+            }
+        }
+        if (bound > 0) {
+            out.append(" in ");
+        }
+        print(kinds.length - 1, bindings, out);
+        return out.toString();
+    }
+
+    /**
+     * Print a slot, inlining operands that are not bound to a name.
+     */
+    private void print(int root, int[] bindings, StringBuilder out) {
+        // a nonnegative entry is a slot to print; a negative entry is the character -entry - 1
+        final Deque<Integer> pending = new ArrayDeque<>();
+        pending.push(root);
+        boolean top = true;
+        while (!pending.isEmpty()) {
+            final int item = pending.pop();
+            if (item < 0) {
+                out.append((char) (-item - 1));
+            } else if (!top && bindings[item] >= 0) {
+                out.append('t').append(bindings[item]);
+            } else if (kinds[item] == NUMBER) {
+                out.append(values[item]);
+            } else if (kinds[item] == VARIABLE) {
+                out.append(names[item]);
+            } else {
+                pending.push(-')' - 1);
+                pending.push(rights[item]);
+                pending.push(-' ' - 1);
+                pending.push(-(kinds[item] == ADDITION ? '+' : '*') - 1);
+                pending.push(-' ' - 1);
+                pending.push(lefts[item]);
+                pending.push(-'(' - 1);
+            }
+            top = false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CSE: " + treeSize + " tree nodes -> " + kinds.length + " slots";
+    }
+
+    /**
+     * @return number of nodes in expression written out as a tree, saturating at Long.MAX_VALUE
+     */
+    private static long treeSize(Expression expression) {
+        return new ExpressionFold<Long>() {
+            @Override
+            public Long number(Number number) {
+                return 1L;
+            }
+
+            @Override
+            public Long variable(Variable variable) {
+                return 1L;
+            }
+
+            @Override
+            public Long addition(Addition addition, Long left, Long right) {
+                return size(left, right);
+            }
+
+            @Override
+            public Long multiplication(Multiplication multiplication, Long left, Long right) {
+                return size(left, right);
+            }
+
+            private Long size(long left, long right) {
+                final long size = 1 + left + right;
+                return size < 0 ? Long.MAX_VALUE : size;
+            }
+        }.applyShared(expression);
+    }
+
+    /**
+     * Numbers the distinct nodes of an interned DAG in post-order. The fold result is the slot.
+     */
+    private static final class SlotBuilder implements ExpressionFold<Integer> {
+        private final Map<Expression, Integer> leaves = new IdentityHashMap<>();
+        private int[] kinds = new int[16];
+        private int[] lefts = new int[16];
+        private int[] rights = new int[16];
+        private double[] values = new double[16];
+        private String[] names = new String[16];
+        private int count;
+
+        @Override
+        public Integer number(Number number) {
+            final Integer existing = leaves.get(number);
+            if (existing != null) {
+                return existing;
+            }
+            final int slot = add(NUMBER, -1, -1);
+            values[slot] = number.getValue();
+            leaves.put(number, slot);
+            return slot;
+        }
+
+        @Override
+        public Integer variable(Variable variable) {
+            final Integer existing = leaves.get(variable);
+            if (existing != null) {
+                return existing;
+            }
+            final int slot = add(VARIABLE, -1, -1);
+            names[slot] = variable.getName();
+            leaves.put(variable, slot);
+            return slot;
+        }
+
+        @Override
+        public Integer addition(Addition addition, Integer left, Integer right) {
+            return add(ADDITION, left, right);
+        }
+
+        @Override
+        public Integer multiplication(Multiplication multiplication, Integer left, Integer right) {
+            return add(MULTIPLICATION, left, right);
+        }
+
+        private int add(int kind, int left, int right) {
+            if (count == kinds.length) {
+                final int capacity = count * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                lefts = Arrays.copyOf(lefts, capacity);
+                rights = Arrays.copyOf(rights, capacity);
+                values = Arrays.copyOf(values, capacity);
+                names = Arrays.copyOf(names, capacity);
+            }
+            kinds[count] = kind;
+            lefts[count] = left;
+            rights[count] = right;
+            return count++;
+        }
+    }
+}
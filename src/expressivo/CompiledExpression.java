@@ -0,0 +1,184 @@
+package expressivo;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression compiled into a function of a fixed, ordered list of variables.
+ *
+ * The expression is walked once, at compile time, and composed into a single method handle
+ * of type (double[])double, built once per distinct subexpression object. Evaluating it
+ * performs no allocation and no map lookups: each variable reads its value directly from its
+ * slot in the array.
+ *
+ * Invoking nested method handles recurses once per level, so an expression nested deeper than
+ * MAX_HANDLE_DEPTH is compiled instead into a flat NodeTable program, swept in a loop; each
+ * evaluation of such an expression allocates one array of node values.
+ */
+public final class CompiledExpression {
+
+    private static final MethodType EVALUATOR_TYPE = MethodType.methodType(double.class, double[].class);
+    private static final MethodHandle ADD;
+    private static final MethodHandle MULTIPLY;
+    private static final MethodHandle ELEMENT = MethodHandles.arrayElementGetter(double[].class);
+    private static final MethodHandle SWEEP;
+
+    /** Deepest chain of nested method handles that compile() builds. */
+    static final int MAX_HANDLE_DEPTH = 256;
+
+    static {
+        try {
+            final MethodType binary = MethodType.methodType(double.class, double.class, double.class);
+            ADD = MethodHandles.lookup().findStatic(CompiledExpression.class, "add", binary);
+            MULTIPLY = MethodHandles.lookup().findStatic(CompiledExpression.class, "multiply", binary);
+            SWEEP = MethodHandles.lookup().findStatic(CompiledExpression.class, "sweep",
+                    MethodType.methodType(double.class, NodeTable.Program.class, double[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final List<String> variables;
+    private final MethodHandle evaluator;
+
+    private CompiledExpression(List<String> variables, MethodHandle evaluator) {
+        this.variables = variables;
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Compile an expression into an evaluator over the given variables.
+     *
+     * @param expression the expression to compile
+     * @param variableOrder the variables of the evaluator; the value of variableOrder.get(i)
+     *                      is read from index i of the array passed to evaluate()
+     * @return compiled form of expression
+     * @throws IllegalArgumentException if variableOrder contains duplicates, or if expression
+     *                                  uses a variable that is not in variableOrder
+     */
+    public static CompiledExpression compile(Expression expression, List<String> variableOrder) {
+        final Map<String, Integer> slots = new HashMap<>();
+        for (String variable : variableOrder) {
+            if (slots.put(variable, slots.size()) != null) {
+                throw new IllegalArgumentException("Duplicate variable in variable order: " + variable);
+            }
+        }
+        final List<String> variables = Collections.unmodifiableList(new ArrayList<>(variableOrder));
+        return new CompiledExpression(variables, build(expression, variables, slots));
+    }
+
+    /**
+     * @return the variables of this evaluator, in the order their values are expected
+     */
+    public List<String> variables() {
+        return variables;
+    }
+
+    /**
+     * Evaluate the compiled expression.
+     *
+     * @param values values of the variables, in the order given by variables();
+     *               entries beyond variables().size() are ignored
+     * @return value of the expression
+     * @throws IllegalArgumentException if values has fewer entries than variables()
+     */
+    public double evaluate(double[] values) {
+        if (values.length < variables.size()) {
+            throw new IllegalArgumentException("Expected " + variables.size() + " values, got " + values.length);
+        }
+        try {
+            return (double) evaluator.invokeExact(values);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static MethodHandle build(Expression expression, List<String> variables, Map<String, Integer> slots) {
+        if (handleDepth(expression) > MAX_HANDLE_DEPTH) {
+            final NodeTable.Program program = new NodeTable(expression).program(variables);
+            return MethodHandles.insertArguments(SWEEP, 0, program);
+        }
+        return new ExpressionFold<MethodHandle>() {
+            @Override
+            public MethodHandle number(Number number) {
+                final MethodHandle constant = MethodHandles.constant(double.class, number.getValue());
+                return MethodHandles.dropArguments(constant, 0, double[].class);
+            }
+
+            @Override
+            public MethodHandle variable(Variable variable) {
+                final Integer slot = slots.get(variable.getName());
+                if (slot == null) {
+                    throw new IllegalArgumentException("Variable not in variable order: " + variable.getName());
+                }
+                return MethodHandles.insertArguments(ELEMENT, 1, slot);
+            }
+
+            @Override
+            public MethodHandle addition(Addition addition, MethodHandle left, MethodHandle right) {
+                return combine(ADD, left, right);
+            }
+
+            @Override
+            public MethodHandle multiplication(Multiplication multiplication, MethodHandle left, MethodHandle right) {
+                return combine(MULTIPLY, left, right);
+            }
+        }.applyShared(expression);
+    }
+
+    /**
+     * @return depth of the method handle that build() composes for expression: a Sum or
+     *         Product nests as the chain of binary operations it stands for
+     */
+    private static int handleDepth(Expression expression) {
+        return new ExpressionFold<Integer>() {
+            @Override
+            public Integer number(Number number) {
+                return 1;
+            }
+
+            @Override
+            public Integer variable(Variable variable) {
+                return 1;
+            }
+
+            @Override
+            public Integer addition(Addition addition, Integer left, Integer right) {
+                return Math.max(left, right) + 1;
+            }
+
+            @Override
+            public Integer multiplication(Multiplication multiplication, Integer left, Integer right) {
+                return Math.max(left, right) + 1;
+            }
+        }.applyShared(expression);
+    }
+
+    private static double sweep(NodeTable.Program program, double[] values) {
+        return program.forward(values, new double[program.size()]);
+    }
+
+    /**
+     * Feed both (double[])double operands from the same array argument into a binary operator.
+     */
+    private static MethodHandle combine(MethodHandle operator, MethodHandle left, MethodHandle right) {
+        final MethodHandle spread = MethodHandles.filterArguments(operator, 0, left, right);
+        return MethodHandles.permuteArguments(spread, EVALUATOR_TYPE, 0, 0);
+    }
+
+    private static double add(double left, double right) {
+        return left + right;
+    }
+
+    private static double multiply(double left, double right) {
+        return left * right;
+    }
+}
@@ -0,0 +1,130 @@
+package expressivo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe cache of derivatives keyed by (expression, variable).
+ *
+ * Derivatives are computed with Differentiator over the expression as a DAG: every distinct
+ * subexpression object is differentiated once, and the derivative refers to the operands and
+ * their derivatives rather than copying them. Expressions are compared structurally, so equal
+ * expressions parsed separately share a cached derivative, but also by variant: a flattened
+ * Sum or Product does not share an entry with the equal chain of binary operations, since
+ * their derivatives have different shapes.
+ */
+public final class DerivativeCache {
+
+    /** System property giving the maximum size of the shared cache; 0 disables it. */
+    public static final String SIZE_PROPERTY = "expressivo.derivativeCache.size";
+    private static final int DEFAULT_SIZE = 1024;
+
+    private static final DerivativeCache SHARED = new DerivativeCache(Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE));
+
+    private final int maximumSize;
+    private final Map<Key, Expression> derivatives;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maximumSize maximum number of cached derivatives; 0 disables caching
+     * @throws IllegalArgumentException if maximumSize is negative
+     */
+    public DerivativeCache(int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("Maximum size must be nonnegative: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.derivatives = new LinkedHashMap<Key, Expression>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Expression> eldest) {
+                if (size() > DerivativeCache.this.maximumSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the cache used by Expression.differentiate(), sized by the SIZE_PROPERTY system property
+     */
+    public static DerivativeCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Differentiate an expression, reusing an earlier result for an equal expression and variable.
+     *
+     * @param expression the expression to differentiate
+     * @param variable the variable to differentiate by, a case-sensitive nonempty string of letters
+     * @return expression's derivative with respect to variable, as specified by Expression.differentiate()
+     * @throws IllegalArgumentException if variable is not a valid variable name
+     */
+    public Expression differentiate(Expression expression, String variable) {
+        final Differentiator differentiator = new Differentiator(variable);
+        if (maximumSize == 0) {
+            misses.increment();
+            return differentiator.applyShared(expression);
+        }
+        final Key key = new Key(expression, variable);
+        synchronized (derivatives) {
+            final Expression cached = derivatives.get(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+        final Expression derivative = differentiator.applyShared(expression);
+        synchronized (derivatives) {
+            derivatives.put(key, derivative);
+        }
+        return derivative;
+    }
+
+    /**
+     * @return current number of cached derivatives
+     */
+    public int size() {
+        synchronized (derivatives) {
+            return derivatives.size();
+        }
+    }
+
+    /**
+     * @return a snapshot of this cache's hit, miss and eviction counts
+     */
+    public ParseCache.Stats stats() {
+        return new ParseCache.Stats(hits.sum(), misses.sum(), evictions.sum(), size());
+    }
+
+    private static final class Key {
+        private final Expression expression;
+        private final String variable;
+
+        Key(Expression expression, String variable) {
+            this.expression = expression;
+            this.variable = variable;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return variable.equals(other.variable) && StructuralEquality.sameShape(expression, other.expression);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * expression.hashCode() + variable.hashCode();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package expressivo;
+
+import java.util.List;
+
+/**
+ * Symbolic differentiation with respect to one variable, by the sum and product rules.
+ */
+final class Differentiator implements ExpressionFold<Expression> {
+
+    private static final Number ZERO = new Number(0);
+    private static final Number ONE = new Number(1);
+
+    private final String variable;
+
+    /**
+     * @param variable the variable to differentiate by, a case-sensitive nonempty string of letters
+     * @throws IllegalArgumentException if variable is not a valid variable name
+     */
+    Differentiator(String variable) {
+        if (!Variable.isValidName(variable)) {
+            throw new IllegalArgumentException("Invalid variable: " + variable);
+        }
+        this.variable = variable;
+    }
+
+    @Override
+    public Expression number(Number number) {
+        return ZERO;
+    }
+
+    @Override
+    public Expression variable(Variable variable) {
+        return variable.getName().equals(this.variable) ? ONE : ZERO;
+    }
+
+    @Override
+    public Expression addition(Addition addition, Expression left, Expression right) {
+        return new Addition(left, right);
+    }
+
+    @Override
+    public Expression multiplication(Multiplication multiplication, Expression left, Expression right) {
+        // (uv)' = u'v + uv'
+        return new Addition(
+                new Multiplication(left, multiplication.getRight()),
+                new Multiplication(multiplication.getLeft(), right));
+    }
+
+    @Override
+    public Expression sum(Sum sum, List<Expression> operands) {
+        // the derivative of a flat sum stays flat
+        return new Sum(operands);
+    }
+
+    @Override
+    public Expression product(Product product, List<Expression> operands) {
+        // the product rule applied along the chain, as for nested Multiplications:
+        // (p * f)' = p' * f + p * f', where p is the product of the operands so far
+        Expression prefix = product.getOperand(0);
+        Expression derivative = operands.get(0);
+        for (int i = 1; i < operands.size(); i++) {
+            final Expression factor = product.getOperand(i);
+            derivative = new Addition(new Multiplication(derivative, factor), new Multiplication(prefix, operands.get(i)));
+            prefix = new Multiplication(prefix, factor);
+        }
+        return derivative;
+    }
+}
@@ -0,0 +1,281 @@
+package expressivo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A mutable assignment of values to variables, stored by slot instead of by name.
+ *
+ * Every variable has an integer slot, its SymbolTable.global() id, which a Variable node looks
+ * up once and keeps. An environment keeps its bindings in a small open-addressing table from
+ * slot to value, sized by the number of bindings rather than by the number of names the
+ * program has seen; looking up a variable is a probe of that table, with no string hashing and
+ * no boxing. An environment never assigns slots: a name bound before any Variable has asked
+ * for its slot is kept in a small side map by name, and moves into the table once it has one,
+ * so binding names that no expression uses does not grow the global SymbolTable. Like the
+ * maps accepted by Expression.simplify(), an environment only binds valid variable names to
+ * nonnegative values.
+ *
+ * An environment can be cleared and refilled without allocating, so one instance can serve
+ * many commands in turn. Environments are not safe for use by multiple threads at once.
+ */
+public final class Environment {
+
+    private static final int MIN_CAPACITY = 8;
+
+    // open-addressing table with linear probing, at most half full: keys holds slot + 1 for
+    // a bound slot and 0 for a free cell, and values the value at the same index
+    private int[] keys = new int[0];
+    private double[] values = new double[0];
+    private int size;
+    // bindings of names without a slot, created on first use; size does not count them
+    private Map<String, Double> unslotted;
+
+    /**
+     * Make an empty environment.
+     */
+    public Environment() {
+    }
+
+    /**
+     * @param environment maps variables to values
+     * @return a new environment with the same bindings
+     * @throws IllegalArgumentException if environment maps an invalid variable name, or maps
+     *                                  a variable to a missing or negative value
+     */
+    public static Environment of(Map<String, Double> environment) {
+        final Environment result = new Environment();
+        for (Map.Entry<String, Double> binding : environment.entrySet()) {
+            if (binding.getValue() == null) {
+                throw new IllegalArgumentException("Invalid value for " + binding.getKey() + ": null");
+            }
+            result.set(binding.getKey(), binding.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Bind a variable, replacing any previous value.
+     *
+     * @param variable a variable name
+     * @param value a nonnegative value
+     * @return this environment
+     * @throws IllegalArgumentException if variable is not a valid variable name or value is negative or NaN
+     */
+    public Environment set(String variable, double value) {
+        if (!Variable.isValidName(variable)) {
+            throw new IllegalArgumentException("Invalid variable in environment: " + variable);
+        }
+        if (!(value >= 0)) {
+            throw new IllegalArgumentException("Invalid value for " + variable + ": " + value);
+        }
+        final int slot = SymbolTable.global().lookup(variable);
+        if (slot < 0) {
+            if (unslotted == null) {
+                unslotted = new HashMap<>();
+            }
+            unslotted.put(variable, value);
+            return this;
+        }
+        if (unslotted != null) {
+            unslotted.remove(variable);
+        }
+        put(slot, value);
+        return this;
+    }
+
+    private void put(int slot, double value) {
+        if (2 * (size + 1) > keys.length) {
+            grow();
+        }
+        final int mask = keys.length - 1;
+        int cell = home(slot, mask);
+        while (keys[cell] != 0 && keys[cell] != slot + 1) {
+            cell = (cell + 1) & mask;
+        }
+        if (keys[cell] == 0) {
+            keys[cell] = slot + 1;
+            size++;
+        }
+        values[cell] = value;
+    }
+
+    /**
+     * Remove the binding of a variable, if any.
+     *
+     * @param variable a variable name
+     * @return this environment
+     */
+    public Environment unset(String variable) {
+        if (unslotted != null) {
+            unslotted.remove(variable);
+        }
+        int cell = find(SymbolTable.global().lookup(variable));
+        if (cell < 0) {
+            return this;
+        }
+        keys[cell] = 0;
+        size--;
+        // shift later cells of the probe run back, so lookups need no deletion markers
+        final int mask = keys.length - 1;
+        for (int next = (cell + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+            final int home = home(keys[next] - 1, mask);
+            final boolean reachable = cell <= next ? cell < home && home <= next : cell < home || home <= next;
+            if (!reachable) {
+                keys[cell] = keys[next];
+                values[cell] = values[next];
+                keys[next] = 0;
+                cell = next;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Remove every binding.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+        if (unslotted != null) {
+            unslotted.clear();
+        }
+    }
+
+    /**
+     * @param slot a variable's slot, as given by Variable.getId()
+     * @return true if and only if that variable is bound
+     */
+    public boolean isBound(int slot) {
+        return find(slot) >= 0;
+    }
+
+    /**
+     * @param variable a variable name
+     * @return true if and only if that variable is bound
+     */
+    public boolean isBound(String variable) {
+        final int slot = SymbolTable.global().lookup(variable);
+        return slot >= 0 ? isBound(slot) : unslotted != null && unslotted.containsKey(variable);
+    }
+
+    /**
+     * @param slot a variable's slot, as given by Variable.getId()
+     * @return the value of that variable
+     * @throws IllegalArgumentException if that variable is not bound
+     */
+    public double get(int slot) {
+        final int cell = find(slot);
+        if (cell < 0) {
+            throw new IllegalArgumentException("No value for variable with slot " + slot);
+        }
+        return values[cell];
+    }
+
+    /**
+     * @param slot a bound variable's slot
+     * @return the value of that variable
+     */
+    double value(int slot) {
+        return values[find(slot)];
+    }
+
+    /**
+     * @return number of bound variables
+     */
+    public int size() {
+        return size + (unslotted == null ? 0 : unslotted.size());
+    }
+
+    /**
+     * @return a new map with the same bindings, in slot order, followed by the names without a
+     *         slot in alphabetical order
+     */
+    public Map<String, Double> toMap() {
+        if (unslotted != null) {
+            for (String variable : unslotted.keySet().toArray(new String[0])) {
+                find(SymbolTable.global().lookup(variable));
+            }
+        }
+        final int[] slots = new int[size];
+        int count = 0;
+        for (int key : keys) {
+            if (key != 0) {
+                slots[count++] = key - 1;
+            }
+        }
+        Arrays.sort(slots);
+        final Map<String, Double> map = new LinkedHashMap<>();
+        for (int slot : slots) {
+            map.put(SymbolTable.global().name(slot), values[find(slot)]);
+        }
+        if (unslotted != null) {
+            map.putAll(new TreeMap<>(unslotted));
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+    /**
+     * @param slot a slot, or a negative number for a name without one
+     * @return the cell holding slot, or -1 if it is not bound; a binding kept by name since
+     *         before its name had a slot is moved into the table first
+     */
+    private int find(int slot) {
+        final int cell = probe(slot);
+        if (cell >= 0 || slot < 0 || unslotted == null || unslotted.isEmpty()) {
+            return cell;
+        }
+        final Double value = unslotted.remove(SymbolTable.global().name(slot));
+        if (value == null) {
+            return -1;
+        }
+        put(slot, value);
+        return probe(slot);
+    }
+
+    private int probe(int slot) {
+        if (slot < 0 || size == 0) {
+            return -1;
+        }
+        final int mask = keys.length - 1;
+        for (int cell = home(slot, mask); keys[cell] != 0; cell = (cell + 1) & mask) {
+            if (keys[cell] == slot + 1) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    private static int home(int slot, int mask) {
+        // spread consecutive slots, which are common, across the table
+        final int hash = slot * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void grow() {
+        final int[] oldKeys = keys;
+        final double[] oldValues = values;
+        final int capacity = Math.max(MIN_CAPACITY, oldKeys.length * 2);
+        keys = new int[capacity];
+        values = new double[capacity];
+        final int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int cell = home(oldKeys[i] - 1, mask);
+                while (keys[cell] != 0) {
+                    cell = (cell + 1) & mask;
+                }
+                keys[cell] = oldKeys[i];
+                values[cell] = oldValues[i];
+            }
+        }
+    }
+}
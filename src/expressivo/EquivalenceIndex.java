@@ -0,0 +1,63 @@
+package expressivo;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A concurrent index of expressions up to equivalence, for deduplicating large collections.
+ *
+ * Each class of equivalent expressions is represented by the first member added, keyed by
+ * its SemanticFingerprint, so adding or looking up an expression costs one fingerprint and one
+ * hash lookup, independent of the number of indexed expressions. Two expressions are treated
+ * as equivalent when their fingerprints are equal, which is certain for equivalent expressions
+ * and, for inequivalent ones, has the tiny error probability described by SemanticFingerprint.
+ * Expressions of degree beyond SemanticFingerprint.MAX_DEGREE cannot be indexed.
+ *
+ * Indexes are safe to use from multiple threads; concurrent adds of equivalent expressions
+ * agree on a single representative.
+ */
+public final class EquivalenceIndex {
+
+    private final ConcurrentMap<SemanticFingerprint, Expression> representatives = new ConcurrentHashMap<>();
+
+    /**
+     * Add an expression unless an equivalent one is already indexed.
+     *
+     * @param expression any expression
+     * @return the indexed expression equivalent to expression: an earlier one if there was
+     *         one, otherwise expression itself
+     * @throws IllegalArgumentException if the degree of expression may exceed
+     *                                  SemanticFingerprint.MAX_DEGREE
+     */
+    public Expression add(Expression expression) {
+        final Expression existing = representatives.putIfAbsent(SemanticFingerprint.of(expression), expression);
+        return existing != null ? existing : expression;
+    }
+
+    /**
+     * @param expression any expression
+     * @return the indexed expression equivalent to expression, if there is one
+     * @throws IllegalArgumentException if the degree of expression may exceed
+     *                                  SemanticFingerprint.MAX_DEGREE
+     */
+    public Optional<Expression> find(Expression expression) {
+        return Optional.ofNullable(representatives.get(SemanticFingerprint.of(expression)));
+    }
+
+    /**
+     * @return number of equivalence classes indexed
+     */
+    public int size() {
+        return representatives.size();
+    }
+
+    /**
+     * @return unmodifiable live view of one representative per indexed equivalence class
+     */
+    public Collection<Expression> representatives() {
+        return Collections.unmodifiableCollection(representatives.values());
+    }
+}
@@ -1,8 +1,15 @@
 package expressivo;
 
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.tree.*;
 
+import expressivo.parser.*;
+
 /**
  * An immutable data type representing a polynomial expression of:
  *   + and *
@@ -21,6 +28,10 @@ public interface Expression {
     //              | Variable(name:String)
     //              | Addition(left:Expression, right:Expression)
     //              | Multiplication(left:Expression, right:Expression)
+    //              | Sum(operands:List<Expression>)
+    //              | Product(operands:List<Expression>)
+    // A Sum or Product of at least two operands is a flattened left-grouped chain of
+    // Additions or Multiplications, and is structurally equal to that chain.
     
     /**
      * Parse an expression.
@@ -31,13 +42,94 @@ public interface Expression {
      * @throws IllegalArgumentException if the expression is invalid
      */
     public static Expression parse(String input) {
+        return parse(input, ParserBackend.HANDWRITTEN);
+    }
+
+    /**
+     * Parse an expression with a particular parser implementation.
+     * @param input expression to parse, as specified by parse(String)
+     * @param backend parser implementation to use; every backend produces the same AST and
+     *                reports invalid input with the same messages
+     * @return expression AST for the input
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public static Expression parse(CharSequence input, ParserBackend backend) {
+        if (OperationMetrics.ENABLED) {
+            final OperationMetrics.Call call = OperationMetrics.global()
+                    .begin(OperationMetrics.Operation.PARSE, input == null ? 0 : input.length());
+            try {
+                return call.end(parseUninstrumented(input, backend));
+            } catch (RuntimeException e) {
+                call.fail();
+                throw e;
+            }
+        }
+        return parseUninstrumented(input, backend);
+    }
+
+    private static Expression parseUninstrumented(CharSequence input, ParserBackend backend) {
+        switch (backend) {
+        case ANTLR:
+            return parseWithAntlr(input == null ? null : input.toString());
+        case HANDWRITTEN:
+        default:
+            return OperatorPrecedenceParser.parse(input, false);
+        }
+    }
+
+    /**
+     * Parse an expression without throwing on invalid input, for callers that expect to see
+     * much of it. Rejected input is reported by its position rather than by an exception.
+     *
+     * @param input expression to parse, as specified by parse(String), or null
+     * @return a result holding the expression AST for the input, equal to parse(input), or
+     *         the offset of the first character that cannot continue a valid expression and
+     *         the tokens allowed there
+     */
+    public static ParseResult tryParse(CharSequence input) {
+        if (OperationMetrics.ENABLED) {
+            final OperationMetrics.Call call = OperationMetrics.global()
+                    .begin(OperationMetrics.Operation.PARSE, input == null ? 0 : input.length());
+            final ParseResult result = OperatorPrecedenceParser.tryParse(input, false);
+            if (result.isSuccess()) {
+                call.end(result.getExpression());
+            } else {
+                call.fail();
+            }
+            return result;
+        }
+        return OperatorPrecedenceParser.tryParse(input, false);
+    }
+
+    /**
+     * Parse an expression into flattened form, building every chain of two or more
+     * + or * operations as a single Sum or Product.
+     * @param input expression to parse, as specified by parse(String)
+     * @return expression AST for the input, structurally equal to parse(input)
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public static Expression parseFlattened(CharSequence input) {
+        return OperatorPrecedenceParser.parse(input, true);
+    }
+
+    /**
+     * Parse an expression with the parser generated by ANTLR.
+     * @param input expression to parse, as specified by parse(String)
+     * @return expression AST for the input
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    private static Expression parseWithAntlr(String input) {
         // Perform input validation before parsing.
         validateInput(input);
 
         try {
-            ExpressionLexer lexer = new ExpressionLexer(CharStreams.fromString(input));
+            ExpressionLexer lexer = new ExpressionLexer(new ANTLRInputStream(input));
+            lexer.removeErrorListeners();
+            lexer.reportErrorsAsExceptions();
             CommonTokenStream tokens = new CommonTokenStream(lexer);
             ExpressionParser parser = new ExpressionParser(tokens);
+            parser.removeErrorListeners();
+            parser.setErrorHandler(new BailErrorStrategy());
 
             // Parse the input using the generated grammar
             ExpressionBaseListener listener = new ExpressionASTBuilder();
@@ -122,4 +214,112 @@ public interface Expression {
     public int hashCode();
 
     // Additional instance methods for extensions (if required) can go here.
+
+    /**
+     * Differentiate this expression with respect to a variable.
+     *
+     * The derivative shares subexpressions with this expression and with itself instead of
+     * copying them, so it takes time and memory linear in the number of distinct subexpressions
+     * even for nested products.
+     *
+     * @param variable the variable to differentiate by, a case-sensitive nonempty string of letters
+     * @return this expression's derivative with respect to variable; not necessarily in simplest form
+     * @throws IllegalArgumentException if variable is not a valid variable name
+     */
+    public default Expression differentiate(String variable) {
+        return DerivativeCache.shared().differentiate(this, variable);
+    }
+
+    /**
+     * Simplify this expression.
+     *
+     * @param environment maps variables to nonnegative values. The set of variables in environment
+     *                    may differ from the set of variables in this expression.
+     * @return an expression equal to this one after substituting every variable that appears in both
+     *         this expression and environment with its value, with constants folded, so an expression
+     *         with no variables left is a single Number. Products are expanded and like terms
+     *         collected into the canonical form given by Polynomial.toExpression(), except that a
+     *         product whose expansion could exceed Polynomial.MAX_EXPANDED_TERMS terms is kept
+     *         factored, so the result is never much larger than this expression
+     * @throws IllegalArgumentException if environment maps an invalid variable name or a negative value
+     */
+    public default Expression simplify(Map<String, Double> environment) {
+        return Polynomial.simplify(this, Environment.of(environment));
+    }
+
+    /**
+     * Simplify this expression, looking variables up by slot instead of by name.
+     *
+     * @param environment values for variables, which may bind variables not in this expression
+     * @return this expression simplified under environment, as specified by simplify(Map)
+     */
+    public default Expression simplify(Environment environment) {
+        return Polynomial.simplify(this, environment);
+    }
+
+    /**
+     * Flatten this expression, so that wide sums and products are shallow.
+     *
+     * @return an expression structurally equal to this one in which every left-grouped chain of
+     *         two or more Additions or Multiplications is a single Sum or Product
+     */
+    public default Expression flatten() {
+        return Flattener.flatten(this);
+    }
+
+    /**
+     * @return the names of the variables in this expression, in order of first appearance
+     */
+    public default Set<String> variables() {
+        final Set<String> variables = new LinkedHashSet<>();
+        new ExpressionFold<Void>() {
+            @Override
+            public Void number(Number number) {
+                return null;
+            }
+
+            @Override
+            public Void variable(Variable variable) {
+                variables.add(variable.getName());
+                return null;
+            }
+
+            @Override
+            public Void addition(Addition addition, Void left, Void right) {
+                return null;
+            }
+
+            @Override
+            public Void multiplication(Multiplication multiplication, Void left, Void right) {
+                return null;
+            }
+        }.applyShared(this);
+        return variables;
+    }
+
+    /**
+     * Compile this expression into an evaluator for repeated evaluation.
+     *
+     * @param variableOrder the variables of the evaluator; the value of variableOrder.get(i)
+     *                      is read from index i of the array passed to CompiledExpression.evaluate()
+     * @return compiled form of this expression
+     * @throws IllegalArgumentException if variableOrder contains duplicates, or if this expression
+     *                                  uses a variable that is not in variableOrder
+     */
+    public default CompiledExpression compile(List<String> variableOrder) {
+        return CompiledExpression.compile(this, variableOrder);
+    }
+
+    /**
+     * Evaluate this expression over many rows at once. To evaluate the same expression over
+     * several batches, compile it once with BatchEvaluator.compile() instead.
+     *
+     * @param columns maps each variable of this expression to its column of values, one per row;
+     *                every column must have at least output.length values
+     * @param output receives the value of this expression for row i at index i
+     * @throws IllegalArgumentException if a variable has no column or its column is too short
+     */
+    public default void evaluateColumns(Map<String, double[]> columns, double[] output) {
+        BatchEvaluator.compile(this).evaluate(columns, output);
+    }
 }
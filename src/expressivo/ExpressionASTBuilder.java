@@ -0,0 +1,58 @@
+package expressivo;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import expressivo.parser.ExpressionBaseListener;
+import expressivo.parser.ExpressionParser;
+
+/**
+ * Builds an Expression AST from an ANTLR parse tree as the tree is walked.
+ * Sums and products are grouped to the left, so "a + b + c" becomes ((a + b) + c).
+ */
+class ExpressionASTBuilder extends ExpressionBaseListener {
+
+    private final Deque<Expression> stack = new ArrayDeque<>();
+
+    @Override
+    public void exitSum(ExpressionParser.SumContext ctx) {
+        combine(ctx.product().size(), true);
+    }
+
+    @Override
+    public void exitProduct(ExpressionParser.ProductContext ctx) {
+        combine(ctx.primitive().size(), false);
+    }
+
+    @Override
+    public void exitPrimitive(ExpressionParser.PrimitiveContext ctx) {
+        if (ctx.NUMBER() != null) {
+            stack.push(new Number(Double.parseDouble(ctx.NUMBER().getText())));
+        } else if (ctx.VARIABLE() != null) {
+            stack.push(new Variable(ctx.VARIABLE().getText()));
+        }
+        // a parenthesized sum has already pushed its expression
+    }
+
+    /**
+     * @return the expression built from the walked parse tree
+     */
+    public Expression getExpression() {
+        return stack.peek();
+    }
+
+    /**
+     * Replace the top operandCount expressions with their left-grouped sum or product.
+     */
+    private void combine(int operandCount, boolean isSum) {
+        final Expression[] operands = new Expression[operandCount];
+        for (int i = operandCount - 1; i >= 0; i--) {
+            operands[i] = stack.pop();
+        }
+        Expression result = operands[0];
+        for (int i = 1; i < operandCount; i++) {
+            result = isSum ? new Addition(result, operands[i]) : new Multiplication(result, operands[i]);
+        }
+        stack.push(result);
+    }
+}
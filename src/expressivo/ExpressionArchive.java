@@ -0,0 +1,368 @@
+package expressivo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A file of expressions in binary form, read through a memory mapping.
+ *
+ * Each expression is stored as the instructions of its ExpressionTape, and all expressions of
+ * the file share one constant pool and one variable-name table. Mapping a file reads only its
+ * header, index and name table, and checks that every section lies inside the file; an
+ * expression's instructions are not touched until it is evaluated or materialized, and then
+ * they are read in place from the mapping without being copied.
+ *
+ * File layout, all integers little-endian:
+ *   header:    magic, version, expression count, instruction count, constant count, name count,
+ *              constants offset, index offset, names offset, file length (ten 4-byte ints)
+ *   code:      the instructions of every expression, one after another (4 bytes each)
+ *   constants: the constant pool, 8-byte aligned (8 bytes each)
+ *   index:     per expression, its first instruction and its evaluation stack depth (4 + 4 bytes)
+ *   names:     per variable, its length and its letters (4 bytes + 1 per letter)
+ *
+ * A file is mapped with a single buffer, so it must be smaller than 2 GB.
+ * Archives are immutable and safe to share between threads.
+ */
+public final class ExpressionArchive {
+
+    private static final int MAGIC = 0x52505845; // "EXPR" in file order
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 10 * Integer.BYTES;
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final IntBuffer code;
+    private final DoubleBuffer constants;
+    private final IntBuffer index;
+    private final int[] symbols;
+    private final int size;
+
+    private ExpressionArchive(IntBuffer code, DoubleBuffer constants, IntBuffer index, int[] symbols, int size) {
+        this.code = code;
+        this.constants = constants;
+        this.index = index;
+        this.symbols = symbols;
+        this.size = size;
+    }
+
+    /**
+     * Start writing an archive. Expressions are streamed to the file as they are added;
+     * the file is complete once the writer is closed.
+     *
+     * @param file file to create or replace
+     * @return a writer for file
+     * @throws IOException if the file cannot be opened for writing
+     */
+    public static Writer writer(Path file) throws IOException {
+        return new Writer(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * Map an archive into memory. Only the header, the index and the name table are read.
+     *
+     * @param file an archive written by a Writer
+     * @return the archive
+     * @throws IOException if the file cannot be read, is too large to map, is not an archive, or
+     *                     has a header, index or name table that does not fit the file
+     */
+    public static ExpressionArchive map(Path file) throws IOException {
+        final MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Archive too large to map: " + file);
+            }
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not an expression archive: " + file);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        final ByteBuffer bytes = mapped.order(ORDER);
+        if (bytes.getInt(0) != MAGIC || bytes.getInt(4) != VERSION || bytes.getInt(36) != bytes.capacity()) {
+            throw new IOException("Not an expression archive, or an unsupported version: " + file);
+        }
+        final int size = bytes.getInt(8);
+        final int codeLength = bytes.getInt(12);
+        final int constantCount = bytes.getInt(16);
+        final int nameCount = bytes.getInt(20);
+        final int constantsOffset = bytes.getInt(24);
+        final int indexOffset = bytes.getInt(28);
+        final int namesOffset = bytes.getInt(32);
+
+        // the sections follow each other in file order, each inside the mapping; long arithmetic
+        // keeps corrupt counts from overflowing into plausible offsets
+        final long length = bytes.capacity();
+        if (size < 0 || codeLength < 0 || constantCount < 0 || nameCount < 0
+                || HEADER_BYTES + (long) codeLength * Integer.BYTES > constantsOffset
+                || constantsOffset + (long) constantCount * Double.BYTES > indexOffset
+                || indexOffset + (long) size * 2 * Integer.BYTES > namesOffset
+                || namesOffset + (long) nameCount * Integer.BYTES > length) {
+            throw new IOException("Corrupt expression archive, sections out of bounds: " + file);
+        }
+        int previousStart = 0;
+        for (int i = 0; i < size; i++) {
+            final int start = bytes.getInt(indexOffset + 2 * i * Integer.BYTES);
+            final int depth = bytes.getInt(indexOffset + (2 * i + 1) * Integer.BYTES);
+            if (start < previousStart || start > codeLength || depth < 0) {
+                throw new IOException("Corrupt expression archive, bad index entry " + i + ": " + file);
+            }
+            previousStart = start;
+        }
+
+        final int[] symbols = new int[nameCount];
+        int position = namesOffset;
+        for (int v = 0; v < nameCount; v++) {
+            final int nameLength = (long) position + Integer.BYTES <= length ? bytes.getInt(position) : -1;
+            position += Integer.BYTES;
+            if (nameLength <= 0 || position + (long) nameLength > length) {
+                throw new IOException("Corrupt expression archive, bad name " + v + ": " + file);
+            }
+            final byte[] name = new byte[nameLength];
+            for (int i = 0; i < name.length; i++) {
+                name[i] = bytes.get(position++);
+            }
+            final String decoded = new String(name, StandardCharsets.US_ASCII);
+            if (!Variable.isValidName(decoded)) {
+                throw new IOException("Corrupt expression archive, bad name " + v + ": " + file);
+            }
+            symbols[v] = SymbolTable.global().id(decoded);
+        }
+        return new ExpressionArchive(
+                section(bytes, HEADER_BYTES, codeLength * Integer.BYTES).asIntBuffer(),
+                section(bytes, constantsOffset, constantCount * Double.BYTES).asDoubleBuffer(),
+                section(bytes, indexOffset, size * 2 * Integer.BYTES).asIntBuffer(),
+                symbols, size);
+    }
+
+    /**
+     * @return a view of length bytes of buffer starting at offset, sharing its memory
+     */
+    private static ByteBuffer section(ByteBuffer buffer, int offset, int length) {
+        final ByteBuffer view = buffer.duplicate();
+        view.limit(offset + length).position(offset);
+        // slice() resets the byte order, so set it again
+        return view.slice().order(ORDER);
+    }
+
+    /**
+     * @return number of expressions in the archive
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i index of an expression, in the order they were written
+     * @return the tape of expression i, reading its instructions in place from the mapping;
+     *         it shares the archive's constant pool and variable table
+     * @throws IndexOutOfBoundsException if there is no expression i
+     */
+    public ExpressionTape tape(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Expression " + i + " of " + size);
+        }
+        final int start = index.get(2 * i);
+        final int end = i + 1 < size ? index.get(2 * i + 2) : code.limit();
+        final IntBuffer instructions = code.duplicate();
+        instructions.limit(end).position(start);
+        return new ExpressionTape(instructions.slice(), constants, symbols, index.get(2 * i + 1));
+    }
+
+    /**
+     * @param i index of an expression, in the order they were written
+     * @return expression i, materialized as an AST
+     * @throws IndexOutOfBoundsException if there is no expression i
+     */
+    public Expression get(int i) {
+        return tape(i).toExpression();
+    }
+
+    /**
+     * Evaluate an expression in place, without materializing it.
+     *
+     * @param i index of an expression, in the order they were written
+     * @param environment maps every variable of expression i to a value
+     * @return value of expression i
+     * @throws IndexOutOfBoundsException if there is no expression i
+     * @throws IllegalArgumentException if environment does not bind a variable of expression i
+     */
+    public double evaluate(int i, Map<String, Double> environment) {
+        return tape(i).evaluate(environment);
+    }
+
+    /**
+     * Streams expressions into an archive file.
+     */
+    public static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ORDER);
+        private long written;
+
+        private final Map<Long, Integer> constantIndexes = new HashMap<>();
+        private double[] constants = new double[16];
+        private final Map<Integer, Integer> nameIndexes = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        // per expression: first instruction, stack depth
+        private int[] index = new int[32];
+        private int size;
+        private long codeLength;
+        private boolean closed;
+
+        private Writer(FileChannel channel) throws IOException {
+            this.channel = channel;
+            // the header is written last, once the section offsets are known
+            put(new byte[HEADER_BYTES]);
+        }
+
+        /**
+         * Append an expression. Subexpressions that it shares are written out once for every
+         * place they appear, as by ExpressionTape.of().
+         *
+         * @param expression expression to append
+         * @throws IOException if writing fails
+         * @throws IllegalStateException if the writer is closed or the archive would be too large
+         */
+        public void add(Expression expression) throws IOException {
+            if (closed) {
+                throw new IllegalStateException("Archive writer is closed");
+            }
+            final ExpressionTape tape = ExpressionTape.of(expression);
+            if (codeLength + tape.length() > (Integer.MAX_VALUE - HEADER_BYTES) / Integer.BYTES) {
+                throw new IllegalStateException("Archive would be too large to map");
+            }
+            if (2 * size + 2 > index.length) {
+                index = Arrays.copyOf(index, index.length * 2);
+            }
+            index[2 * size] = (int) codeLength;
+            index[2 * size + 1] = tape.maxDepth();
+            size++;
+
+            // renumber the tape's constants and variables into the archive's shared tables
+            final DoubleBuffer tapeConstants = tape.constants();
+            final int[] tapeSymbols = tape.symbols();
+            final IntBuffer instructions = tape.code();
+            while (instructions.hasRemaining()) {
+                int instruction = instructions.get();
+                final int operand = ExpressionTape.operand(instruction);
+                if (ExpressionTape.opcode(instruction) == ExpressionTape.NUMBER) {
+                    instruction = ExpressionTape.instruction(ExpressionTape.NUMBER, constantIndex(tapeConstants.get(operand)));
+                } else if (ExpressionTape.opcode(instruction) == ExpressionTape.VARIABLE) {
+                    instruction = ExpressionTape.instruction(ExpressionTape.VARIABLE, nameIndex(tapeSymbols[operand]));
+                }
+                ensureRoom(Integer.BYTES);
+                buffer.putInt(instruction);
+            }
+            codeLength += tape.length();
+        }
+
+        /**
+         * Write the constant pool, index, name table and header, and close the file.
+         *
+         * @throws IOException if writing fails
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                // align the constants to 8 bytes
+                put(new byte[(int) (-(written + buffer.position()) & (Double.BYTES - 1))]);
+                final long constantsOffset = written + buffer.position();
+                for (int c = 0; c < constantIndexes.size(); c++) {
+                    ensureRoom(Double.BYTES);
+                    buffer.putDouble(constants[c]);
+                }
+                final long indexOffset = written + buffer.position();
+                for (int i = 0; i < 2 * size; i++) {
+                    ensureRoom(Integer.BYTES);
+                    buffer.putInt(index[i]);
+                }
+                final long namesOffset = written + buffer.position();
+                for (String name : names) {
+                    ensureRoom(Integer.BYTES);
+                    buffer.putInt(name.length());
+                    put(name.getBytes(StandardCharsets.US_ASCII));
+                }
+                flush();
+                if (written > Integer.MAX_VALUE) {
+                    throw new IOException("Archive too large to map: " + written + " bytes");
+                }
+
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+                header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt((int) codeLength)
+                        .putInt(constantIndexes.size()).putInt(names.size())
+                        .putInt((int) constantsOffset).putInt((int) indexOffset).putInt((int) namesOffset)
+                        .putInt((int) written);
+                header.flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+            } finally {
+                channel.close();
+            }
+        }
+
+        private int constantIndex(double value) {
+            final Long bits = Double.doubleToLongBits(value);
+            Integer slot = constantIndexes.get(bits);
+            if (slot == null) {
+                slot = constantIndexes.size();
+                if (slot == constants.length) {
+                    constants = Arrays.copyOf(constants, slot * 2);
+                }
+                constants[slot] = value;
+                constantIndexes.put(bits, slot);
+            }
+            return slot;
+        }
+
+        private int nameIndex(int symbol) {
+            Integer slot = nameIndexes.get(symbol);
+            if (slot == null) {
+                slot = names.size();
+                nameIndexes.put(symbol, slot);
+                names.add(SymbolTable.global().name(symbol));
+            }
+            return slot;
+        }
+
+        private void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensureRoom(1);
+                final int chunk = Math.min(bytes.length - offset, buffer.remaining());
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+            }
+        }
+
+        private void ensureRoom(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package expressivo;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bottom-up computation over an expression tree.
+ *
+ * Each variant is combined with the already-computed results for its operands.
+ * apply() walks the tree with an explicit stack rather than recursion, so folds
+ * work on arbitrarily deep expressions without risking a StackOverflowError.
+ *
+ * Flattened Sum and Product nodes are folded by default as the chain of Additions or
+ * Multiplications they stand for, without building that chain; folds that read the node
+ * passed to addition() or multiplication(), or that build expressions and want to keep the
+ * flat shape, override sum() and product().
+ *
+ * @param <R> type of the result computed for each subexpression
+ */
+public interface ExpressionFold<R> {
+
+    /**
+     * @param number a leaf of the tree
+     * @return result for number
+     */
+    R number(Number number);
+
+    /**
+     * @param variable a leaf of the tree
+     * @return result for variable
+     */
+    R variable(Variable variable);
+
+    /**
+     * @param addition an addition node of the tree
+     * @param left result for addition.getLeft()
+     * @param right result for addition.getRight()
+     * @return result for addition
+     */
+    R addition(Addition addition, R left, R right);
+
+    /**
+     * @param multiplication a multiplication node of the tree
+     * @param left result for multiplication.getLeft()
+     * @param right result for multiplication.getRight()
+     * @return result for multiplication
+     */
+    R multiplication(Multiplication multiplication, R left, R right);
+
+    /**
+     * Combine the results for the operands of a Sum. By default, reduces them from the left
+     * with addition(), as for the chain of Additions the Sum stands for. No Addition nodes are
+     * built for the steps, so addition() receives null for its node; a fold whose addition()
+     * reads its node must override sum().
+     *
+     * @param sum a flattened sum node of the tree
+     * @param operands results for sum.getOperands(), in order
+     * @return result for sum
+     */
+    public default R sum(Sum sum, List<R> operands) {
+        R result = operands.get(0);
+        for (int i = 1; i < operands.size(); i++) {
+            result = addition(null, result, operands.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Combine the results for the operands of a Product. By default, reduces them from the left
+     * with multiplication(), passing null for its node, as for sum(); a fold whose
+     * multiplication() reads its node must override product().
+     *
+     * @param product a flattened product node of the tree
+     * @param operands results for product.getOperands(), in order
+     * @return result for product
+     */
+    public default R product(Product product, List<R> operands) {
+        R result = operands.get(0);
+        for (int i = 1; i < operands.size(); i++) {
+            result = multiplication(null, result, operands.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Run this fold over an expression. Operands are visited left to right.
+     *
+     * @param root expression to fold
+     * @return result for root
+     * @throws IllegalArgumentException if root contains an unknown variant
+     */
+    public default R apply(Expression root) {
+        return fold(root, null);
+    }
+
+    /**
+     * Run this fold over an expression whose subexpressions may be shared, as in the results of
+     * differentiation. Each distinct subexpression object is folded once and its result reused
+     * wherever it appears again, so the cost is linear in the number of distinct objects rather
+     * than in the size of the fully expanded tree.
+     *
+     * @param root expression to fold
+     * @return result for root
+     * @throws IllegalArgumentException if root contains an unknown variant
+     */
+    public default R applyShared(Expression root) {
+        return fold(root, new IdentityHashMap<>());
+    }
+
+    /**
+     * @param memo results of already folded operations by identity, or null to fold every occurrence
+     */
+    @SuppressWarnings("unchecked")
+    private R fold(Expression root, Map<Expression, Object> memo) {
+        Expression[] pending = new Expression[16];
+        boolean[] expanded = new boolean[16];
+        int pendingCount = 0;
+        Object[] results = new Object[16];
+        int resultCount = 0;
+
+        pending[pendingCount++] = root;
+        while (pendingCount > 0) {
+            final Expression node = pending[--pendingCount];
+            final boolean operandsDone = expanded[pendingCount];
+            pending[pendingCount] = null;
+
+            final Object result;
+            if (node instanceof Number) {
+                result = number((Number) node);
+            } else if (node instanceof Variable) {
+                result = variable((Variable) node);
+            } else if (arity(node) < 0) {
+                throw new IllegalArgumentException("Unknown expression variant: " + node.getClass().getName());
+            } else if (!operandsDone && memo != null && memo.containsKey(node)) {
+                result = memo.get(node);
+            } else if (!operandsDone) {
+                final int arity = arity(node);
+                while (pendingCount + arity + 1 > pending.length) {
+                    pending = Arrays.copyOf(pending, pending.length * 2);
+                    expanded = Arrays.copyOf(expanded, expanded.length * 2);
+                }
+                pending[pendingCount] = node;
+                expanded[pendingCount++] = true;
+                for (int i = arity - 1; i >= 0; i--) {
+                    pending[pendingCount] = operand(node, i);
+                    expanded[pendingCount++] = false;
+                }
+                continue;
+            } else if (node instanceof Addition || node instanceof Multiplication) {
+                final R right = (R) results[--resultCount];
+                final R left = (R) results[--resultCount];
+                results[resultCount] = null;
+                results[resultCount + 1] = null;
+                result = node instanceof Addition
+                        ? addition((Addition) node, left, right)
+                        : multiplication((Multiplication) node, left, right);
+                if (memo != null) {
+                    memo.put(node, result);
+                }
+            } else {
+                final int arity = arity(node);
+                final List<R> operands = (List<R>) Arrays.asList(Arrays.copyOfRange(results, resultCount - arity, resultCount));
+                Arrays.fill(results, resultCount - arity, resultCount, null);
+                resultCount -= arity;
+                result = node instanceof Sum ? sum((Sum) node, operands) : product((Product) node, operands);
+                if (memo != null) {
+                    memo.put(node, result);
+                }
+            }
+
+            if (resultCount == results.length) {
+                results = Arrays.copyOf(results, results.length * 2);
+            }
+            results[resultCount++] = result;
+        }
+        return (R) results[0];
+    }
+
+    /**
+     * @return number of operands of an operation, 0 for a leaf, or -1 for an unknown variant
+     */
+    private static int arity(Expression node) {
+        if (node instanceof Addition || node instanceof Multiplication) {
+            return 2;
+        } else if (node instanceof FlatOperation) {
+            return ((FlatOperation) node).size();
+        }
+        return node instanceof Number || node instanceof Variable ? 0 : -1;
+    }
+
+    private static Expression operand(Expression operation, int index) {
+        if (operation instanceof Addition) {
+            return index == 0 ? ((Addition) operation).getLeft() : ((Addition) operation).getRight();
+        } else if (operation instanceof Multiplication) {
+            return index == 0 ? ((Multiplication) operation).getLeft() : ((Multiplication) operation).getRight();
+        }
+        return ((FlatOperation) operation).getOperand(index);
+    }
+}
@@ -0,0 +1,220 @@
+package expressivo;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hash-consing factory for expressions.
+ *
+ * Every expression returned by an interner is canonical: structurally equal expressions
+ * obtained from the same interner are the same instance, so they can be compared with ==
+ * and their equals() returns on the identity check. The table only holds its expressions
+ * weakly, so canonical expressions that are no longer used elsewhere are garbage collected.
+ *
+ * Interners are safe to use from multiple threads.
+ */
+public final class ExpressionInterner {
+
+    private static final ExpressionInterner SHARED = new ExpressionInterner();
+
+    private static final int NUMBER = 0;
+    private static final int VARIABLE = 1;
+    private static final int ADDITION = 2;
+    private static final int MULTIPLICATION = 3;
+
+    private final ConcurrentMap<Key, Entry> table = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Expression> collected = new ReferenceQueue<>();
+
+    /**
+     * @return an interner shared by the whole program
+     */
+    public static ExpressionInterner shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param value a nonnegative number
+     * @return the canonical Number with the given value
+     */
+    public Number number(double value) {
+        final Key key = new Key(NUMBER, Double.doubleToLongBits(value), null);
+        final Expression existing = lookup(key);
+        return existing != null ? (Number) existing : insert(key, new Number(value));
+    }
+
+    /**
+     * @param name a case-sensitive nonempty string of letters
+     * @return the canonical Variable with the given name
+     */
+    public Variable variable(String name) {
+        final Key key = new Key(VARIABLE, name, null);
+        final Expression existing = lookup(key);
+        return existing != null ? (Variable) existing : insert(key, new Variable(name));
+    }
+
+    /**
+     * @param left left operand, need not be canonical
+     * @param right right operand, need not be canonical
+     * @return the canonical Addition structurally equal to left + right
+     */
+    public Addition addition(Expression left, Expression right) {
+        return (Addition) canonical(ADDITION, intern(left), intern(right));
+    }
+
+    /**
+     * @param left left operand, need not be canonical
+     * @param right right operand, need not be canonical
+     * @return the canonical Multiplication structurally equal to left * right
+     */
+    public Multiplication multiplication(Expression left, Expression right) {
+        return (Multiplication) canonical(MULTIPLICATION, intern(left), intern(right));
+    }
+
+    /**
+     * Find the canonical instance of an expression. Expressions that are already canonical
+     * are recognized in constant time; others are interned bottom-up, each distinct
+     * subexpression object once.
+     *
+     * @param expression any expression
+     * @return the canonical expression structurally equal to expression
+     */
+    public Expression intern(Expression expression) {
+        if (expression instanceof Addition) {
+            final Addition addition = (Addition) expression;
+            if (lookup(new Key(ADDITION, addition.getLeft(), addition.getRight())) == expression) {
+                return expression;
+            }
+        } else if (expression instanceof Multiplication) {
+            final Multiplication multiplication = (Multiplication) expression;
+            if (lookup(new Key(MULTIPLICATION, multiplication.getLeft(), multiplication.getRight())) == expression) {
+                return expression;
+            }
+        }
+        return new ExpressionFold<Expression>() {
+            @Override
+            public Expression number(Number number) {
+                return ExpressionInterner.this.number(number.getValue());
+            }
+
+            @Override
+            public Expression variable(Variable variable) {
+                return ExpressionInterner.this.variable(variable.getName());
+            }
+
+            @Override
+            public Expression addition(Addition addition, Expression left, Expression right) {
+                return canonical(ADDITION, left, right);
+            }
+
+            @Override
+            public Expression multiplication(Multiplication multiplication, Expression left, Expression right) {
+                return canonical(MULTIPLICATION, left, right);
+            }
+        }.applyShared(expression);
+    }
+
+    /**
+     * @return number of canonical expressions currently held by this interner
+     */
+    public int size() {
+        expungeCollected();
+        return table.size();
+    }
+
+    /**
+     * @param kind ADDITION or MULTIPLICATION
+     * @param left canonical left operand
+     * @param right canonical right operand
+     * @return the canonical operation of the given kind over left and right
+     */
+    private Expression canonical(int kind, Expression left, Expression right) {
+        final Key key = new Key(kind, left, right);
+        final Expression existing = lookup(key);
+        if (existing != null) {
+            return existing;
+        }
+        return insert(key, kind == ADDITION ? new Addition(left, right) : new Multiplication(left, right));
+    }
+
+    private Expression lookup(Key key) {
+        final Entry entry = table.get(key);
+        return entry == null ? null : entry.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E extends Expression> E insert(Key key, E candidate) {
+        expungeCollected();
+        final Entry fresh = new Entry(candidate, key, collected);
+        while (true) {
+            final Entry existing = table.putIfAbsent(key, fresh);
+            if (existing == null) {
+                return candidate;
+            }
+            final Expression winner = existing.get();
+            if (winner != null) {
+                return (E) winner;
+            }
+            // the previous canonical instance was collected; replace its stale entry
+            if (table.replace(key, existing, fresh)) {
+                return candidate;
+            }
+        }
+    }
+
+    private void expungeCollected() {
+        Entry stale;
+        while ((stale = (Entry) collected.poll()) != null) {
+            table.remove(stale.key, stale);
+        }
+    }
+
+    /**
+     * Table key. Leaves compare by value; operations compare their (canonical) operands by identity,
+     * so a lookup never descends into subexpressions.
+     */
+    private static final class Key {
+        private final int kind;
+        private final Object first;
+        private final Object second;
+        private final int hash;
+
+        Key(int kind, Object first, Object second) {
+            this.kind = kind;
+            this.first = first;
+            this.second = second;
+            this.hash = kind <= VARIABLE
+                    ? 31 * kind + first.hashCode()
+                    : (31 * kind + System.identityHashCode(first)) * 31 + System.identityHashCode(second);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            if (kind != other.kind || hash != other.hash) {
+                return false;
+            }
+            return kind <= VARIABLE
+                    ? first.equals(other.first)
+                    : first == other.first && second == other.second;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry extends WeakReference<Expression> {
+        private final Key key;
+
+        Entry(Expression expression, Key key, ReferenceQueue<Expression> queue) {
+            super(expression, queue);
+            this.key = key;
+        }
+    }
+}
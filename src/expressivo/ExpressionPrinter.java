@@ -0,0 +1,173 @@
+package expressivo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Prints expressions straight into a StringBuilder, Writer or any other Appendable.
+ *
+ * The tree is walked once with an explicit stack, and every node writes only its own number,
+ * name, operator or parentheses, so printing takes time linear in the size of the output and
+ * builds no intermediate strings. To stream a large expression to a file or socket, pass a
+ * buffered Writer.
+ *
+ * Two styles are supported. Fully parenthesized output, as given by Expression.toString(),
+ * wraps every operation in parentheses and writes numbers as Double.toString() does:
+ * "((x * y) + 1.0)". Minimal output writes parentheses only where the grouping needs them,
+ * and writes integral numbers as plain digits: "x * y + 1". Both group * tighter than + and
+ * both operators to the left, as the parser does.
+ *
+ * The parser accepts only digits in numbers, so minimal output parses back to an equal
+ * expression whenever every number in it is integral, while fully parenthesized output
+ * parses back only if the expression has no numbers at all. A number with a fractional part,
+ * or one that is not finite, cannot be written in a form the parser accepts.
+ */
+public final class ExpressionPrinter {
+
+    private static final int SUM_PRECEDENCE = 1;
+    private static final int PRODUCT_PRECEDENCE = 2;
+    private static final int LEAF_PRECEDENCE = 3;
+
+    private ExpressionPrinter() {
+    }
+
+    /**
+     * @param expression expression to print
+     * @return fully parenthesized representation of expression, as specified by Expression.toString()
+     */
+    static String print(Expression expression) {
+        return print(expression, false);
+    }
+
+    /**
+     * @param expression expression to print
+     * @param minimalParentheses true to write parentheses only where grouping requires them,
+     *                           false to parenthesize every operation
+     * @return representation of expression in the chosen style
+     */
+    public static String print(Expression expression, boolean minimalParentheses) {
+        final StringBuilder out = new StringBuilder();
+        try {
+            print(expression, minimalParentheses, out);
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Write the representation of an expression. Nothing is buffered: each piece is appended to
+     * out as soon as it is known.
+     *
+     * @param expression expression to print
+     * @param minimalParentheses true to write parentheses only where grouping requires them,
+     *                           false to parenthesize every operation
+     * @param out destination of the representation
+     * @throws IOException if out throws
+     */
+    public static void print(Expression expression, boolean minimalParentheses, Appendable out) throws IOException {
+        // each entry is either a subexpression still to print or a literal piece of punctuation
+        final Deque<Object> pending = new ArrayDeque<>();
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            final Object item = pending.pop();
+            if (item instanceof String) {
+                out.append((String) item);
+            } else if (item instanceof Number) {
+                final double value = ((Number) item).getValue();
+                out.append(minimalParentheses ? digits(value) : Double.toString(value));
+            } else if (item instanceof Variable) {
+                out.append(((Variable) item).getName());
+            } else if (item instanceof Addition) {
+                final Addition addition = (Addition) item;
+                pushOperation(pending, addition.getLeft(), " + ", addition.getRight(), SUM_PRECEDENCE, minimalParentheses);
+            } else if (item instanceof Multiplication) {
+                final Multiplication multiplication = (Multiplication) item;
+                pushOperation(pending, multiplication.getLeft(), " * ", multiplication.getRight(), PRODUCT_PRECEDENCE, minimalParentheses);
+            } else if (item instanceof Sum) {
+                pushChain(pending, ((Sum) item).getOperands(), " + ", SUM_PRECEDENCE, minimalParentheses);
+            } else if (item instanceof Product) {
+                pushChain(pending, ((Product) item).getOperands(), " * ", PRODUCT_PRECEDENCE, minimalParentheses);
+            } else {
+                out.append(item.toString());
+            }
+        }
+    }
+
+    /**
+     * @return value as plain decimal digits if it is a nonnegative integer, which is exactly how
+     *         the parser reads it back, or else as Double.toString(value)
+     */
+    private static String digits(double value) {
+        if (value >= 0 && value < 0x1p63 && value == Math.rint(value)) {
+            return Long.toString((long) value);
+        } else if (value >= 0x1p63 && value < Double.POSITIVE_INFINITY) {
+            // every double this large is an integer; its exact digits parse back to it
+            return new BigDecimal(value).toPlainString();
+        }
+        return Double.toString(value);
+    }
+
+    private static void pushOperation(Deque<Object> pending, Expression left, String operator, Expression right,
+            int precedence, boolean minimal) {
+        if (!minimal) {
+            pending.push(")");
+            pending.push(right);
+            pending.push(operator);
+            pending.push(left);
+            pending.push("(");
+            return;
+        }
+        pushOperand(pending, right, precedence(right) <= precedence);
+        pending.push(operator);
+        pushOperand(pending, left, precedence(left) < precedence);
+    }
+
+    /**
+     * A flattened chain prints like the left-grouped chain it stands for, but needs only one
+     * pair of parentheses even in full style: "(a + b + c)".
+     */
+    private static void pushChain(Deque<Object> pending, List<Expression> operands, String operator,
+            int precedence, boolean minimal) {
+        if (!minimal) {
+            pending.push(")");
+        }
+        for (int i = operands.size() - 1; i > 0; i--) {
+            final Expression operand = operands.get(i);
+            pushOperand(pending, operand, minimal && precedence(operand) <= precedence);
+            pending.push(operator);
+        }
+        pushOperand(pending, operands.get(0), minimal && precedence(operands.get(0)) < precedence);
+        if (!minimal) {
+            pending.push("(");
+        }
+    }
+
+    private static void pushOperand(Deque<Object> pending, Expression operand, boolean parenthesize) {
+        if (parenthesize) {
+            pending.push(")");
+            pending.push(operand);
+            pending.push("(");
+        } else {
+            pending.push(operand);
+        }
+    }
+
+    /**
+     * @return how tightly the top of expression binds; a subexpression that binds less tightly
+     *         than its context needs parentheses, and so does a right operand that binds equally
+     */
+    private static int precedence(Expression expression) {
+        if (expression instanceof Addition || expression instanceof Sum) {
+            return SUM_PRECEDENCE;
+        } else if (expression instanceof Multiplication || expression instanceof Product) {
+            return PRODUCT_PRECEDENCE;
+        }
+        return LEAF_PRECEDENCE;
+    }
+}
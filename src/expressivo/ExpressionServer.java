@@ -0,0 +1,338 @@
+package expressivo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A long-running HTTP service for the expression system, so that clients do not pay JVM
+ * startup for every command.
+ *
+ * Every endpoint takes a POST whose body holds one expression per line, and answers with one
+ * result per line, in the same order; a body of several lines is a batch processed in one
+ * request. Parameters go in the query string:
+ *   POST /parse                      the expression, as by Expression.toString()
+ *   POST /differentiate?variable=x   the derivative, as by Commands.differentiate()
+ *   POST /simplify?x=1&amp;y=2           the simplified expression, as by Commands.simplify()
+ *   POST /evaluate?x=1&amp;y=2           the value; every variable must be bound
+ * A line that fails gives "Error: " and the reason; a request of a single line that fails gets
+ * status 400 instead.
+ *
+ * Connections are multiplexed by the HTTP server's selector thread, and each request runs on
+ * its own virtual thread when the JVM supports them, or on a fixed pool with one thread per
+ * request permit otherwise. The selector thread takes a permit before handing a request over;
+ * when none is free the request goes to a small pool of refusal threads instead, which answer
+ * it with status 503 and a Retry-After header without reading the body, so overload can build
+ * up neither unbounded queues nor stalls of the selector.
+ */
+public final class ExpressionServer implements AutoCloseable {
+
+    /** Default port for main(). */
+    public static final int DEFAULT_PORT = 8031;
+    /** Largest accepted request body. */
+    public static final int MAX_BODY_BYTES = 16 << 20;
+
+    private static final int BACKLOG = 4096;
+    private static final int REQUESTS_PER_PROCESSOR_VIRTUAL = 64;
+    private static final int REQUESTS_PER_PROCESSOR_POOLED = 8;
+    private static final int REFUSAL_THREADS = 2;
+    private static final int REFUSAL_QUEUE = 1024;
+    private static final String ERROR_PREFIX = "Error: ";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ExecutorService refusals;
+    private final Semaphore permits;
+    /** True on a refusal thread while it answers a request that found no free permit. */
+    private final ThreadLocal<Boolean> refusing = ThreadLocal.withInitial(() -> false);
+
+    private ExpressionServer(HttpServer server, ExecutorService executor, int maxConcurrentRequests) {
+        this.server = server;
+        this.executor = executor;
+        this.refusals = new ThreadPoolExecutor(REFUSAL_THREADS, REFUSAL_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(REFUSAL_QUEUE));
+        this.permits = new Semaphore(maxConcurrentRequests);
+    }
+
+    /**
+     * Start a server.
+     *
+     * @param address address to listen on; port 0 picks a free port
+     * @param maxConcurrentRequests number of requests processed at once, beyond which requests
+     *                              are refused with status 503
+     * @return the running server
+     * @throws IOException if the server cannot listen on address
+     * @throws IllegalArgumentException if maxConcurrentRequests is negative
+     */
+    public static ExpressionServer start(InetSocketAddress address, int maxConcurrentRequests) throws IOException {
+        if (maxConcurrentRequests < 0) {
+            throw new IllegalArgumentException("Maximum concurrent requests must be nonnegative: " + maxConcurrentRequests);
+        }
+        final HttpServer server = HttpServer.create(address, BACKLOG);
+        final ExecutorService executor = requestExecutor(maxConcurrentRequests);
+        final ExpressionServer expressionServer = new ExpressionServer(server, executor, maxConcurrentRequests);
+        for (Operation operation : Operation.values()) {
+            server.createContext("/" + operation.path, exchange -> expressionServer.handle(operation, exchange));
+        }
+        server.setExecutor(expressionServer::dispatch);
+        server.start();
+        return expressionServer;
+    }
+
+    /**
+     * @return the address the server listens on
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Stop accepting requests, and stop the server once the requests being processed are done.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        refusals.shutdown();
+    }
+
+    /**
+     * @return number of requests that could start processing now
+     */
+    int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * Run a server until the JVM exits.
+     *
+     * @param args optional port, default DEFAULT_PORT, and optional maximum number of concurrent
+     *             requests, default 64 per processor with virtual threads and 8 per processor
+     *             without
+     * @throws IOException if the server cannot listen on the port
+     */
+    public static void main(String[] args) throws IOException {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        final int maxConcurrentRequests = args.length > 1
+                ? Integer.parseInt(args[1])
+                : (hasVirtualThreads() ? REQUESTS_PER_PROCESSOR_VIRTUAL : REQUESTS_PER_PROCESSOR_POOLED)
+                        * Runtime.getRuntime().availableProcessors();
+        final ExpressionServer server = start(new InetSocketAddress(port), maxConcurrentRequests);
+        System.out.println("Listening on " + server.getAddress());
+    }
+
+    private static boolean hasVirtualThreads() {
+        try {
+            ((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null)).shutdown();
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return an executor that runs each task on a new virtual thread if this JVM has them,
+     *         otherwise a fixed pool of one thread per permit, so a task holding a permit never
+     *         waits in the pool's queue
+     */
+    private static ExecutorService requestExecutor(int maxConcurrentRequests) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // before Java 21, or with virtual threads still in preview and not enabled
+            return Executors.newFixedThreadPool(Math.max(1, maxConcurrentRequests));
+        }
+    }
+
+    /**
+     * Run one request, handed over by the HTTP server's selector thread: on the executor if a
+     * permit is free, otherwise on a small pool of refusal threads, where handle() refuses it.
+     * Reading the request and writing the refusal block, so they never run on the selector
+     * thread; when even the refusal queue is full, the request is rejected and the HTTP server
+     * closes its connection.
+     *
+     * @throws RejectedExecutionException if the request can be neither run nor refused
+     */
+    private void dispatch(Runnable request) {
+        if (!permits.tryAcquire()) {
+            refusals.execute(() -> {
+                refusing.set(true);
+                try {
+                    request.run();
+                } finally {
+                    refusing.set(false);
+                }
+            });
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    request.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the server is closing
+            permits.release();
+            throw e;
+        }
+    }
+
+    private enum Operation {
+        PARSE("parse"), DIFFERENTIATE("differentiate"), SIMPLIFY("simplify"), EVALUATE("evaluate");
+
+        private final String path;
+
+        Operation(String path) {
+            this.path = path;
+        }
+    }
+
+    private void handle(Operation operation, HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestURI().getPath().equals("/" + operation.path)) {
+                respond(exchange, 404, "Error: no such endpoint: " + exchange.getRequestURI().getPath());
+                return;
+            }
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405, "Error: use POST");
+                return;
+            }
+            if (refusing.get()) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, "Error: server busy");
+                return;
+            }
+            final String body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                respond(exchange, 413, "Error: request body larger than " + MAX_BODY_BYTES + " bytes");
+                return;
+            }
+            final Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            final String[] lines = body.split("\r?\n", -1);
+            final int count = lines.length > 1 && lines[lines.length - 1].isEmpty() ? lines.length - 1 : lines.length;
+            if (count == 1) {
+                final String result = execute(operation, lines[0], parameters);
+                respond(exchange, result.startsWith(ERROR_PREFIX) ? 400 : 200, result);
+                return;
+            }
+            final StringBuilder results = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                results.append(execute(operation, lines[i], parameters)).append('\n');
+            }
+            respond(exchange, 200, results.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @param input one expression
+     * @return the result of operation on input, or ERROR_PREFIX and the reason if input or
+     *         parameters are invalid
+     */
+    private static String execute(Operation operation, String input, Map<String, String> parameters) {
+        // rejected input is common, so parse errors are reported without an exception
+        final ParseResult parsed = ParseCache.shared().tryParse(input);
+        if (!parsed.isSuccess()) {
+            return ERROR_PREFIX + parsed.getShortMessage();
+        }
+        try {
+            return apply(operation, parsed.getExpression(), parameters);
+        } catch (RuntimeException e) {
+            return ERROR_PREFIX + e.getMessage();
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if parameters are invalid for operation
+     */
+    private static String apply(Operation operation, Expression expression, Map<String, String> parameters) {
+        switch (operation) {
+        case PARSE:
+            return expression.toString();
+        case DIFFERENTIATE:
+            final String variable = parameters.get("variable");
+            if (variable == null) {
+                throw new IllegalArgumentException("missing parameter: variable");
+            }
+            return expression.differentiate(variable).toString();
+        case SIMPLIFY:
+            return expression.simplify(environment(parameters)).toString();
+        case EVALUATE:
+        default:
+            return Double.toString(ExpressionTape.of(expression).evaluate(environment(parameters)));
+        }
+    }
+
+    private static Map<String, Double> environment(Map<String, String> parameters) {
+        final Map<String, Double> environment = new HashMap<>();
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            try {
+                environment.put(parameter.getKey(), Double.parseDouble(parameter.getValue()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + parameter.getKey() + ": " + parameter.getValue());
+            }
+        }
+        return environment;
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        final Map<String, String> parameters = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            final int equals = pair.indexOf('=');
+            final String name = equals < 0 ? pair : pair.substring(0, equals);
+            final String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return parameters;
+    }
+
+    /**
+     * @return the body as UTF-8 text, or null if it is longer than MAX_BODY_BYTES
+     */
+    private static String readBody(InputStream in) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            body.write(buffer, 0, read);
+            if (body.size() > MAX_BODY_BYTES) {
+                return null;
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package expressivo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression stored as a flat postfix program instead of a tree of objects.
+ *
+ * Every node is one int instruction: the low OPCODE_BITS hold the opcode and the rest hold its
+ * operand, which is an index into the constant pool for a number, an index into the tape's
+ * variable table for a variable, or the operand count for a Sum or Product. Constants are kept
+ * once each in a double pool, and variables are stored as SymbolTable.global() ids. A node
+ * thus costs 4 bytes, plus 8 per distinct constant, where the AST costs an object of 16 to
+ * 32 bytes per node plus the boxed names and operand references.
+ *
+ * The instructions and constants live in buffers, which are either views of heap arrays or
+ * off-heap direct memory. Tapes are immutable and safe to share between threads.
+ */
+public final class ExpressionTape {
+
+    private static final int OPCODE_BITS = 3;
+    private static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+    private static final int MAX_OPERAND = Integer.MAX_VALUE >>> OPCODE_BITS;
+
+    static final int NUMBER = 0;
+    static final int VARIABLE = 1;
+    static final int ADD = 2;
+    static final int MULTIPLY = 3;
+    static final int SUM = 4;
+    static final int PRODUCT = 5;
+
+    private final IntBuffer code;
+    private final DoubleBuffer constants;
+    private final int[] symbols;
+    private final int maxDepth;
+
+    /**
+     * @param code postfix instructions of one expression
+     * @param constants constant pool referred to by the NUMBER instructions
+     * @param symbols SymbolTable.global() ids of the variables referred to by the VARIABLE instructions
+     * @param maxDepth maximum evaluation stack depth of code
+     */
+    ExpressionTape(IntBuffer code, DoubleBuffer constants, int[] symbols, int maxDepth) {
+        this.code = code;
+        this.constants = constants;
+        this.symbols = symbols;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Encode an expression. Subexpressions that the expression shares are written out once for
+     * every place they appear, as in the fully expanded tree.
+     *
+     * @param expression expression to encode
+     * @return a heap tape for expression
+     */
+    public static ExpressionTape of(Expression expression) {
+        final Encoder encoder = new Encoder();
+        encoder.apply(expression);
+        return encoder.finish();
+    }
+
+    /**
+     * @return a tape with the same contents stored in off-heap direct memory, or this tape if it
+     *         already is
+     */
+    public ExpressionTape toDirect() {
+        if (code.isDirect() && constants.isDirect()) {
+            return this;
+        }
+        final ByteBuffer codeBytes = ByteBuffer.allocateDirect(code.limit() * Integer.BYTES).order(ByteOrder.nativeOrder());
+        final IntBuffer directCode = codeBytes.asIntBuffer();
+        directCode.put(code.duplicate());
+        final ByteBuffer constantBytes = ByteBuffer.allocateDirect(constants.limit() * Double.BYTES).order(ByteOrder.nativeOrder());
+        final DoubleBuffer directConstants = constantBytes.asDoubleBuffer();
+        directConstants.put(constants.duplicate());
+        return new ExpressionTape(directCode.flip(), directConstants.flip(), symbols, maxDepth);
+    }
+
+    /**
+     * @return true if the instructions and constants of this tape are stored off-heap
+     */
+    public boolean isDirect() {
+        return code.isDirect();
+    }
+
+    /**
+     * @return number of instructions, one per node of the encoded tree
+     */
+    public int length() {
+        return code.limit();
+    }
+
+    /**
+     * @return bytes used by the instructions, constant pool and variable table
+     */
+    public long sizeInBytes() {
+        return (long) code.limit() * Integer.BYTES + (long) constants.limit() * Double.BYTES
+                + (long) symbols.length * Integer.BYTES;
+    }
+
+    /**
+     * @return names in the variable table of this tape, in the order in which evaluate(double[])
+     *         expects their values: for a tape made by of(), the variables of the expression in
+     *         order of first appearance; for a tape read from an ExpressionArchive, every variable
+     *         of the archive
+     */
+    public List<String> variables() {
+        final List<String> names = new ArrayList<>(symbols.length);
+        for (int symbol : symbols) {
+            names.add(SymbolTable.global().name(symbol));
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Evaluate the expression directly on the tape.
+     *
+     * @param values values of the variables, in the order given by variables();
+     *               entries beyond variables().size() are ignored
+     * @return value of the expression
+     * @throws IllegalArgumentException if values has fewer entries than variables()
+     */
+    public double evaluate(double[] values) {
+        if (values.length < symbols.length) {
+            throw new IllegalArgumentException("Expected " + symbols.length + " values, got " + values.length);
+        }
+        final double[] stack = new double[maxDepth];
+        int top = -1;
+        final int length = code.limit();
+        for (int pc = 0; pc < length; pc++) {
+            final int instruction = code.get(pc);
+            final int operand = instruction >>> OPCODE_BITS;
+            switch (instruction & OPCODE_MASK) {
+            case NUMBER:
+                stack[++top] = constants.get(operand);
+                break;
+            case VARIABLE:
+                stack[++top] = values[operand];
+                break;
+            case ADD:
+                stack[top - 1] += stack[top];
+                top--;
+                break;
+            case MULTIPLY:
+                stack[top - 1] *= stack[top];
+                top--;
+                break;
+            case SUM:
+                for (int i = 1; i < operand; i++) {
+                    stack[top - operand + 1] += stack[top - operand + 1 + i];
+                }
+                top -= operand - 1;
+                break;
+            case PRODUCT:
+                for (int i = 1; i < operand; i++) {
+                    stack[top - operand + 1] *= stack[top - operand + 1 + i];
+                }
+                top -= operand - 1;
+                break;
+            default:
+                throw new AssertionError("Unknown opcode in instruction " + instruction);
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Evaluate the expression directly on the tape.
+     *
+     * @param environment maps every variable of the expression to a value
+     * @return value of the expression
+     * @throws IllegalArgumentException if environment does not bind a variable of the expression
+     */
+    public double evaluate(Map<String, Double> environment) {
+        // only the variables the code uses need values; a shared variable table may list more
+        final double[] values = new double[symbols.length];
+        final boolean[] bound = new boolean[symbols.length];
+        final int length = code.limit();
+        for (int pc = 0; pc < length; pc++) {
+            final int instruction = code.get(pc);
+            final int v = instruction >>> OPCODE_BITS;
+            if ((instruction & OPCODE_MASK) == VARIABLE && !bound[v]) {
+                final String name = SymbolTable.global().name(symbols[v]);
+                final Double value = environment.get(name);
+                if (value == null) {
+                    throw new IllegalArgumentException("No value for variable " + name);
+                }
+                values[v] = value;
+                bound[v] = true;
+            }
+        }
+        return evaluate(values);
+    }
+
+    /**
+     * Evaluate the expression directly on the tape. The tape stores its variables by slot, so
+     * looking them up in an Environment involves no names.
+     *
+     * @param environment binds every variable of the expression
+     * @return value of the expression
+     * @throws IllegalArgumentException if environment does not bind a variable of the expression
+     */
+    public double evaluate(Environment environment) {
+        final double[] values = new double[symbols.length];
+        final int length = code.limit();
+        for (int pc = 0; pc < length; pc++) {
+            final int instruction = code.get(pc);
+            if ((instruction & OPCODE_MASK) == VARIABLE) {
+                final int symbol = symbols[instruction >>> OPCODE_BITS];
+                if (!environment.isBound(symbol)) {
+                    throw new IllegalArgumentException("No value for variable " + SymbolTable.global().name(symbol));
+                }
+                values[instruction >>> OPCODE_BITS] = environment.value(symbol);
+            }
+        }
+        return evaluate(values);
+    }
+
+    /**
+     * Decode the tape back into an AST, building Sum and Product nodes where the encoded
+     * expression had them.
+     *
+     * @return an expression structurally equal to the encoded one
+     */
+    public Expression toExpression() {
+        final Variable[] variables = new Variable[symbols.length];
+        for (int v = 0; v < symbols.length; v++) {
+            variables[v] = new Variable(SymbolTable.global().name(symbols[v]));
+        }
+        final Expression[] stack = new Expression[maxDepth];
+        int top = -1;
+        final int length = code.limit();
+        for (int pc = 0; pc < length; pc++) {
+            final int instruction = code.get(pc);
+            final int operand = instruction >>> OPCODE_BITS;
+            switch (instruction & OPCODE_MASK) {
+            case NUMBER:
+                stack[++top] = new Number(constants.get(operand));
+                break;
+            case VARIABLE:
+                stack[++top] = variables[operand];
+                break;
+            case ADD:
+                stack[top - 1] = new Addition(stack[top - 1], stack[top]);
+                stack[top--] = null;
+                break;
+            case MULTIPLY:
+                stack[top - 1] = new Multiplication(stack[top - 1], stack[top]);
+                stack[top--] = null;
+                break;
+            default:
+                final Expression[] operands = Arrays.copyOfRange(stack, top - operand + 1, top + 1);
+                Arrays.fill(stack, top - operand + 1, top + 1, null);
+                top -= operand;
+                stack[++top] = (instruction & OPCODE_MASK) == SUM ? new Sum(operands) : new Product(operands);
+                break;
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Print the expression directly from the tape.
+     *
+     * @return the same representation as toExpression().toString()
+     */
+    @Override
+    public String toString() {
+        final int length = code.limit();
+        // first[pc] is the first instruction of the subexpression that ends at instruction pc
+        final int[] first = new int[length];
+        for (int pc = 0; pc < length; pc++) {
+            int start = pc;
+            for (int i = 0; i < arity(code.get(pc)); i++) {
+                start = first[start - 1];
+            }
+            first[pc] = start;
+        }
+        final StringBuilder out = new StringBuilder();
+        // each entry is either the last instruction of a subexpression still to print or punctuation
+        final Deque<Object> pending = new ArrayDeque<>();
+        pending.push(length - 1);
+        while (!pending.isEmpty()) {
+            final Object item = pending.pop();
+            if (item instanceof String) {
+                out.append((String) item);
+                continue;
+            }
+            final int pc = (Integer) item;
+            final int instruction = code.get(pc);
+            final int opcode = instruction & OPCODE_MASK;
+            if (opcode == NUMBER) {
+                out.append(constants.get(instruction >>> OPCODE_BITS));
+            } else if (opcode == VARIABLE) {
+                out.append(SymbolTable.global().name(symbols[instruction >>> OPCODE_BITS]));
+            } else {
+                final String operator = opcode == ADD || opcode == SUM ? " + " : " * ";
+                pending.push(")");
+                // operands end at pc - 1, and each earlier one ends just before the next one starts
+                int end = pc - 1;
+                for (int i = arity(instruction); i > 0; i--) {
+                    pending.push(end);
+                    pending.push(i > 1 ? operator : "(");
+                    end = first[end] - 1;
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    IntBuffer code() {
+        return code.duplicate();
+    }
+
+    DoubleBuffer constants() {
+        return constants.duplicate();
+    }
+
+    int[] symbols() {
+        return symbols;
+    }
+
+    int maxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return number of operands the instruction pops
+     */
+    private static int arity(int instruction) {
+        switch (instruction & OPCODE_MASK) {
+        case NUMBER:
+        case VARIABLE:
+            return 0;
+        case ADD:
+        case MULTIPLY:
+            return 2;
+        default:
+            return instruction >>> OPCODE_BITS;
+        }
+    }
+
+    static int opcode(int instruction) {
+        return instruction & OPCODE_MASK;
+    }
+
+    static int operand(int instruction) {
+        return instruction >>> OPCODE_BITS;
+    }
+
+    static int instruction(int opcode, int operand) {
+        if (operand > MAX_OPERAND) {
+            throw new IllegalArgumentException("Operand too large for a tape instruction: " + operand);
+        }
+        return operand << OPCODE_BITS | opcode;
+    }
+
+    /**
+     * Emits instructions as the fold visits nodes, which it does in postfix order.
+     */
+    private static final class Encoder implements ExpressionFold<Void> {
+        private int[] code = new int[16];
+        private int length;
+        private double[] constants = new double[4];
+        private final Map<Long, Integer> constantIndexes = new HashMap<>();
+        private final Map<Integer, Integer> variableIndexes = new HashMap<>();
+        private final List<Integer> symbols = new ArrayList<>();
+        private int depth;
+        private int maxDepth;
+
+        @Override
+        public Void number(Number number) {
+            final Long bits = Double.doubleToLongBits(number.getValue());
+            Integer index = constantIndexes.get(bits);
+            if (index == null) {
+                index = constantIndexes.size();
+                if (index == constants.length) {
+                    constants = Arrays.copyOf(constants, index * 2);
+                }
+                constants[index] = number.getValue();
+                constantIndexes.put(bits, index);
+            }
+            emit(instruction(NUMBER, index), -1);
+            return null;
+        }
+
+        @Override
+        public Void variable(Variable variable) {
+            final int symbol = variable.getId();
+            Integer index = variableIndexes.get(symbol);
+            if (index == null) {
+                index = symbols.size();
+                variableIndexes.put(symbol, index);
+                symbols.add(symbol);
+            }
+            emit(instruction(VARIABLE, index), -1);
+            return null;
+        }
+
+        @Override
+        public Void addition(Addition addition, Void left, Void right) {
+            emit(instruction(ADD, 0), 1);
+            return null;
+        }
+
+        @Override
+        public Void multiplication(Multiplication multiplication, Void left, Void right) {
+            emit(instruction(MULTIPLY, 0), 1);
+            return null;
+        }
+
+        @Override
+        public Void sum(Sum sum, List<Void> operands) {
+            emit(instruction(SUM, sum.size()), sum.size() - 1);
+            return null;
+        }
+
+        @Override
+        public Void product(Product product, List<Void> operands) {
+            emit(instruction(PRODUCT, product.size()), product.size() - 1);
+            return null;
+        }
+
+        /**
+         * @param popped net number of stack entries the instruction removes; -1 for a push
+         */
+        private void emit(int instruction, int popped) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = instruction;
+            depth -= popped;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        ExpressionTape finish() {
+            final int[] symbolArray = new int[symbols.size()];
+            for (int v = 0; v < symbolArray.length; v++) {
+                symbolArray[v] = symbols.get(v);
+            }
+            return new ExpressionTape(IntBuffer.wrap(Arrays.copyOf(code, length)),
+                    DoubleBuffer.wrap(Arrays.copyOf(constants, constantIndexes.size())), symbolArray, maxDepth);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package expressivo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Common representation of the flattened variants, Sum and Product: a left-grouped chain of
+ * one binary operation, operands[0] op operands[1] op ... op operands[n-1].
+ *
+ * The operands are kept in one array, so a chain of n operands takes one node instead of n - 1
+ * nested ones and adds a single level of depth. A flattened node stands for exactly the chain it
+ * flattens: it is structurally equal to that chain (and to any other flattened node for it), has
+ * the same hash code, and prints so that parsing gives the chain back.
+ */
+abstract class FlatOperation implements Expression {
+    private final Expression[] operands;
+    private final int size;
+    // hashes[i] is the hash code of the chain of operands[0..i], so every prefix is hashed once
+    private final int[] hashes;
+
+    /**
+     * @param operands at least two operands, in order; the array is owned by the new node
+     * @throws IllegalArgumentException if there are fewer than two operands
+     */
+    FlatOperation(Expression[] operands) {
+        if (operands.length < 2) {
+            throw new IllegalArgumentException(getClass().getSimpleName() + " needs at least two operands, got " + operands.length);
+        }
+        this.operands = operands;
+        this.size = operands.length;
+        this.hashes = new int[size];
+        hashes[0] = operands[0].hashCode();
+        for (int i = 1; i < size; i++) {
+            // the hash of the binary operation (left, right), as computed by Objects.hash(left, right)
+            hashes[i] = 31 * (31 + hashes[i - 1]) + operands[i].hashCode();
+        }
+    }
+
+    /**
+     * A view of the first size operands of a longer node, sharing its arrays.
+     */
+    FlatOperation(FlatOperation longer, int size) {
+        this.operands = longer.operands;
+        this.hashes = longer.hashes;
+        this.size = size;
+    }
+
+    /**
+     * @param size number of leading operands, 2 <= size < size()
+     * @return a node of the same variant for the first size operands, sharing this node's arrays
+     */
+    abstract FlatOperation prefix(int size);
+
+    /**
+     * @param obj any object
+     * @return true if obj is this variant or the binary operation it flattens
+     */
+    abstract boolean isSameOperation(Object obj);
+
+    /**
+     * @return number of operands, at least 2
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index an operand index, 0 <= index < size()
+     * @return the operand at index
+     */
+    public Expression getOperand(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Operand " + index + " of " + size);
+        }
+        return operands[index];
+    }
+
+    /**
+     * @return the operands, in order
+     */
+    public List<Expression> getOperands() {
+        return Collections.unmodifiableList(Arrays.asList(operands).subList(0, size));
+    }
+
+    /**
+     * @return left operand of the binary operation this node stands for: the chain of all
+     *         operands but the last, which is the first operand when there are only two
+     */
+    public Expression getLeft() {
+        return size == 2 ? operands[0] : prefix(size - 1);
+    }
+
+    /**
+     * @return right operand of the binary operation this node stands for, the last operand
+     */
+    public Expression getRight() {
+        return operands[size - 1];
+    }
+
+    @Override
+    public String toString() {
+        return ExpressionPrinter.print(this);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (isSameOperation(obj)) {
+            return hashes[size - 1] == obj.hashCode() && StructuralEquality.test(this, (Expression) obj);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashes[size - 1];
+    }
+}
@@ -0,0 +1,140 @@
+package expressivo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Normalizes left-grouped chains of Additions or Multiplications into flat Sum and Product nodes.
+ *
+ * Operands of a chain are collected into a growable array as the fold climbs the chain, so
+ * flattening takes time linear in the size of the expression. The fold result for a chain is
+ * its Chain, turned into a Sum or Product only when something other than the next link of the
+ * chain uses it. A subexpression reached through more than one path is flattened once and
+ * never extended in place.
+ */
+final class Flattener implements ExpressionFold<Object> {
+
+    private final Set<Expression> shared;
+
+    private Flattener(Set<Expression> shared) {
+        this.shared = shared;
+    }
+
+    /**
+     * @param expression any expression
+     * @return an expression structurally equal to expression in which every chain of two or
+     *         more Additions or Multiplications is a single Sum or Product
+     */
+    static Expression flatten(Expression expression) {
+        return finish(new Flattener(SharedOperations.of(expression)).applyShared(expression));
+    }
+
+    @Override
+    public Object number(Number number) {
+        return number;
+    }
+
+    @Override
+    public Object variable(Variable variable) {
+        return variable;
+    }
+
+    @Override
+    public Object addition(Addition addition, Object left, Object right) {
+        return start(true, addition.getLeft(), left).add(finish(right));
+    }
+
+    @Override
+    public Object multiplication(Multiplication multiplication, Object left, Object right) {
+        return start(false, multiplication.getLeft(), left).add(finish(right));
+    }
+
+    @Override
+    public Object sum(Sum sum, List<Object> operands) {
+        final Chain chain = start(true, sum.getOperand(0), operands.get(0));
+        for (int i = 1; i < operands.size(); i++) {
+            chain.add(finish(operands.get(i)));
+        }
+        return chain;
+    }
+
+    @Override
+    public Object product(Product product, List<Object> operands) {
+        final Chain chain = start(false, product.getOperand(0), operands.get(0));
+        for (int i = 1; i < operands.size(); i++) {
+            chain.add(finish(operands.get(i)));
+        }
+        return chain;
+    }
+
+    /**
+     * @return the chain that continues with the first operand node, whose result is first:
+     *         first itself if it is a chain of the same kind used nowhere else, otherwise a new
+     *         chain starting with it
+     */
+    private Chain start(boolean sum, Expression firstNode, Object first) {
+        if (first instanceof Chain && ((Chain) first).sum == sum && ((Chain) first).built == null
+                && !shared.contains(firstNode)) {
+            return (Chain) first;
+        }
+        return new Chain(sum).add(finish(first));
+    }
+
+    /**
+     * @param result a fold result
+     * @return the expression for result
+     */
+    static Expression finish(Object result) {
+        return result instanceof Chain ? ((Chain) result).build() : (Expression) result;
+    }
+
+    /**
+     * Operands of a chain under construction.
+     */
+    static final class Chain {
+        private final boolean sum;
+        private Expression[] operands = new Expression[4];
+        private int size;
+        private Expression built;
+
+        /**
+         * @param sum true for a chain of +, false for a chain of *
+         */
+        Chain(boolean sum) {
+            this.sum = sum;
+        }
+
+        /**
+         * @return true if this is a chain of +, false for a chain of *
+         */
+        boolean isSum() {
+            return sum;
+        }
+
+        /**
+         * Append an operand. Must not be called after build().
+         *
+         * @return this chain
+         */
+        Chain add(Expression operand) {
+            if (size == operands.length) {
+                operands = Arrays.copyOf(operands, size * 2);
+            }
+            operands[size++] = operand;
+            return this;
+        }
+
+        /**
+         * @return the Sum or Product of the operands so far; the same object on every call
+         */
+        Expression build() {
+            if (built == null) {
+                final Expression[] exact = size == operands.length ? operands : Arrays.copyOf(operands, size);
+                built = sum ? new Sum(exact) : new Product(exact);
+                operands = null;
+            }
+            return built;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package expressivo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reverse-mode differentiation: the partial derivatives of an expression with respect to all
+ * of its variables at once.
+ *
+ * The expression is numbered once as a DAG of its distinct subexpressions. A numeric gradient
+ * then takes one forward sweep computing the value of every node and one backward sweep
+ * propagating the derivative of the whole expression with respect to each node, its adjoint,
+ * from the root down to the variables. Both sweeps are linear in the number of distinct
+ * nodes, whatever the number of variables, where differentiating once per variable costs that
+ * much for each variable.
+ *
+ * The symbolic gradient is built by the same backward sweep over expressions instead of
+ * numbers: each adjoint is an expression that the adjoints below it refer to rather than copy,
+ * so all the partial derivatives together share one DAG of size linear in the expression.
+ *
+ * Gradients are immutable and safe to share between threads.
+ */
+public final class Gradient {
+
+    private final NodeTable.Program program;
+
+    private Gradient(NodeTable.Program program) {
+        this.program = program;
+    }
+
+    /**
+     * Prepare an expression for computing gradients.
+     *
+     * @param expression the expression to differentiate
+     * @return the gradient of expression
+     */
+    public static Gradient of(Expression expression) {
+        return new Gradient(new NodeTable(expression).program());
+    }
+
+    /**
+     * @return the variables of the expression, in order of first appearance; index i of the arrays
+     *         taken and filled by evaluate(double[], double[]) belongs to variables().get(i)
+     */
+    public List<String> variables() {
+        return program.variables;
+    }
+
+    /**
+     * Compute the value and gradient of the expression in one forward and one backward sweep.
+     *
+     * @param values values of the variables, in the order given by variables()
+     * @param gradient receives at index i the partial derivative with respect to variables().get(i)
+     * @return value of the expression
+     * @throws IllegalArgumentException if values or gradient has fewer entries than variables()
+     */
+    public double evaluate(double[] values, double[] gradient) {
+        final List<String> variables = program.variables;
+        if (values.length < variables.size() || gradient.length < variables.size()) {
+            throw new IllegalArgumentException("Expected arrays of " + variables.size() + " entries");
+        }
+        final int[] kinds = program.kinds;
+        final int[] slots = program.slots;
+        final int[][] operands = program.operands;
+        final int n = kinds.length;
+        final double[] value = new double[n];
+        program.forward(values, value);
+
+        Arrays.fill(gradient, 0, variables.size(), 0);
+        final double[] adjoint = new double[n];
+        // suffix[k] is the product of operands k and after, for the node being processed
+        final double[] suffix = new double[program.maxArity + 1];
+        adjoint[n - 1] = 1;
+        for (int i = n - 1; i >= 0; i--) {
+            final double a = adjoint[i];
+            final int[] children = operands[i];
+            switch (kinds[i]) {
+            case NodeTable.VARIABLE:
+                gradient[slots[i]] += a;
+                break;
+            case NodeTable.ADD:
+                for (int operand : children) {
+                    adjoint[operand] += a;
+                }
+                break;
+            case NodeTable.MULTIPLY: {
+                // the derivative by one operand is the product of the others, computed from
+                // prefix and suffix products so that a zero operand needs no division
+                suffix[children.length] = 1;
+                for (int k = children.length - 1; k >= 0; k--) {
+                    suffix[k] = suffix[k + 1] * value[children[k]];
+                }
+                double prefix = 1;
+                for (int k = 0; k < children.length; k++) {
+                    adjoint[children[k]] += a * prefix * suffix[k + 1];
+                    prefix *= value[children[k]];
+                }
+                break;
+            }
+            default:
+                break;
+            }
+        }
+        return value[n - 1];
+    }
+
+    /**
+     * @param environment maps every variable of the expression to its value; other entries are ignored
+     * @return map from each variable of the expression, in order of first appearance, to the partial
+     *         derivative of the expression with respect to it at environment
+     * @throws IllegalArgumentException if environment does not map some variable of the expression
+     */
+    public Map<String, Double> evaluate(Map<String, Double> environment) {
+        final double[] values = program.values(environment);
+        final double[] gradient = new double[values.length];
+        evaluate(values, gradient);
+        final Map<String, Double> result = new LinkedHashMap<>();
+        for (int i = 0; i < gradient.length; i++) {
+            result.put(program.variables.get(i), gradient[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Differentiate an expression with respect to all of its variables in one backward sweep.
+     *
+     * @param expression the expression to differentiate
+     * @return map from each variable of expression, in order of first appearance, to the
+     *         derivative of expression with respect to it; the derivatives share subexpressions
+     *         with each other and with expression, and are not necessarily in simplest form
+     */
+    public static Map<String, Expression> symbolic(Expression expression) {
+        final NodeTable table = new NodeTable(expression);
+        final int n = table.size();
+        // contributions to each node's adjoint, one per use by an operation above it
+        final List<List<Expression>> contributions = new ArrayList<>(Collections.nCopies(n, null));
+        final Map<String, List<Expression>> byVariable = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            if (table.nodes[i] instanceof Variable) {
+                byVariable.put(((Variable) table.nodes[i]).getName(), new ArrayList<>());
+            }
+        }
+        contributions.set(n - 1, new ArrayList<>(Collections.singletonList(new Number(1))));
+        for (int i = n - 1; i >= 0; i--) {
+            final Expression adjoint = total(contributions.get(i));
+            contributions.set(i, null);
+            final Expression node = table.nodes[i];
+            final int[] children = table.operands[i];
+            if (node instanceof Variable) {
+                byVariable.get(((Variable) node).getName()).add(adjoint);
+            } else if (node instanceof Addition || node instanceof Sum) {
+                for (int child : children) {
+                    contribute(contributions, child, adjoint);
+                }
+            } else if (node instanceof Multiplication || node instanceof Product) {
+                // the products of the operands before and after each one, shared between operands
+                final Expression[] suffix = new Expression[children.length + 1];
+                for (int k = children.length - 1; k >= 0; k--) {
+                    suffix[k] = times(table.nodes[children[k]], suffix[k + 1]);
+                }
+                Expression prefix = null;
+                for (int k = 0; k < children.length; k++) {
+                    contribute(contributions, children[k], times(adjoint, times(prefix, suffix[k + 1])));
+                    prefix = times(prefix, table.nodes[children[k]]);
+                }
+            }
+        }
+        final Map<String, Expression> gradient = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Expression>> entry : byVariable.entrySet()) {
+            gradient.put(entry.getKey(), total(entry.getValue()));
+        }
+        return gradient;
+    }
+
+    private static void contribute(List<List<Expression>> contributions, int node, Expression contribution) {
+        List<Expression> list = contributions.get(node);
+        if (list == null) {
+            list = new ArrayList<>();
+            contributions.set(node, list);
+        }
+        list.add(contribution);
+    }
+
+    /**
+     * @param terms one or more expressions
+     * @return their sum, as a single Sum if there are more than two
+     */
+    private static Expression total(List<Expression> terms) {
+        switch (terms.size()) {
+        case 1:
+            return terms.get(0);
+        case 2:
+            return new Addition(terms.get(0), terms.get(1));
+        default:
+            return new Sum(terms);
+        }
+    }
+
+    /**
+     * @return left * right, where null stands for an empty product and a Number 1 is dropped
+     */
+    private static Expression times(Expression left, Expression right) {
+        if (left == null || isOne(left)) {
+            return right == null ? new Number(1) : right;
+        } else if (right == null || isOne(right)) {
+            return left;
+        }
+        return new Multiplication(left, right);
+    }
+
+    private static boolean isOne(Expression expression) {
+        return expression instanceof Number && ((Number) expression).getValue() == 1;
+    }
+}
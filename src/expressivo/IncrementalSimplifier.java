@@ -0,0 +1,287 @@
+package expressivo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Simplifies one expression repeatedly under environments that differ only a little from
+ * call to call.
+ *
+ * The simplifier keeps the simplified form of every chain of the expression from the previous
+ * call. A chain is a maximal run of Additions and Sums, or of Multiplications and Products,
+ * linked through nodes used nowhere else, so a wide sum nested either way is one chain and
+ * keeps one polynomial rather than one per link. Each variable knows the leaves where it
+ * occurs and each chain knows the chains using it, so when some variables change value, are
+ * bound or are unbound, only the chains above their leaves are recomputed, bottom-up, from the
+ * kept forms of their operands. An update thus costs time proportional to the size of the
+ * affected chains and their polynomials, plus a lookup per variable of the expression to find
+ * what changed; untouched chains cost nothing.
+ *
+ * The price is memory: one simplified form per chain. Simplifiers are not safe for use by
+ * multiple threads at once.
+ */
+public final class IncrementalSimplifier {
+
+    // distinct subexpressions in post-order, so operands come before their parents and the
+    // root is last; the other per-node arrays are indexed the same way
+    private final Expression[] nodes;
+    private final int[][] operands;
+    private final boolean[] chainRoot; // true for an operation that ends a chain
+    private final int[] leafVariable; // index into variables for a Variable node, else -1
+    private final Polynomial.Simplified[] forms; // of chain roots under the bindings of the previous call
+
+    // for each chain root, the operations of its chain in post-order, ending with the root
+    // itself, and the chain roots having it as an operand of their chains
+    private final int[][] members;
+    private final int[][] users;
+    private final boolean[] affected; // all false between calls
+    private final Polynomial.Simplified[] scratch; // forms of chain members during a recomputation
+
+    // the expression's variables, with the Variable nodes of each and its binding in the previous call
+    private final String[] variables;
+    private final int[][] leaves;
+    private final boolean[] bound;
+    private final double[] values;
+    private boolean initialized;
+    private Expression result;
+    private int recomputed;
+
+    /**
+     * @param expression the expression to simplify
+     */
+    public IncrementalSimplifier(Expression expression) {
+        final NodeTable table = new NodeTable(expression);
+        this.nodes = table.nodes;
+        this.operands = table.operands;
+        final int[][] parents = table.parents();
+
+        // a node's chain is decided by its parent, which has a larger index
+        this.chainRoot = new boolean[nodes.length];
+        final int[] chainOf = new int[nodes.length];
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            if (operands[i].length == 0) {
+                chainOf[i] = -1;
+            } else if (parents[i].length == 1 && kind(parents[i][0]) == kind(i)) {
+                chainOf[i] = chainOf[parents[i][0]];
+            } else {
+                chainRoot[i] = true;
+                chainOf[i] = i;
+            }
+        }
+        final List<List<Integer>> memberLists = new ArrayList<>(nodes.length);
+        final List<Set<Integer>> userSets = new ArrayList<>(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            memberLists.add(chainRoot[i] ? new ArrayList<>() : null);
+            userSets.add(null);
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            if (chainOf[i] >= 0) {
+                memberLists.get(chainOf[i]).add(i);
+            }
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            for (int parent : parents[i]) {
+                final int user = chainOf[parent];
+                if (user != chainOf[i]) {
+                    if (userSets.get(i) == null) {
+                        userSets.set(i, new LinkedHashSet<>());
+                    }
+                    userSets.get(i).add(user);
+                }
+            }
+        }
+        this.members = new int[nodes.length][];
+        this.users = new int[nodes.length][];
+        for (int i = 0; i < nodes.length; i++) {
+            members[i] = chainRoot[i] ? toArray(memberLists.get(i)) : null;
+            users[i] = userSets.get(i) == null ? new int[0] : toArray(userSets.get(i));
+        }
+
+        final Map<String, List<Integer>> leafLists = new LinkedHashMap<>();
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] instanceof Variable) {
+                leafLists.computeIfAbsent(((Variable) nodes[i]).getName(), name -> new ArrayList<>()).add(i);
+            }
+        }
+        this.variables = leafLists.keySet().toArray(new String[0]);
+        this.leaves = new int[variables.length][];
+        this.leafVariable = new int[nodes.length];
+        Arrays.fill(leafVariable, -1);
+        for (int v = 0; v < variables.length; v++) {
+            leaves[v] = toArray(leafLists.get(variables[v]));
+            for (int leaf : leaves[v]) {
+                leafVariable[leaf] = v;
+            }
+        }
+        this.forms = new Polynomial.Simplified[nodes.length];
+        this.scratch = new Polynomial.Simplified[nodes.length];
+        this.affected = new boolean[nodes.length];
+        this.bound = new boolean[variables.length];
+        this.values = new double[variables.length];
+    }
+
+    /**
+     * Simplify the expression under a new environment, reusing the work of the previous call
+     * for every chain whose variables have the same bindings as then.
+     *
+     * @param environment maps variables to nonnegative values, as for Expression.simplify()
+     * @return the expression simplified under environment, equal to expression.simplify(environment)
+     * @throws IllegalArgumentException if environment maps an invalid variable name or a negative value
+     */
+    public Expression simplify(Map<String, Double> environment) {
+        Polynomial.validateEnvironment(environment);
+        final int[] stale;
+        if (!initialized) {
+            for (int v = 0; v < variables.length; v++) {
+                final Double value = environment.get(variables[v]);
+                bound[v] = value != null;
+                values[v] = value == null ? 0 : value;
+            }
+            int count = 0;
+            for (int i = 0; i < nodes.length; i++) {
+                if (chainRoot[i]) {
+                    count++;
+                }
+            }
+            stale = new int[count];
+            for (int i = 0, k = 0; i < nodes.length; i++) {
+                if (chainRoot[i]) {
+                    stale[k++] = i;
+                }
+            }
+            initialized = true;
+        } else {
+            stale = staleChains(environment);
+        }
+
+        for (int root : stale) {
+            forms[root] = compute(root);
+            affected[root] = false;
+        }
+        recomputed = stale.length;
+        if (stale.length > 0 || result == null || operands[nodes.length - 1].length == 0) {
+            result = form(nodes.length - 1).toExpression();
+        }
+        return result;
+    }
+
+    /**
+     * @return number of chains recomputed by the last call to simplify()
+     */
+    int recomputed() {
+        return recomputed;
+    }
+
+    /**
+     * Record the bindings of environment and find the chains whose forms they change.
+     *
+     * @return indices of the roots of those chains in increasing order, each marked in affected
+     */
+    private int[] staleChains(Map<String, Double> environment) {
+        int[] stale = new int[16];
+        int size = 0;
+        for (int v = 0; v < variables.length; v++) {
+            final Double value = environment.get(variables[v]);
+            final boolean nowBound = value != null;
+            if (nowBound == bound[v] && (!nowBound || Double.compare(value, values[v]) == 0)) {
+                continue;
+            }
+            bound[v] = nowBound;
+            values[v] = nowBound ? value : 0;
+            for (int leaf : leaves[v]) {
+                for (int user : users[leaf]) {
+                    if (!affected[user]) {
+                        if (size == stale.length) {
+                            stale = Arrays.copyOf(stale, size * 2);
+                        }
+                        affected[user] = true;
+                        stale[size++] = user;
+                    }
+                }
+            }
+        }
+        // every chain above a stale chain is stale too; stale doubles as the worklist
+        for (int next = 0; next < size; next++) {
+            for (int user : users[stale[next]]) {
+                if (!affected[user]) {
+                    if (size == stale.length) {
+                        stale = Arrays.copyOf(stale, size * 2);
+                    }
+                    affected[user] = true;
+                    stale[size++] = user;
+                }
+            }
+        }
+        final int[] sorted = Arrays.copyOf(stale, size);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Simplify a chain from the kept forms of its operands, as simplify() would, link by link.
+     * The forms of the links are dropped once the chain's form is built.
+     */
+    private Polynomial.Simplified compute(int root) {
+        for (int i : members[root]) {
+            final int[] children = operands[i];
+            final boolean sum = kind(i) == 1;
+            Polynomial.Simplified total = form(children[0]);
+            boolean reusable = isLink(children[0]);
+            for (int k = 1; k < children.length; k++) {
+                total = sum
+                        ? Polynomial.Simplified.add(total, reusable, form(children[k]), isLink(children[k]))
+                        : Polynomial.Simplified.multiply(total, form(children[k]), Polynomial.MAX_EXPANDED_TERMS);
+                reusable = true;
+            }
+            scratch[i] = total;
+        }
+        final Polynomial.Simplified form = scratch[root];
+        for (int i : members[root]) {
+            scratch[i] = null;
+        }
+        return form;
+    }
+
+    /**
+     * @return the current form of a node: computed for a leaf, kept for a chain root, or in
+     *         scratch for a link of the chain being recomputed
+     */
+    private Polynomial.Simplified form(int i) {
+        final Expression node = nodes[i];
+        if (node instanceof Number) {
+            return Polynomial.Simplified.constant(((Number) node).getValue());
+        } else if (node instanceof Variable) {
+            final int v = leafVariable[i];
+            return bound[v] ? Polynomial.Simplified.constant(values[v]) : Polynomial.Simplified.variable(variables[v]);
+        }
+        return chainRoot[i] ? forms[i] : scratch[i];
+    }
+
+    /**
+     * @return true if the form of node i is not kept, so its chain may build on it in place
+     */
+    private boolean isLink(int i) {
+        return !chainRoot[i];
+    }
+
+    /**
+     * @return 1 for an addition, 2 for a multiplication, 0 for a leaf
+     */
+    private int kind(int i) {
+        final Expression node = nodes[i];
+        if (node instanceof Addition || node instanceof Sum) {
+            return 1;
+        }
+        return node instanceof Multiplication || node instanceof Product ? 2 : 0;
+    }
+
+    private static int[] toArray(Collection<Integer> indices) {
+        return indices.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
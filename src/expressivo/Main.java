@@ -1,12 +1,25 @@
 package expressivo;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -15,74 +28,251 @@ import java.util.regex.Pattern;
  */
 public class Main {
 
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    /** Chains queued per batch worker thread, bounding memory while keeping every thread busy. */
+    private static final int CHAINS_IN_FLIGHT_PER_THREAD = 64;
+
     /**
      * Read expression and command inputs from the console and output results.
      * An empty input terminates the program.
      * 
-     * @param args unused
-     * @throws IOException if there is an error reading the input
+     * With the argument --batch, run non-interactively instead: read the same inputs from the file
+     * named by the last argument, or from standard input if there is none, and write only the
+     * results, block-buffered. With --threads=N as well, independent parts of the input, each
+     * starting at an expression line, are processed on N threads; the output is in input order.
+     *
+     * @param args nothing for interactive use, or --batch [--threads=N] [file]
+     * @throws IOException if there is an error reading the input or writing the output
      */
     public static void main(String[] args) throws IOException {
-        final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
-        Optional<Expression> currentExpression = Optional.empty(); // Tracks the current expression
+        if (args.length == 0) {
+            runInteractive(new BufferedReader(new InputStreamReader(System.in)));
+            return;
+        }
+        boolean batch = false;
+        int threads = 1;
+        String file = null;
+        for (String arg : args) {
+            if (arg.equals("--batch")) {
+                batch = true;
+            } else if (arg.startsWith("--threads=")) {
+                try {
+                    threads = Integer.parseInt(arg.substring("--threads=".length()));
+                } catch (NumberFormatException nfe) {
+                    batch = false;
+                    break;
+                }
+            } else if (file == null && !arg.startsWith("--")) {
+                file = arg;
+            } else {
+                batch = false;
+                break;
+            }
+        }
+        if (!batch || threads < 1) {
+            System.err.println("usage: Main [--batch [--threads=N] [file]]");
+            System.exit(2);
+        }
+        try (BufferedReader in = file == null
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            final Writer out = new BufferedWriter(new OutputStreamWriter(System.out), OUTPUT_BUFFER_SIZE);
+            runBatch(in, out, threads);
+            out.flush();
+        }
+    }
 
+    private static void runInteractive(BufferedReader in) throws IOException {
+        final Session session = new Session();
         while (true) {
             System.out.print("> ");
             final String input = in.readLine();
 
-            if (input.isEmpty()) {
+            if (input == null || input.isEmpty()) {
                 return; // exits the program
             }
 
+            System.out.println(session.execute(input));
+        }
+    }
+
+    /**
+     * Execute inputs non-interactively. Stops at the end of the input or at an empty line,
+     * as the interactive mode does.
+     *
+     * @param in source of inputs, one per line
+     * @param out receives the output for each input, one per line; not flushed
+     * @param threads number of threads to use; with more than one, each expression line and the
+     *                commands after it are executed as an independent chain
+     * @throws IOException if there is an error reading the input or writing the output
+     */
+    static void runBatch(BufferedReader in, Writer out, int threads) throws IOException {
+        if (threads == 1) {
+            final Session session = new Session();
+            String input;
+            while ((input = in.readLine()) != null && !input.isEmpty()) {
+                out.write(session.execute(input));
+                out.write(System.lineSeparator());
+            }
+            return;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // submitted chains, oldest first; their output is written in this order as each one finishes
+        final Deque<Future<ChainResult>> inFlight = new ArrayDeque<>();
+        try {
+            Future<ChainResult> previous = null;
+            List<String> chain = new ArrayList<>();
+            String input;
+            while ((input = in.readLine()) != null && !input.isEmpty()) {
+                if (!isCommand(input) && !chain.isEmpty()) {
+                    previous = executor.submit(chainTask(chain, previous));
+                    inFlight.addLast(previous);
+                    chain = new ArrayList<>();
+                    while (inFlight.size() >= threads * CHAINS_IN_FLIGHT_PER_THREAD) {
+                        out.write(await(inFlight.removeFirst()).output);
+                    }
+                }
+                chain.add(input);
+            }
+            if (!chain.isEmpty()) {
+                inFlight.addLast(executor.submit(chainTask(chain, previous)));
+            }
+            while (!inFlight.isEmpty()) {
+                out.write(await(inFlight.removeFirst()).output);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Output of a chain and the current expression at its end.
+     */
+    private static final class ChainResult {
+        private final String output;
+        private final Optional<Expression> finalExpression;
+
+        ChainResult(String output, Optional<Expression> finalExpression) {
+            this.output = output;
+            this.finalExpression = finalExpression;
+        }
+    }
+
+    /**
+     * @param chain an expression line followed by commands on it, or commands before any expression
+     * @param previous result of the chain before, or null if chain is the first
+     * @return a task executing chain, each output line followed by a line separator
+     */
+    private static Callable<ChainResult> chainTask(List<String> chain, Future<ChainResult> previous) {
+        return () -> {
+            final Session session = new Session();
+            final StringBuilder output = new StringBuilder();
+            for (String input : chain) {
+                output.append(session.execute(input)).append(System.lineSeparator());
+                if (!session.currentExpression.isPresent() && previous != null) {
+                    // an invalid expression line leaves the previous chain's expression current;
+                    // the executor starts tasks in order, so previous is already running or done
+                    session.currentExpression = await(previous).finalExpression;
+                }
+            }
+            return new ChainResult(output.toString(), session.currentExpression);
+        };
+    }
+
+    private static <T> T await(Future<T> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for batch output", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IOException("Batch execution failed", e.getCause());
+        }
+    }
+
+    private static boolean isCommand(String input) {
+        return input.startsWith(DIFFERENTIATE_PREFIX) || input.startsWith(SIMPLIFY_PREFIX);
+    }
+
+    /**
+     * The state of one console session: the current expression, which commands act on.
+     */
+    private static final class Session {
+        private Optional<Expression> currentExpression = Optional.empty(); // Tracks the current expression
+        private final Environment environment = new Environment(); // Refilled by each command
+
+        /**
+         * @param input an expression or a command
+         * @return the output for input, which is an error message if input is invalid
+         */
+        String execute(String input) {
             try {
                 final String output;
 
                 if (input.startsWith(DIFFERENTIATE_PREFIX)) {
                     // Handle differentiation command
                     final String variable = parseDifferentiate(input);
-                    Expression differentiated = currentExpression
-                            .orElseThrow(() -> new NoSuchElementException("No expression to differentiate"))
-                            .differentiate(variable);
-                    output = differentiated.toString();
-                    currentExpression = Optional.of(differentiated);
+                    parseAssignments(input.substring(DIFFERENTIATE_PREFIX.length() + variable.length()), environment);
+                    final Expression current = currentExpression
+                            .orElseThrow(() -> new NoSuchElementException("No expression to differentiate"));
+                    if (environment.size() == 0) {
+                        Expression differentiated = current.differentiate(variable);
+                        output = differentiated.toString();
+                        currentExpression = Optional.of(differentiated);
+                    } else {
+                        // a derivative at a point is a result, like !simplify, not a new current expression
+                        output = Commands.differentiate(current, variable, environment).toString();
+                    }
 
                 } else if (input.startsWith(SIMPLIFY_PREFIX)) {
                     // Handle simplification command
-                    final Map<String, Double> environment = parseSimplify(input);
+                    parseSimplify(input, environment);
                     Expression simplified = currentExpression
                             .orElseThrow(() -> new NoSuchElementException("No expression to simplify"))
                             .simplify(environment);
                     output = simplified.toString();
 
                 } else {
-                    // Parse and store the new expression
-                    Expression expression = Expression.parse(input);
+                    // Parse and store the new expression; rejected input is common, so it is
+                    // reported without an exception
+                    final ParseResult parsed = ParseCache.shared().tryParse(input);
+                    if (!parsed.isSuccess()) {
+                        return "Error: " + parsed.getShortMessage();
+                    }
+                    Expression expression = parsed.getExpression();
                     output = expression.toString();
                     currentExpression = Optional.of(expression);
                 }
 
-                System.out.println(output);
+                return output;
 
             } catch (NoSuchElementException nse) {
-                System.out.println("Error: must enter an expression before using this command.");
+                return "Error: must enter an expression before using this command.";
             } catch (RuntimeException re) {
-                System.out.println("Error: " + re.getMessage());
+                return "Error: " + re.getMessage();
             }
         }
     }
 
     private static final String DIFFERENTIATE_PREFIX = "!d/d";
     private static final String VARIABLE = "[A-Za-z]+";
-    private static final String DIFFERENTIATE = DIFFERENTIATE_PREFIX + "(" + VARIABLE + ") *";
+    private static final String ASSIGNMENT = "(" + VARIABLE + ") *= *([^ ]+)";
+    private static final String DIFFERENTIATE = DIFFERENTIATE_PREFIX + "(" + VARIABLE + ")( +" + ASSIGNMENT + ")* *";
+    private static final Pattern DIFFERENTIATE_PATTERN = Pattern.compile(DIFFERENTIATE);
 
     /**
-     * Parses the differentiation command to extract the variable.
-     * 
+     * Parses the differentiation command to extract the variable. The command may be followed
+     * by assignments, as for !simplify, to evaluate the derivative under them.
+      
      * @param input the input command
      * @return the variable to differentiate with respect to
      */
     private static String parseDifferentiate(final String input) {
-        final Matcher commandMatcher = Pattern.compile(DIFFERENTIATE).matcher(input);
+        final Matcher commandMatcher = DIFFERENTIATE_PATTERN.matcher(input);
         if (!commandMatcher.matches()) {
             throw new CommandSyntaxException("usage: !d/d must be followed by a variable name.");
         }
@@ -91,30 +281,37 @@ public class Main {
     }
 
     private static final String SIMPLIFY_PREFIX = "!simplify";
-    private static final String ASSIGNMENT = "(" + VARIABLE + ") *= *([^ ]+)";
     private static final String SIMPLIFY = SIMPLIFY_PREFIX + "( +" + ASSIGNMENT + ")* *";
+    private static final Pattern SIMPLIFY_PATTERN = Pattern.compile(SIMPLIFY);
+    private static final Pattern ASSIGNMENT_PATTERN = Pattern.compile(ASSIGNMENT);
 
     /**
      * Parses the simplify command to extract variable assignments.
-     * 
+      
      * @param input the input command
-     * @return a map of variable-to-value assignments
+     * @param environment cleared, then receives the variable-to-value assignments
      */
-    private static Map<String, Double> parseSimplify(final String input) {
-        final Matcher commandMatcher = Pattern.compile(SIMPLIFY).matcher(input);
+    private static void parseSimplify(final String input, final Environment environment) {
+        final Matcher commandMatcher = SIMPLIFY_PATTERN.matcher(input);
         if (!commandMatcher.matches()) {
             throw new CommandSyntaxException("usage: !simplify var1=val1 var2=val2 ...");
         }
 
-        final Map<String, Double> environment = new HashMap<>();
-        final Matcher argumentMatcher = Pattern.compile(ASSIGNMENT).matcher(input);
+        parseAssignments(input.substring(SIMPLIFY_PREFIX.length()), environment);
+    }
+
+    /**
+     * @param assignments the variable assignments of a command, already checked against its pattern
+     * @param environment cleared, then receives the variable-to-value assignments
+     */
+    private static void parseAssignments(final String assignments, final Environment environment) {
+        environment.clear();
+        final Matcher argumentMatcher = ASSIGNMENT_PATTERN.matcher(assignments);
         while (argumentMatcher.find()) {
             final String variable = argumentMatcher.group(1);
             final double value = Double.parseDouble(argumentMatcher.group(2));
-            environment.put(variable, value);
+            environment.set(variable, value);
         }
-
-        return environment;
     }
 
     /**
@@ -0,0 +1,121 @@
+package expressivo;
+
+import java.util.Arrays;
+
+/**
+ * A product of variables raised to positive integer powers, such as x*x*y.
+ *
+ * Stored as a sparse exponent vector over SymbolTable ids: packed pairs
+ * (id, exponent) sorted by id, so multiplication is a linear merge.
+ */
+final class Monomial {
+
+    /** The empty product, i.e. the monomial of a constant term. */
+    static final Monomial ONE = new Monomial(new int[0]);
+
+    private final int[] packed;
+    private final int degree;
+    private final int hash;
+
+    private Monomial(int[] packed) {
+        this.packed = packed;
+        int total = 0;
+        for (int i = 1; i < packed.length; i += 2) {
+            total += packed[i];
+        }
+        this.degree = total;
+        this.hash = Arrays.hashCode(packed);
+    }
+
+    /**
+     * @param id a variable id
+     * @return the monomial consisting of that variable to the first power
+     */
+    static Monomial variable(int id) {
+        return new Monomial(new int[] {id, 1});
+    }
+
+    /**
+     * @param other a monomial
+     * @return the product of this and other
+     */
+    Monomial times(Monomial other) {
+        if (packed.length == 0) {
+            return other;
+        } else if (other.packed.length == 0) {
+            return this;
+        }
+        final int[] merged = new int[packed.length + other.packed.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < packed.length && j < other.packed.length) {
+            if (packed[i] == other.packed[j]) {
+                merged[k++] = packed[i];
+                merged[k++] = packed[i + 1] + other.packed[j + 1];
+                i += 2;
+                j += 2;
+            } else if (packed[i] < other.packed[j]) {
+                merged[k++] = packed[i++];
+                merged[k++] = packed[i++];
+            } else {
+                merged[k++] = other.packed[j++];
+                merged[k++] = other.packed[j++];
+            }
+        }
+        while (i < packed.length) {
+            merged[k++] = packed[i++];
+        }
+        while (j < other.packed.length) {
+            merged[k++] = other.packed[j++];
+        }
+        return new Monomial(k == merged.length ? merged : Arrays.copyOf(merged, k));
+    }
+
+    /**
+     * @return sum of the exponents
+     */
+    int degree() {
+        return degree;
+    }
+
+    /**
+     * @return number of distinct variables in this monomial
+     */
+    int variableCount() {
+        return packed.length / 2;
+    }
+
+    /**
+     * @param i index less than variableCount(), in increasing order of id
+     * @return id of the i-th variable
+     */
+    int variableId(int i) {
+        return packed[2 * i];
+    }
+
+    /**
+     * @param i index less than variableCount(), in increasing order of id
+     * @return exponent of the i-th variable
+     */
+    int exponent(int i) {
+        return packed[2 * i + 1];
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof Monomial) {
+            Monomial other = (Monomial) obj;
+            return hash == other.hash && Arrays.equals(packed, other.packed);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,274 @@
+package expressivo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The distinct nodes of an expression, compared by identity, numbered in post-order so that
+ * every operand has a smaller index than the operations using it and the root is last.
+ *
+ * Algorithms that sweep an expression as a DAG, forwards from the leaves or backwards from the
+ * root, run over these arrays and visit each shared subexpression once.
+ */
+final class NodeTable {
+
+    /** Kinds of node in a Program. */
+    static final int NUMBER = 0;
+    static final int VARIABLE = 1;
+    static final int ADD = 2;
+    static final int MULTIPLY = 3;
+
+    /** The distinct nodes, in post-order. */
+    final Expression[] nodes;
+    /** For each node, the indices of its operands in order; empty for a leaf. */
+    final int[][] operands;
+
+    /**
+     * @param root an expression
+     */
+    NodeTable(Expression root) {
+        final Map<Expression, Integer> index = new IdentityHashMap<>();
+        final List<Expression> order = new ArrayList<>();
+        final List<int[]> operandLists = new ArrayList<>();
+
+        final Deque<Expression> pending = new ArrayDeque<>();
+        final Deque<Boolean> expanded = new ArrayDeque<>();
+        pending.push(root);
+        expanded.push(false);
+        while (!pending.isEmpty()) {
+            final Expression node = pending.pop();
+            final boolean ready = expanded.pop();
+            if (index.containsKey(node)) {
+                continue;
+            }
+            final List<Expression> children = operandsOf(node);
+            if (ready || children.isEmpty()) {
+                // every operand was pushed above this node, so it is numbered by now
+                final int[] childIndices = new int[children.size()];
+                for (int k = 0; k < childIndices.length; k++) {
+                    childIndices[k] = index.get(children.get(k));
+                }
+                index.put(node, order.size());
+                order.add(node);
+                operandLists.add(childIndices);
+                continue;
+            }
+            pending.push(node);
+            expanded.push(true);
+            for (int k = children.size() - 1; k >= 0; k--) {
+                if (!index.containsKey(children.get(k))) {
+                    pending.push(children.get(k));
+                    expanded.push(false);
+                }
+            }
+        }
+        this.nodes = order.toArray(new Expression[0]);
+        this.operands = operandLists.toArray(new int[0][]);
+    }
+
+    /**
+     * @return number of distinct nodes
+     */
+    int size() {
+        return nodes.length;
+    }
+
+    /**
+     * @return for each node, the indices of the operations having it as an operand, once per use
+     */
+    int[][] parents() {
+        final int[] counts = new int[operands.length];
+        for (int[] children : operands) {
+            for (int child : children) {
+                counts[child]++;
+            }
+        }
+        final int[][] parents = new int[operands.length][];
+        for (int i = 0; i < operands.length; i++) {
+            parents[i] = new int[counts[i]];
+            counts[i] = 0;
+        }
+        for (int i = 0; i < operands.length; i++) {
+            for (int child : operands[i]) {
+                parents[child][counts[child]++] = i;
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * @return the nodes of this table as flat arrays for numeric sweeps, with the variables
+     *         numbered in order of first appearance
+     */
+    Program program() {
+        return program(null);
+    }
+
+    /**
+     * @param variableOrder the variables of the program, without duplicates, or null to number
+     *                      the variables in order of first appearance
+     * @return the nodes of this table as flat arrays for numeric sweeps
+     * @throws IllegalArgumentException if a variable of this table is not in variableOrder
+     */
+    Program program(List<String> variableOrder) {
+        final int n = nodes.length;
+        final int[] kinds = new int[n];
+        final double[] constants = new double[n];
+        final int[] slots = new int[n];
+        final Map<String, Integer> variableSlots = new LinkedHashMap<>();
+        if (variableOrder != null) {
+            for (String variable : variableOrder) {
+                variableSlots.put(variable, variableSlots.size());
+            }
+        }
+        int maxArity = 0;
+        for (int i = 0; i < n; i++) {
+            final Expression node = nodes[i];
+            if (node instanceof Number) {
+                kinds[i] = NUMBER;
+                constants[i] = ((Number) node).getValue();
+            } else if (node instanceof Variable) {
+                kinds[i] = VARIABLE;
+                final String name = ((Variable) node).getName();
+                if (variableOrder != null && !variableSlots.containsKey(name)) {
+                    throw new IllegalArgumentException("Variable not in variable order: " + name);
+                }
+                slots[i] = variableSlots.computeIfAbsent(name, absent -> variableSlots.size());
+            } else {
+                kinds[i] = node instanceof Addition || node instanceof Sum ? ADD : MULTIPLY;
+                maxArity = Math.max(maxArity, operands[i].length);
+            }
+        }
+        final List<String> variables = Collections.unmodifiableList(new ArrayList<>(variableSlots.keySet()));
+        return new Program(variables, kinds, constants, slots, operands, maxArity);
+    }
+
+    /**
+     * The nodes of a table as flat arrays indexed by node, in the table's post-order, for
+     * algorithms that sweep them with numbers. Programs are immutable.
+     */
+    static final class Program {
+        /** The variables, in order of first appearance. */
+        final List<String> variables;
+        /** For each node, NUMBER, VARIABLE, ADD or MULTIPLY. */
+        final int[] kinds;
+        /** For a NUMBER node, its value. */
+        final double[] constants;
+        /** For a VARIABLE node, the index of its variable in variables. */
+        final int[] slots;
+        /** For each node, the indices of its operands in order. */
+        final int[][] operands;
+        /** Largest number of operands of a node. */
+        final int maxArity;
+
+        private Program(List<String> variables, int[] kinds, double[] constants, int[] slots, int[][] operands,
+                int maxArity) {
+            this.variables = variables;
+            this.kinds = kinds;
+            this.constants = constants;
+            this.slots = slots;
+            this.operands = operands;
+            this.maxArity = maxArity;
+        }
+
+        /**
+         * @return number of nodes
+         */
+        int size() {
+            return kinds.length;
+        }
+
+        /**
+         * Compute the value of every node in one forward sweep.
+         *
+         * @param values values of the variables, in the order of variables
+         * @param nodeValues receives the value of node i at index i; at least size() entries
+         * @return value of the root
+         */
+        double forward(double[] values, double[] nodeValues) {
+            final int n = kinds.length;
+            for (int i = 0; i < n; i++) {
+                switch (kinds[i]) {
+                case NUMBER:
+                    nodeValues[i] = constants[i];
+                    break;
+                case VARIABLE:
+                    nodeValues[i] = values[slots[i]];
+                    break;
+                case ADD: {
+                    double total = 0;
+                    for (int operand : operands[i]) {
+                        total += nodeValues[operand];
+                    }
+                    nodeValues[i] = total;
+                    break;
+                }
+                default: {
+                    double total = 1;
+                    for (int operand : operands[i]) {
+                        total *= nodeValues[operand];
+                    }
+                    nodeValues[i] = total;
+                }
+                }
+            }
+            return nodeValues[n - 1];
+        }
+
+        /**
+         * @param environment maps every variable to its value; other entries are ignored
+         * @return the values of the variables, in the order of variables
+         * @throws IllegalArgumentException if environment does not map some variable
+         */
+        double[] values(Map<String, Double> environment) {
+            final double[] values = new double[variables.size()];
+            for (int i = 0; i < values.length; i++) {
+                final Double value = environment.get(variables.get(i));
+                if (value == null) {
+                    throw new IllegalArgumentException("No value for variable " + variables.get(i));
+                }
+                values[i] = value;
+            }
+            return values;
+        }
+
+        /**
+         * @param environment binds every variable; other bindings are ignored
+         * @return the values of the variables, in the order of variables
+         * @throws IllegalArgumentException if environment does not bind some variable
+         */
+        double[] values(Environment environment) {
+            final double[] values = new double[variables.size()];
+            for (int i = 0; i < values.length; i++) {
+                final int slot = SymbolTable.global().lookup(variables.get(i));
+                if (!environment.isBound(slot)) {
+                    throw new IllegalArgumentException("No value for variable " + variables.get(i));
+                }
+                values[i] = environment.value(slot);
+            }
+            return values;
+        }
+    }
+
+    /**
+     * @param node an expression
+     * @return the operands of node in order, or an empty list if node is a leaf
+     */
+    static List<Expression> operandsOf(Expression node) {
+        if (node instanceof Addition) {
+            return Arrays.asList(((Addition) node).getLeft(), ((Addition) node).getRight());
+        } else if (node instanceof Multiplication) {
+            return Arrays.asList(((Multiplication) node).getLeft(), ((Multiplication) node).getRight());
+        } else if (node instanceof FlatOperation) {
+            return ((FlatOperation) node).getOperands();
+        }
+        return Collections.emptyList();
+    }
+}
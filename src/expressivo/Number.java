@@ -9,6 +9,10 @@ public class Number implements Expression {
         this.value = value;
     }
 
+    public double getValue() {
+        return value;
+    }
+
     @Override
     public String toString() {
         return Double.toString(value);
@@ -16,6 +20,9 @@ public class Number implements Expression {
 
     @Override
     public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
         if (obj instanceof Number) {
             Number other = (Number) obj;
             return Double.compare(value, other.value) == 0;
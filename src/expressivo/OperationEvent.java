@@ -0,0 +1,37 @@
+package expressivo;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one parse, differentiate or simplify call, so that slow calls can
+ * be lined up with garbage collection and compilation events on the same timeline.
+ *
+ * Emitted only while OperationMetrics is enabled and a recording has the event switched on.
+ */
+@Name("expressivo.Operation")
+@Label("Expression Operation")
+@Category("Expressivo")
+@Description("A parse, differentiate or simplify call")
+@StackTrace(false)
+final class OperationEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Input Size")
+    @Description("Length of the input in characters")
+    @DataAmount(DataAmount.BYTES)
+    int inputSize;
+
+    @Label("Output Nodes")
+    @Description("Distinct nodes of the resulting expression, or 0 if the call failed")
+    int outputNodes;
+
+    @Label("Failed")
+    boolean failed;
+}
@@ -0,0 +1,360 @@
+package expressivo;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for Expression.parse(), Commands.differentiate() and
+ * Commands.simplify().
+ *
+ * Recording is switched on by the ENABLED_PROPERTY system property at startup. When it is off,
+ * each instrumented method tests one static final flag, which the JIT folds away, and records
+ * nothing. When it is on, each call records its latency, input size, output node count and
+ * whether it failed, and also emits an OperationEvent to any flight recording that enables it.
+ * Counting output nodes walks the result once, so with metrics on, calls cost time linear in
+ * the size of their result.
+ *
+ * Latencies go into log-linear histograms, as HdrHistogram does: values are grouped by their
+ * highest set bit and then into 32 linear sub-buckets, so every recorded value is reported
+ * within about 3% while the histogram stays a fixed, small array. All recording is lock-free
+ * and safe from any number of threads.
+ */
+public final class OperationMetrics {
+
+    /** System property that enables recording for the whole program when "true". */
+    public static final String ENABLED_PROPERTY = "expressivo.metrics";
+
+    /** Whether global() records; fixed at class initialization. */
+    public static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    private static final OperationMetrics GLOBAL = new OperationMetrics();
+
+    /**
+     * The instrumented operations.
+     */
+    public enum Operation {
+        PARSE, DIFFERENTIATE, SIMPLIFY
+    }
+
+    private final Map<Operation, Counters> counters = new EnumMap<>(Operation.class);
+
+    /**
+     * Make an empty set of metrics. Calls recorded directly on it with begin() are recorded
+     * whatever ENABLED is.
+     */
+    public OperationMetrics() {
+        for (Operation operation : Operation.values()) {
+            counters.put(operation, new Counters());
+        }
+    }
+
+    /**
+     * @return the metrics recorded by the instrumented methods when ENABLED is true
+     */
+    public static OperationMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Start timing a call. The caller must end the call with Call.end() or Call.fail().
+     *
+     * @param operation operation being called
+     * @param inputSize size of the input in characters
+     * @return the call in progress
+     */
+    public Call begin(Operation operation, int inputSize) {
+        return new Call(counters.get(operation), operation, inputSize);
+    }
+
+    /**
+     * @param operation an instrumented operation
+     * @return a snapshot of the metrics recorded for operation
+     */
+    public Snapshot snapshot(Operation operation) {
+        final Counters c = counters.get(operation);
+        return new Snapshot(c.calls.sum(), c.failures.sum(), c.inputSize.sum(), c.outputNodes.sum(), c.latency.copy());
+    }
+
+    /**
+     * @return a human-readable summary of every operation and of the shared caches' hit rates
+     */
+    public String report() {
+        final StringBuilder report = new StringBuilder();
+        for (Operation operation : Operation.values()) {
+            report.append(operation.name().toLowerCase(Locale.ROOT)).append(": ")
+                  .append(snapshot(operation)).append(System.lineSeparator());
+        }
+        report.append("parse cache: ").append(ParseCache.shared().stats()).append(String.format(Locale.ROOT,
+                " hitRate=%.3f", ParseCache.shared().stats().getHitRate())).append(System.lineSeparator());
+        report.append("derivative cache: ").append(DerivativeCache.shared().stats()).append(String.format(Locale.ROOT,
+                " hitRate=%.3f", DerivativeCache.shared().stats().getHitRate())).append(System.lineSeparator());
+        return report.toString();
+    }
+
+    /**
+     * One instrumented call in progress.
+     */
+    public static final class Call {
+        private final Counters counters;
+        private final OperationEvent event;
+        private final int inputSize;
+        private final long start;
+
+        private Call(Counters counters, Operation operation, int inputSize) {
+            this.counters = counters;
+            this.inputSize = inputSize;
+            this.event = new OperationEvent();
+            event.operation = operation.name();
+            event.inputSize = inputSize;
+            event.begin();
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Record that the call succeeded.
+         *
+         * @param output result of the call
+         * @return output
+         */
+        public Expression end(Expression output) {
+            final long elapsed = System.nanoTime() - start;
+            final int nodes = countNodes(output);
+            counters.record(elapsed, inputSize, nodes, false);
+            event.end();
+            if (event.shouldCommit()) {
+                event.outputNodes = nodes;
+                event.commit();
+            }
+            return output;
+        }
+
+        /**
+         * Record that the call threw.
+         */
+        public void fail() {
+            final long elapsed = System.nanoTime() - start;
+            counters.record(elapsed, inputSize, 0, true);
+            event.end();
+            if (event.shouldCommit()) {
+                event.failed = true;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the metrics for one operation.
+     */
+    public static final class Snapshot {
+        private final long calls;
+        private final long failures;
+        private final long inputSize;
+        private final long outputNodes;
+        private final Histogram latency;
+
+        private Snapshot(long calls, long failures, long inputSize, long outputNodes, Histogram latency) {
+            this.calls = calls;
+            this.failures = failures;
+            this.inputSize = inputSize;
+            this.outputNodes = outputNodes;
+            this.latency = latency;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return total input characters over all calls
+         */
+        public long getInputSize() {
+            return inputSize;
+        }
+
+        /**
+         * @return total output nodes over all successful calls
+         */
+        public long getOutputNodes() {
+            return outputNodes;
+        }
+
+        /**
+         * @return latency of all calls, in nanoseconds
+         */
+        public Histogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "calls=%d failures=%d inputChars=%d outputNodes=%d p50=%dns p99=%dns p999=%dns max=%dns",
+                    calls, failures, inputSize, outputNodes, latency.getValueAtQuantile(0.5),
+                    latency.getValueAtQuantile(0.99), latency.getValueAtQuantile(0.999), latency.getMax());
+        }
+    }
+
+    /**
+     * A log-linear histogram of nonnegative long values.
+     */
+    public static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = Long.SIZE - SUB_BUCKET_BITS;
+
+        private final AtomicLongArray counts;
+        private final LongAdder count = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Make an empty histogram.
+         */
+        public Histogram() {
+            this.counts = new AtomicLongArray(BUCKETS * SUB_BUCKETS);
+        }
+
+        /**
+         * @param value value to record; negative values are recorded as 0
+         */
+        public void record(long value) {
+            final long v = Math.max(0, value);
+            counts.incrementAndGet(index(v));
+            count.increment();
+            max.accumulateAndGet(v, Math::max);
+        }
+
+        /**
+         * @return number of values recorded
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @return largest value recorded, or 0 if there is none
+         */
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * @param quantile between 0 and 1
+         * @return a value that at least that fraction of the recorded values do not exceed, within
+         *         the histogram's resolution, and at most getMax(); 0 if nothing is recorded
+         * @throws IllegalArgumentException if quantile is not between 0 and 1
+         */
+        public long getValueAtQuantile(double quantile) {
+            if (!(quantile >= 0 && quantile <= 1)) {
+                throw new IllegalArgumentException("Quantile must be between 0 and 1: " + quantile);
+            }
+            long total = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                total += counts.get(i);
+            }
+            if (total == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return Math.min(highestEquivalentValue(i), getMax());
+                }
+            }
+            return getMax();
+        }
+
+        private Histogram copy() {
+            final Histogram copy = new Histogram();
+            for (int i = 0; i < counts.length(); i++) {
+                copy.counts.set(i, counts.get(i));
+            }
+            copy.count.add(count.sum());
+            copy.max.set(max.get());
+            return copy;
+        }
+
+        /**
+         * Values below SUB_BUCKETS each have their own slot; above that, a value whose highest
+         * set bit is e lands in bucket e - SUB_BUCKET_BITS + 1, at the sub-bucket given by the
+         * SUB_BUCKET_BITS bits after its highest bit.
+         */
+        private static int index(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            final int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+            final int shift = highestBit - SUB_BUCKET_BITS;
+            return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+        }
+
+        private static long highestEquivalentValue(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            final int shift = index / SUB_BUCKETS - 1;
+            final long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+            return lowest + (1L << shift) - 1;
+        }
+    }
+
+    /**
+     * Running totals for one operation.
+     */
+    private static final class Counters {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder inputSize = new LongAdder();
+        private final LongAdder outputNodes = new LongAdder();
+        private final Histogram latency = new Histogram();
+
+        void record(long latencyNanos, int inputChars, int nodes, boolean failed) {
+            calls.increment();
+            if (failed) {
+                failures.increment();
+            }
+            inputSize.add(inputChars);
+            outputNodes.add(nodes);
+            latency.record(latencyNanos);
+        }
+    }
+
+    /**
+     * @return number of distinct node objects in expression, so a shared subexpression counts once
+     */
+    static int countNodes(Expression expression) {
+        final Set<Expression> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<Expression> pending = new ArrayDeque<>();
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            final Expression node = pending.pop();
+            if (!seen.add(node)) {
+                continue;
+            }
+            if (node instanceof Addition) {
+                pending.push(((Addition) node).getRight());
+                pending.push(((Addition) node).getLeft());
+            } else if (node instanceof Multiplication) {
+                pending.push(((Multiplication) node).getRight());
+                pending.push(((Multiplication) node).getLeft());
+            } else if (node instanceof FlatOperation) {
+                pending.addAll(((FlatOperation) node).getOperands());
+            }
+        }
+        return seen.size();
+    }
+}
@@ -0,0 +1,244 @@
+package expressivo;
+
+import java.util.Arrays;
+
+/**
+ * Hand-written parser for the grammar in Expression.g4.
+ *
+ * The input is read once, character by character, and AST nodes are built as soon as
+ * their operands are complete. Pending operators and operands are kept on explicit stacks,
+ * so deeply nested parentheses cannot overflow the call stack. Sums and products are
+ * grouped to the left, exactly like the ANTLR path. In flat mode a chain of the same operator
+ * is collected into one Sum or Product instead of a nest of binary nodes.
+ */
+final class OperatorPrecedenceParser {
+
+    private static final String EXPECTED_OPERAND = "number, variable or '('";
+    private static final String EXPECTED_OPERATOR = "'+', '*' or end of input";
+    private static final String EXPECTED_OPERATOR_OR_CLOSE = "'+', '*' or ')'";
+
+    /** Numbers with at most this many digits are accumulated exactly in a long. */
+    private static final int MAX_EXACT_DIGITS = 18;
+
+    private final CharSequence input;
+    private final int length;
+    private final boolean flat;
+    private int position;
+
+    // completed operands: expressions, or Flattener.Chains in flat mode
+    private Object[] operands = new Object[16];
+    private int operandCount;
+    private char[] operators = new char[16];
+    private int operatorCount;
+    private int openCount;
+
+    // where and why run() failed
+    private int errorOffset = -1;
+    private String expected;
+
+    private OperatorPrecedenceParser(CharSequence input, boolean flat) {
+        this.input = input;
+        this.length = input.length();
+        this.flat = flat;
+    }
+
+    /**
+     * Parse an expression.
+     *
+     * @param input expression to parse, as specified by Expression.parse()
+     * @param flat true to build chains of + or * as Sum and Product nodes, false to build
+     *             only binary Additions and Multiplications
+     * @return expression AST for the input; either way, structurally equal to the ANTLR result
+     * @throws IllegalArgumentException if the expression is invalid, with the same message
+     *                                  as the ANTLR path would report
+     */
+    static Expression parse(CharSequence input, boolean flat) {
+        return tryParse(input, flat).orElseThrow();
+    }
+
+    /**
+     * Parse an expression without throwing on invalid input.
+     *
+     * @param input expression to parse, as specified by Expression.parse(), or null
+     * @param flat as for parse()
+     * @return the expression AST for the input, or the position and expected tokens of the
+     *         first error
+     */
+    static ParseResult tryParse(CharSequence input, boolean flat) {
+        if (input == null) {
+            return ParseResult.failure(null, 0, EXPECTED_OPERAND);
+        }
+        final OperatorPrecedenceParser parser = new OperatorPrecedenceParser(input, flat);
+        final Expression expression = parser.run();
+        return expression != null
+                ? ParseResult.success(expression)
+                : ParseResult.failure(input, parser.errorOffset, parser.expected);
+    }
+
+    /**
+     * @return the parsed expression, or null if the input is invalid
+     */
+    private Expression run() {
+        boolean expectOperand = true;
+        while (true) {
+            while (position < length && isSpace(input.charAt(position))) {
+                position++;
+            }
+            if (position == length) {
+                break;
+            }
+            final char c = input.charAt(position);
+            if (expectOperand) {
+                if (c >= '0' && c <= '9') {
+                    pushOperand(readNumber());
+                    expectOperand = false;
+                } else if (isLetter(c)) {
+                    pushOperand(readVariable());
+                    expectOperand = false;
+                } else if (c == '(') {
+                    pushOperator('(');
+                    openCount++;
+                    position++;
+                } else {
+                    return fail(position, EXPECTED_OPERAND);
+                }
+            } else if (c == '+' || c == '*') {
+                // both operators group to the left; * binds tighter than +
+                while (operatorCount > 0 && operators[operatorCount - 1] != '('
+                        && (c == '+' || operators[operatorCount - 1] == '*')) {
+                    reduce();
+                }
+                pushOperator(c);
+                position++;
+                expectOperand = true;
+            } else if (c == ')' && openCount > 0) {
+                while (operators[operatorCount - 1] != '(') {
+                    reduce();
+                }
+                operatorCount--;
+                openCount--;
+                position++;
+            } else {
+                return fail(position, openCount > 0 ? EXPECTED_OPERATOR_OR_CLOSE : EXPECTED_OPERATOR);
+            }
+        }
+
+        if (expectOperand) {
+            return fail(length, EXPECTED_OPERAND);
+        }
+        if (openCount > 0) {
+            return fail(length, EXPECTED_OPERATOR_OR_CLOSE);
+        }
+        while (operatorCount > 0) {
+            reduce();
+        }
+        return Flattener.finish(operands[0]);
+    }
+
+    /**
+     * @param offset position of the offending character, or the input length at end of input
+     * @param expectedTokens description of what the grammar allows at offset
+     * @return null, to signal a syntax error
+     */
+    private Expression fail(int offset, String expectedTokens) {
+        errorOffset = offset;
+        expected = expectedTokens;
+        return null;
+    }
+
+    private Number readNumber() {
+        final int start = position;
+        long digits = 0;
+        while (position < length && input.charAt(position) >= '0' && input.charAt(position) <= '9') {
+            digits = digits * 10 + (input.charAt(position) - '0');
+            position++;
+        }
+        if (position - start > MAX_EXACT_DIGITS) {
+            return new Number(Double.parseDouble(input.subSequence(start, position).toString()));
+        }
+        // a long converts to the nearest double, the same value Double.parseDouble gives
+        return new Number(digits);
+    }
+
+    private Variable readVariable() {
+        final int start = position;
+        while (position < length && isLetter(input.charAt(position))) {
+            position++;
+        }
+        return new Variable(input.subSequence(start, position).toString());
+    }
+
+    /**
+     * Pop the top operator and its two operands, and push the resulting operation.
+     */
+    private void reduce() {
+        final boolean sum = operators[--operatorCount] == '+';
+        final Expression right = Flattener.finish(operands[--operandCount]);
+        final Object left = operands[--operandCount];
+        if (!flat) {
+            final Expression l = (Expression) left;
+            operands[operandCount++] = sum ? new Addition(l, right) : new Multiplication(l, right);
+        } else if (left instanceof Flattener.Chain && ((Flattener.Chain) left).isSum() == sum) {
+            // a chain on the stack is used only by the next operator, so it can grow in place
+            operands[operandCount++] = ((Flattener.Chain) left).add(right);
+        } else {
+            operands[operandCount++] = new Flattener.Chain(sum).add(Flattener.finish(left)).add(right);
+        }
+        operands[operandCount] = null;
+    }
+
+    private void pushOperand(Expression operand) {
+        if (operandCount == operands.length) {
+            operands = Arrays.copyOf(operands, operands.length * 2);
+        }
+        operands[operandCount++] = operand;
+    }
+
+    private void pushOperator(char operator) {
+        if (operatorCount == operators.length) {
+            operators = Arrays.copyOf(operators, operators.length * 2);
+        }
+        operators[operatorCount++] = operator;
+    }
+
+    /** Whitespace skipped by the SPACES token. */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Classify rejected input the same way the ANTLR path does: emptiness first, then invalid
+     * characters, then unbalanced parentheses, and otherwise a syntax error. Only runs on
+     * input that already failed to parse.
+     */
+    static String describeError(CharSequence input) {
+        boolean blank = true;
+        boolean invalidCharacter = false;
+        int balance = 0;
+        boolean unbalanced = false;
+        for (int i = 0; i < input.length(); i++) {
+            final char c = input.charAt(i);
+            blank &= c <= ' ';
+            if (c == '(') {
+                balance++;
+            } else if (c == ')') {
+                unbalanced |= --balance < 0;
+            } else if (!isLetter(c) && !(c >= '0' && c <= '9') && c != '+' && c != '*'
+                    && !isSpace(c) && c != '\u000B' && c != '\f') {
+                invalidCharacter = true;
+            }
+        }
+        if (blank) {
+            return "Expression cannot be null or empty";
+        } else if (invalidCharacter) {
+            return "Expression contains invalid characters: " + input;
+        } else if (unbalanced || balance != 0) {
+            return "Unbalanced parentheses in expression: " + input;
+        }
+        return "Invalid expression: " + input;
+    }
+}
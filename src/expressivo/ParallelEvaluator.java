@@ -0,0 +1,126 @@
+package expressivo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates or simplifies one expression under many environments, in parallel.
+ *
+ * The environment list is split recursively into chunks that run as fork/join tasks, so idle
+ * workers steal the remaining chunks of busy ones. The expression is parsed and compiled once
+ * and shared by all workers, since expressions are immutable. Results are returned in the same
+ * order as the environments.
+ */
+public final class ParallelEvaluator {
+
+    /** Chunks are not split below this many environments, to amortize task overhead. */
+    private static final int MIN_CHUNK = 64;
+    /** Aim for this many chunks per worker, so stealing can even out uneven chunks. */
+    private static final int CHUNKS_PER_WORKER = 8;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Make an evaluator that runs on the common fork/join pool.
+     */
+    public ParallelEvaluator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool the pool to run on, whose parallelism level bounds the number of environments
+     *             processed at once; use new ForkJoinPool(n) for parallelism n
+     */
+    public ParallelEvaluator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Evaluate an expression under every environment.
+     *
+     * @param expression expression to evaluate
+     * @param environments each maps every variable of expression to a value
+     * @return array whose entry i is the value of expression under environments.get(i)
+     * @throws IllegalArgumentException if some environment does not bind a variable of expression
+     */
+    public double[] evaluate(Expression expression, List<Map<String, Double>> environments) {
+        final List<String> variables = new ArrayList<>(expression.variables());
+        final CompiledExpression compiled = expression.compile(variables);
+        final double[] results = new double[environments.size()];
+        run(environments.size(), (start, end) -> {
+            final double[] values = new double[variables.size()];
+            for (int i = start; i < end; i++) {
+                final Map<String, Double> environment = environments.get(i);
+                for (int v = 0; v < values.length; v++) {
+                    final Double value = environment.get(variables.get(v));
+                    if (value == null) {
+                        throw new IllegalArgumentException("Environment " + i + " has no value for " + variables.get(v));
+                    }
+                    values[v] = value;
+                }
+                results[i] = compiled.evaluate(values);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Simplify an expression under every environment.
+     *
+     * @param expression expression to simplify
+     * @param environments environments as specified by Expression.simplify()
+     * @return list whose entry i is expression.simplify(environments.get(i))
+     * @throws IllegalArgumentException if some environment is invalid
+     */
+    public List<Expression> simplify(Expression expression, List<Map<String, Double>> environments) {
+        final Expression[] results = new Expression[environments.size()];
+        run(environments.size(), (start, end) -> {
+            for (int i = start; i < end; i++) {
+                results[i] = expression.simplify(environments.get(i));
+            }
+        });
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Processes the indexes [start, end).
+     */
+    private interface Chunk {
+        void run(int start, int end);
+    }
+
+    private void run(int size, Chunk chunk) {
+        final int grain = Math.max(MIN_CHUNK, size / (pool.getParallelism() * CHUNKS_PER_WORKER));
+        pool.invoke(new Split(chunk, 0, size, grain));
+    }
+
+    private static final class Split extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Chunk chunk;
+        private final int start;
+        private final int end;
+        private final int grain;
+
+        Split(Chunk chunk, int start, int end, int grain) {
+            this.chunk = chunk;
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= grain) {
+                chunk.run(start, end);
+                return;
+            }
+            final int middle = (start + end) >>> 1;
+            invokeAll(new Split(chunk, start, middle, grain), new Split(chunk, middle, end, grain));
+        }
+    }
+}
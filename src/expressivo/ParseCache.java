@@ -0,0 +1,267 @@
+package expressivo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe cache from input strings to parsed expressions.
+ *
+ * Entries are evicted with a segmented LRU policy: a new entry starts in a small probation
+ * segment and is promoted to the protected segment on its second use, so a burst of one-off
+ * inputs cannot flush the frequently used ones. Expressions are immutable, so a cached
+ * expression can be shared by any number of callers. Invalid inputs are never cached.
+ *
+ * The cache is split into independently locked stripes by input hash to limit contention.
+ */
+public final class ParseCache {
+
+    /** System property giving the maximum size of the shared cache; 0 disables it. */
+    public static final String SIZE_PROPERTY = "expressivo.parseCache.size";
+    private static final int DEFAULT_SIZE = 4096;
+
+    private static final int MAX_STRIPES = 16;
+    private static final int MIN_STRIPE_SIZE = 64;
+
+    private static final ParseCache SHARED = new ParseCache(Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE));
+
+    private final int maximumSize;
+    private final ParserBackend backend;
+    private final Stripe[] stripes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Make a cache that parses with the default backend.
+     *
+     * @param maximumSize maximum number of cached expressions; 0 disables caching
+     * @throws IllegalArgumentException if maximumSize is negative
+     */
+    public ParseCache(int maximumSize) {
+        this(maximumSize, ParserBackend.HANDWRITTEN);
+    }
+
+    /**
+     * @param maximumSize maximum number of cached expressions; 0 disables caching
+     * @param backend parser used on a cache miss
+     * @throws IllegalArgumentException if maximumSize is negative
+     */
+    public ParseCache(int maximumSize, ParserBackend backend) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("Maximum size must be nonnegative: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.backend = backend;
+        final int stripeCount = Math.max(1, Math.min(MAX_STRIPES, Integer.highestOneBit(maximumSize / MIN_STRIPE_SIZE)));
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            // spread the remainder so the stripe capacities add up to maximumSize
+            stripes[i] = new Stripe(maximumSize / stripeCount + (i < maximumSize % stripeCount ? 1 : 0));
+        }
+    }
+
+    /**
+     * @return the cache used by Commands and Main, sized by the SIZE_PROPERTY system property
+     */
+    public static ParseCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Parse an expression, reusing the result of an earlier parse of the same input if it is cached.
+     *
+     * @param input expression to parse, as specified by Expression.parse()
+     * @return expression AST for the input
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public Expression parse(String input) {
+        if (maximumSize == 0 || input == null) {
+            misses.increment();
+            return Expression.parse(input, backend);
+        }
+        final Stripe stripe = stripes[spread(input.hashCode()) & (stripes.length - 1)];
+        final Expression cached = stripe.get(input);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        // parse outside the lock; a concurrent miss on the same input just parses it twice
+        final Expression parsed = Expression.parse(input, backend);
+        evictions.add(stripe.put(input, parsed));
+        return parsed;
+    }
+
+    /**
+     * Parse an expression without throwing on invalid input, reusing the result of an earlier
+     * parse of the same input if it is cached. Misses are parsed by the hand-written parser,
+     * whatever the backend, since it is the one that reports error positions.
+     *
+     * @param input expression to parse, as specified by Expression.parse(), or null
+     * @return the parse result, as specified by Expression.tryParse()
+     */
+    public ParseResult tryParse(String input) {
+        if (maximumSize == 0 || input == null) {
+            misses.increment();
+            return Expression.tryParse(input);
+        }
+        final Stripe stripe = stripes[spread(input.hashCode()) & (stripes.length - 1)];
+        final Expression cached = stripe.get(input);
+        if (cached != null) {
+            hits.increment();
+            return ParseResult.success(cached);
+        }
+        misses.increment();
+        final ParseResult parsed = Expression.tryParse(input);
+        if (parsed.isSuccess()) {
+            evictions.add(stripe.put(input, parsed.getExpression()));
+        }
+        return parsed;
+    }
+
+    /**
+     * @return current number of cached expressions
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * Remove every cached expression. Statistics are not reset.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    /**
+     * @return a snapshot of this cache's hit, miss and eviction counts
+     */
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), size());
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Snapshot of cache statistics.
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+
+        Stats(long hits, long misses, long evictions, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return fraction of lookups that were hits, or 0 if there were no lookups
+         */
+        public double getHitRate() {
+            final long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + " misses=" + misses + " evictions=" + evictions + " size=" + size;
+        }
+    }
+
+    /**
+     * One independently locked segmented LRU. Both segments iterate from least to most recently used.
+     */
+    private static final class Stripe {
+        private final int capacity;
+        private final int protectedCapacity;
+        private final LinkedHashMap<String, Expression> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<String, Expression> protectedSegment = new LinkedHashMap<>();
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = capacity * 4 / 5;
+        }
+
+        synchronized Expression get(String input) {
+            Expression expression = protectedSegment.remove(input);
+            if (expression != null) {
+                protectedSegment.put(input, expression);
+                return expression;
+            }
+            expression = probation.remove(input);
+            if (expression != null) {
+                promote(input, expression);
+            }
+            return expression;
+        }
+
+        /**
+         * @return number of entries evicted to make room
+         */
+        synchronized int put(String input, Expression expression) {
+            if (protectedSegment.containsKey(input) || probation.containsKey(input)) {
+                return 0;
+            }
+            probation.put(input, expression);
+            int evicted = 0;
+            while (probation.size() + protectedSegment.size() > capacity) {
+                final Map<String, Expression> victims = probation.isEmpty() ? protectedSegment : probation;
+                final Iterator<String> eldest = victims.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+
+        synchronized int size() {
+            return probation.size() + protectedSegment.size();
+        }
+
+        synchronized void clear() {
+            probation.clear();
+            protectedSegment.clear();
+        }
+
+        private void promote(String input, Expression expression) {
+            protectedSegment.put(input, expression);
+            if (protectedSegment.size() > protectedCapacity) {
+                // demote the least recently used protected entry back to probation
+                final Iterator<Map.Entry<String, Expression>> eldest = protectedSegment.entrySet().iterator();
+                final Map.Entry<String, Expression> demoted = eldest.next();
+                eldest.remove();
+                probation.put(demoted.getKey(), demoted.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package expressivo;
+
+import java.util.NoSuchElementException;
+
+/**
+ * The outcome of parsing an input without exceptions: either the expression, or where and why
+ * the input was rejected.
+ *
+ * A failure records only the offset of the offending character and what the grammar allows
+ * there, which getShortMessage() reports in time independent of the input length. The full
+ * message, the one Expression.parse() would throw, rescans and quotes the whole input, so it
+ * is built only if asked for.
+ */
+public final class ParseResult {
+
+    private final Expression expression;
+    private final CharSequence input;
+    private final int errorOffset;
+    private final String expected;
+
+    private ParseResult(Expression expression, CharSequence input, int errorOffset, String expected) {
+        this.expression = expression;
+        this.input = input;
+        this.errorOffset = errorOffset;
+        this.expected = expected;
+    }
+
+    /**
+     * @param expression the parsed expression
+     * @return a successful result
+     */
+    static ParseResult success(Expression expression) {
+        return new ParseResult(expression, null, -1, null);
+    }
+
+    /**
+     * @param input the rejected input, or null
+     * @param errorOffset offset of the offending character, or the input length at end of input
+     * @param expected description of what the grammar allows at errorOffset
+     * @return a failed result
+     */
+    static ParseResult failure(CharSequence input, int errorOffset, String expected) {
+        return new ParseResult(null, input, errorOffset, expected);
+    }
+
+    /**
+     * @return true if and only if the input was a valid expression
+     */
+    public boolean isSuccess() {
+        return expression != null;
+    }
+
+    /**
+     * @return the parsed expression
+     * @throws NoSuchElementException if the input was rejected
+     */
+    public Expression getExpression() {
+        if (expression == null) {
+            throw new NoSuchElementException("Input was rejected at offset " + errorOffset);
+        }
+        return expression;
+    }
+
+    /**
+     * @return the parsed expression
+     * @throws IllegalArgumentException if the input was rejected, with the message Expression.parse() gives
+     */
+    public Expression orElseThrow() {
+        if (expression == null) {
+            throw new IllegalArgumentException(getMessage());
+        }
+        return expression;
+    }
+
+    /**
+     * @return offset in the input of the first character that cannot continue a valid expression,
+     *         or the input length if the input ended too early; -1 if the input was valid
+     */
+    public int getErrorOffset() {
+        return errorOffset;
+    }
+
+    /**
+     * @return description of the tokens the grammar allows at getErrorOffset(), such as
+     *         "'+', '*' or ')'"; null if the input was valid
+     */
+    public String getExpected() {
+        return expected;
+    }
+
+    /**
+     * @return "Invalid expression at offset N: expected E" for the error offset N and the
+     *         expected tokens E, or null if the input was valid
+     */
+    public String getShortMessage() {
+        if (expression != null) {
+            return null;
+        }
+        return "Invalid expression at offset " + errorOffset + ": expected " + expected;
+    }
+
+    /**
+     * @return the message Expression.parse() throws for the input, or null if the input was
+     *         valid; takes time linear in the input length
+     */
+    public String getMessage() {
+        if (expression != null) {
+            return null;
+        }
+        return input == null ? "Expression cannot be null or empty" : OperatorPrecedenceParser.describeError(input);
+    }
+
+    @Override
+    public String toString() {
+        return expression != null
+                ? "success: " + expression
+                : "error at offset " + errorOffset + ": expected " + expected;
+    }
+}
@@ -0,0 +1,14 @@
+package expressivo;
+
+/**
+ * Implementations available to Expression.parse(). Both accept the grammar in Expression.g4
+ * and reject invalid input with the same IllegalArgumentException messages.
+ */
+public enum ParserBackend {
+
+    /** Single-pass operator-precedence parser reading the input directly; the default. */
+    HANDWRITTEN,
+
+    /** Parser generated by ANTLR from Expression.g4. */
+    ANTLR
+}
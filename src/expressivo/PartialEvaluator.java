@@ -0,0 +1,202 @@
+package expressivo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression specialized for fixed values of some of its variables, such as model
+ * parameters, to be evaluated many times over the rest.
+ *
+ * Specializing substitutes the fixed values for the bound variables and folds every
+ * subexpression that depends only on bound variables and constants into a single number,
+ * keeping the rest of the expression as it is, and then compiles the residual expression over
+ * the free variables alone. Each evaluation thus runs only the work that depends on the free
+ * variables, with no map lookups and no allocation.
+ *
+ * Unlike Expression.simplify(), specializing never expands products or reorders terms other
+ * than constants of a Sum or Product, so the residual is never larger than the original
+ * expression, and subexpressions shared in the original stay shared. Partial evaluators are
+ * immutable and safe to share between threads.
+ */
+public final class PartialEvaluator {
+
+    private final Expression residual;
+    private final CompiledExpression compiled;
+
+    private PartialEvaluator(Expression residual, CompiledExpression compiled) {
+        this.residual = residual;
+        this.compiled = compiled;
+    }
+
+    /**
+     * Specialize an expression for fixed values of some variables.
+     *
+     * @param expression the expression to specialize
+     * @param bound maps variables to nonnegative values, as for Expression.simplify(); it may
+     *              bind variables that expression does not use
+     * @return expression specialized for bound
+     * @throws IllegalArgumentException if bound maps an invalid variable name or a negative value
+     */
+    public static PartialEvaluator specialize(Expression expression, Map<String, Double> bound) {
+        Polynomial.validateEnvironment(bound);
+        final Expression residual = substitute(expression, bound);
+        final List<String> free = Collections.unmodifiableList(new ArrayList<>(residual.variables()));
+        return new PartialEvaluator(residual, CompiledExpression.compile(residual, free));
+    }
+
+    /**
+     * @return the expression left after substituting the bound variables and folding constant
+     *         subexpressions: the original expression, except that each maximal subexpression
+     *         without free variables is a Number, a Number 0 or 1 that is an operand of an
+     *         addition or multiplication respectively is dropped, a product with a 0 operand is 0,
+     *         and the constant operands of a Sum or Product are combined into one last operand
+     */
+    public Expression residual() {
+        return residual;
+    }
+
+    /**
+     * @return the free variables, in the order their values are expected by evaluate(double[])
+     */
+    public List<String> variables() {
+        return compiled.variables();
+    }
+
+    /**
+     * @param values values of the free variables, in the order given by variables()
+     * @return value of the expression with the bound variables at their fixed values and the free
+     *         variables at values
+     * @throws IllegalArgumentException if values has fewer entries than variables()
+     */
+    public double evaluate(double[] values) {
+        return compiled.evaluate(values);
+    }
+
+    /**
+     * @param environment maps at least every free variable to its value; other entries, including
+     *                    ones for bound variables, are ignored
+     * @return value of the expression with the bound variables at their fixed values and the free
+     *         variables at their values in environment
+     * @throws IllegalArgumentException if environment does not map some free variable
+     */
+    public double evaluate(Map<String, Double> environment) {
+        final List<String> variables = compiled.variables();
+        final double[] values = new double[variables.size()];
+        for (int i = 0; i < values.length; i++) {
+            final Double value = environment.get(variables.get(i));
+            if (value == null) {
+                throw new IllegalArgumentException("No value for free variable " + variables.get(i));
+            }
+            values[i] = value;
+        }
+        return compiled.evaluate(values);
+    }
+
+    @Override
+    public String toString() {
+        return residual.toString();
+    }
+
+    /**
+     * @param expression any expression
+     * @param bound maps variables to values
+     * @return the residual of expression under bound, as specified by residual(); unchanged
+     *         subexpressions are reused rather than copied
+     */
+    private static Expression substitute(Expression expression, Map<String, Double> bound) {
+        return new ExpressionFold<Expression>() {
+            @Override
+            public Expression number(Number number) {
+                return number;
+            }
+
+            @Override
+            public Expression variable(Variable variable) {
+                final Double value = bound.get(variable.getName());
+                return value == null ? variable : new Number(value);
+            }
+
+            @Override
+            public Expression addition(Addition addition, Expression left, Expression right) {
+                if (left instanceof Number && right instanceof Number) {
+                    return new Number(((Number) left).getValue() + ((Number) right).getValue());
+                } else if (isNumber(left, 0)) {
+                    return right;
+                } else if (isNumber(right, 0)) {
+                    return left;
+                }
+                return left == addition.getLeft() && right == addition.getRight() ? addition : new Addition(left, right);
+            }
+
+            @Override
+            public Expression multiplication(Multiplication multiplication, Expression left, Expression right) {
+                if (left instanceof Number && right instanceof Number) {
+                    return new Number(((Number) left).getValue() * ((Number) right).getValue());
+                } else if (isNumber(left, 0) || isNumber(right, 0)) {
+                    return new Number(0);
+                } else if (isNumber(left, 1)) {
+                    return right;
+                } else if (isNumber(right, 1)) {
+                    return left;
+                }
+                return left == multiplication.getLeft() && right == multiplication.getRight()
+                        ? multiplication
+                        : new Multiplication(left, right);
+            }
+
+            @Override
+            public Expression sum(Sum sum, List<Expression> operands) {
+                return foldFlat(sum, operands, true);
+            }
+
+            @Override
+            public Expression product(Product product, List<Expression> operands) {
+                return foldFlat(product, operands, false);
+            }
+        }.applyShared(expression);
+    }
+
+    /**
+     * @param operation a Sum, or a Product if isSum is false
+     * @param operands residuals of its operands
+     * @return residual of operation
+     */
+    private static Expression foldFlat(FlatOperation operation, List<Expression> operands, boolean isSum) {
+        final double identity = isSum ? 0 : 1;
+        final List<Expression> kept = new ArrayList<>(operands.size());
+        double constant = identity;
+        int constants = 0;
+        boolean changed = false;
+        for (int i = 0; i < operands.size(); i++) {
+            final Expression operand = operands.get(i);
+            changed |= operand != operation.getOperand(i);
+            if (operand instanceof Number) {
+                final double value = ((Number) operand).getValue();
+                constant = isSum ? constant + value : constant * value;
+                constants++;
+            } else {
+                kept.add(operand);
+            }
+        }
+        if (!isSum && constants > 0 && constant == 0) {
+            return new Number(0);
+        }
+        if (!changed && (constants == 0 || (constants == 1 && constant != identity))) {
+            return operation;
+        }
+        if (kept.isEmpty() || (constants > 0 && constant != identity)) {
+            kept.add(new Number(constant));
+        }
+        if (kept.size() == 1) {
+            return kept.get(0);
+        }
+        final Expression[] exact = kept.toArray(new Expression[0]);
+        return isSum ? new Sum(exact) : new Product(exact);
+    }
+
+    private static boolean isNumber(Expression expression, double value) {
+        return expression instanceof Number && ((Number) expression).getValue() == value;
+    }
+}
@@ -0,0 +1,506 @@
+package expressivo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable polynomial in canonical form: a sparse map from monomials to nonzero coefficients.
+ *
+ * Monomials are exponent vectors over SymbolTable.global() ids, and terms are kept in a
+ * primitive open-addressing table, so adding and multiplying polynomials does no boxing.
+ * Every expression has exactly one polynomial, so two expressions that are equal as
+ * polynomials (after collecting like terms and folding constants) have equal Polynomials.
+ */
+public final class Polynomial {
+
+    private static final int MIN_CAPACITY = 4;
+
+    /** Largest expansion of a product that simplify() writes out term by term. */
+    static final int MAX_EXPANDED_TERMS = 256;
+
+    // open-addressing table with linear probing; a slot whose coefficient became 0 stays in
+    // place but is not a term
+    private Monomial[] monomials;
+    private double[] coefficients;
+    private int used;
+
+    private Polynomial(int expectedTerms) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedTerms * 2) {
+            capacity *= 2;
+        }
+        this.monomials = new Monomial[capacity];
+        this.coefficients = new double[capacity];
+    }
+
+    /**
+     * @param value a number
+     * @return the constant polynomial with that value
+     */
+    public static Polynomial constant(double value) {
+        final Polynomial constant = new Polynomial(1);
+        constant.accumulate(Monomial.ONE, value);
+        return constant;
+    }
+
+    /**
+     * @param name a variable name
+     * @return the polynomial consisting of that variable
+     */
+    public static Polynomial variable(String name) {
+        return variable(SymbolTable.global().id(name));
+    }
+
+    private static Polynomial variable(int id) {
+        final Polynomial variable = new Polynomial(1);
+        variable.accumulate(Monomial.variable(id), 1);
+        return variable;
+    }
+
+    /**
+     * @param expression any expression
+     * @return the polynomial equal to expression
+     */
+    public static Polynomial of(Expression expression) {
+        return of(expression, Collections.<String, Double>emptyMap());
+    }
+
+    /**
+     * Convert an expression to a polynomial, substituting values for variables.
+     *
+     * @param expression any expression
+     * @param environment maps variables to nonnegative values; variables of expression that are
+     *                    not in environment remain variables of the polynomial
+     * @return the polynomial equal to expression after substitution
+     * @throws IllegalArgumentException if environment maps an invalid variable name or a negative value
+     */
+    public static Polynomial of(Expression expression, Map<String, Double> environment) {
+        return of(expression, Environment.of(environment));
+    }
+
+    /**
+     * Convert an expression to a polynomial, substituting values for variables.
+     *
+     * @param expression any expression
+     * @param environment values for variables; variables of expression that it does not bind
+     *                    remain variables of the polynomial
+     * @return the polynomial equal to expression after substitution
+     */
+    public static Polynomial of(Expression expression, Environment environment) {
+        return fold(expression, environment, Long.MAX_VALUE).expanded;
+    }
+
+    /**
+     * Simplify an expression without letting it grow exponentially. Products are expanded only
+     * while the expansion has at most MAX_EXPANDED_TERMS terms; larger ones stay factored, with
+     * each factor simplified.
+     *
+     * @param expression any expression
+     * @param environment values for variables
+     * @return expression after substitution, with like terms of the expanded part collected and
+     *         constants folded; a single Number if no variables are left
+     */
+    static Expression simplify(Expression expression, Environment environment) {
+        return fold(expression, environment, MAX_EXPANDED_TERMS).toExpression();
+    }
+
+    /**
+     * @param maxProductTerms products whose expansion could have more terms than this are kept factored
+     */
+    private static Simplified fold(Expression expression, Environment environment, long maxProductTerms) {
+        final Set<Expression> shared = SharedOperations.of(expression);
+        return new ExpressionFold<Simplified>() {
+            @Override
+            public Simplified number(Number number) {
+                return new Simplified(constant(number.getValue()), null);
+            }
+
+            @Override
+            public Simplified variable(Variable variable) {
+                final int id = variable.getId();
+                return new Simplified(environment.isBound(id) ? constant(environment.value(id)) : Polynomial.variable(id), null);
+            }
+
+            @Override
+            public Simplified addition(Addition addition, Simplified left, Simplified right) {
+                // a result that no other node refers to can be reused as the accumulator
+                return Simplified.add(left, !shared.contains(addition.getLeft()),
+                        right, !shared.contains(addition.getRight()));
+            }
+
+            @Override
+            public Simplified multiplication(Multiplication multiplication, Simplified left, Simplified right) {
+                return Simplified.multiply(left, right, maxProductTerms);
+            }
+
+            @Override
+            public Simplified sum(Sum sum, List<Simplified> operands) {
+                Simplified total = operands.get(0);
+                boolean reusable = !shared.contains(sum.getOperand(0));
+                for (int i = 1; i < operands.size(); i++) {
+                    total = Simplified.add(total, reusable, operands.get(i), !shared.contains(sum.getOperand(i)));
+                    reusable = true;
+                }
+                return total;
+            }
+
+            @Override
+            public Simplified product(Product product, List<Simplified> operands) {
+                Simplified total = operands.get(0);
+                for (int i = 1; i < operands.size(); i++) {
+                    total = Simplified.multiply(total, operands.get(i), maxProductTerms);
+                }
+                return total;
+            }
+        }.applyShared(expression);
+    }
+
+    /**
+     * @param other a polynomial
+     * @return this + other
+     */
+    public Polynomial add(Polynomial other) {
+        final Polynomial sum = copy();
+        sum.accumulateAll(other);
+        return sum;
+    }
+
+    /**
+     * @param other a polynomial
+     * @return this * other
+     */
+    public Polynomial multiply(Polynomial other) {
+        final Polynomial product = new Polynomial(termCount() * other.termCount());
+        for (int i = 0; i < monomials.length; i++) {
+            if (monomials[i] == null || coefficients[i] == 0) {
+                continue;
+            }
+            for (int j = 0; j < other.monomials.length; j++) {
+                if (other.monomials[j] != null && other.coefficients[j] != 0) {
+                    product.accumulate(monomials[i].times(other.monomials[j]), coefficients[i] * other.coefficients[j]);
+                }
+            }
+        }
+        return product;
+    }
+
+    /**
+     * @return number of terms with a nonzero coefficient
+     */
+    public int termCount() {
+        int count = 0;
+        for (int i = 0; i < monomials.length; i++) {
+            if (monomials[i] != null && coefficients[i] != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return true if and only if this polynomial has no variables
+     */
+    public boolean isConstant() {
+        for (int i = 0; i < monomials.length; i++) {
+            if (monomials[i] != null && coefficients[i] != 0 && monomials[i].degree() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return coefficient of the constant term, 0 if there is none
+     */
+    public double constantTerm() {
+        return coefficientOf(Monomial.ONE);
+    }
+
+    /**
+     * Convert to canonical expression form: a left-grouped sum of terms ordered by degree and then
+     * by variable names, each term being its coefficient (omitted when it is 1) times its variables
+     * in name order, with powers written as repeated multiplication. The zero polynomial is Number 0.
+     *
+     * @return an expression equal to this polynomial
+     */
+    public Expression toExpression() {
+        final List<Term> terms = new ArrayList<>();
+        for (int i = 0; i < monomials.length; i++) {
+            if (monomials[i] != null && coefficients[i] != 0) {
+                terms.add(new Term(monomials[i], coefficients[i]));
+            }
+        }
+        if (terms.isEmpty()) {
+            return new Number(0);
+        }
+        Collections.sort(terms, Term.ORDER);
+        Expression sum = null;
+        for (Term term : terms) {
+            final Expression expression = term.toExpression();
+            sum = sum == null ? expression : new Addition(sum, expression);
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return toExpression().toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Polynomial)) {
+            return false;
+        }
+        Polynomial other = (Polynomial) obj;
+        if (termCount() != other.termCount()) {
+            return false;
+        }
+        for (int i = 0; i < monomials.length; i++) {
+            if (monomials[i] != null && coefficients[i] != 0
+                    && Double.compare(coefficients[i], other.coefficientOf(monomials[i])) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // order-independent, so it does not depend on table layout
+        int hash = 0;
+        for (int i = 0; i < monomials.length; i++) {
+            if (monomials[i] != null && coefficients[i] != 0) {
+                hash += monomials[i].hashCode() ^ Double.hashCode(coefficients[i]);
+            }
+        }
+        return hash;
+    }
+
+    private double coefficientOf(Monomial monomial) {
+        final int mask = monomials.length - 1;
+        for (int slot = monomial.hashCode() & mask; monomials[slot] != null; slot = (slot + 1) & mask) {
+            if (monomials[slot].equals(monomial)) {
+                return coefficients[slot];
+            }
+        }
+        return 0;
+    }
+
+    private Polynomial copy() {
+        final Polynomial copy = new Polynomial(0);
+        copy.monomials = monomials.clone();
+        copy.coefficients = coefficients.clone();
+        copy.used = used;
+        return copy;
+    }
+
+    private void accumulateAll(Polynomial other) {
+        for (int i = 0; i < other.monomials.length; i++) {
+            if (other.monomials[i] != null && other.coefficients[i] != 0) {
+                accumulate(other.monomials[i], other.coefficients[i]);
+            }
+        }
+    }
+
+    /**
+     * Add coefficient * monomial to this polynomial in place. Only used while building a result.
+     */
+    private void accumulate(Monomial monomial, double coefficient) {
+        int mask = monomials.length - 1;
+        int slot = monomial.hashCode() & mask;
+        while (monomials[slot] != null) {
+            if (monomials[slot].equals(monomial)) {
+                coefficients[slot] += coefficient;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (2 * (used + 1) > monomials.length) {
+            grow();
+            mask = monomials.length - 1;
+            slot = monomial.hashCode() & mask;
+            while (monomials[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+        }
+        monomials[slot] = monomial;
+        coefficients[slot] = coefficient;
+        used++;
+    }
+
+    private void grow() {
+        final Monomial[] oldMonomials = monomials;
+        final double[] oldCoefficients = coefficients;
+        monomials = new Monomial[oldMonomials.length * 2];
+        coefficients = new double[oldCoefficients.length * 2];
+        used = 0;
+        for (int i = 0; i < oldMonomials.length; i++) {
+            // dropping cancelled terms here keeps the table from filling up with zeros
+            if (oldMonomials[i] != null && oldCoefficients[i] != 0) {
+                accumulate(oldMonomials[i], oldCoefficients[i]);
+            }
+        }
+    }
+
+    /**
+     * @param environment maps variables to values
+     * @throws IllegalArgumentException if environment maps an invalid variable name, or maps
+     *                                  a variable to a missing or negative value
+     */
+    static void validateEnvironment(Map<String, Double> environment) {
+        for (Map.Entry<String, Double> binding : environment.entrySet()) {
+            if (!Variable.isValidName(binding.getKey())) {
+                throw new IllegalArgumentException("Invalid variable in environment: " + binding.getKey());
+            }
+            if (binding.getValue() == null || !(binding.getValue() >= 0)) {
+                throw new IllegalArgumentException("Invalid value for " + binding.getKey() + ": " + binding.getValue());
+            }
+        }
+    }
+
+    /**
+     * The simplified form of a subexpression, as built by simplify(): an expanded polynomial
+     * plus a sum of products too large to expand, which are kept factored.
+     */
+    static final class Simplified {
+        private final Polynomial expanded;
+        private final Expression factored; // null if there are no factored terms
+
+        private Simplified(Polynomial expanded, Expression factored) {
+            this.expanded = expanded;
+            this.factored = factored;
+        }
+
+        /**
+         * @param value a number
+         * @return the simplified form of that number
+         */
+        static Simplified constant(double value) {
+            return new Simplified(Polynomial.constant(value), null);
+        }
+
+        /**
+         * @param name a variable name
+         * @return the simplified form of that variable, unbound
+         */
+        static Simplified variable(String name) {
+            return new Simplified(Polynomial.variable(name), null);
+        }
+
+        /**
+         * Add two simplified forms, adding the smaller expanded part into the larger so that a
+         * chain of additions nested either way takes linear time.
+         *
+         * @param leftReusable true if left is used nowhere else, so its expanded part may
+         *                     become part of the result
+         * @param rightReusable the same for right
+         * @return left + right, with the factored parts grouped as in new Addition(left, right)
+         */
+        static Simplified add(Simplified left, boolean leftReusable, Simplified right, boolean rightReusable) {
+            final boolean intoLeft = left.expanded.used >= right.expanded.used;
+            final Polynomial larger = intoLeft ? left.expanded : right.expanded;
+            final Polynomial sum = (intoLeft ? leftReusable : rightReusable) ? larger : larger.copy();
+            sum.accumulateAll(intoLeft ? right.expanded : left.expanded);
+            return new Simplified(sum, addFactored(left.factored, right.factored));
+        }
+
+        private static Expression addFactored(Expression left, Expression right) {
+            return left == null ? right : right == null ? left : new Addition(left, right);
+        }
+
+        /**
+         * Multiply two simplified forms, which are not modified.
+         *
+         * @param maxProductTerms the product is expanded only if it has at most this many terms
+         * @return left * right
+         */
+        static Simplified multiply(Simplified left, Simplified right, long maxProductTerms) {
+            if (left.factored == null && right.factored == null) {
+                final long terms = (long) left.expanded.termCount() * right.expanded.termCount();
+                if (terms <= maxProductTerms) {
+                    return new Simplified(left.expanded.multiply(right.expanded), null);
+                }
+            }
+            // copy rather than share: the caller may accumulate into the expanded part
+            if (left.isConstant(0) || right.isConstant(0)) {
+                return constant(0);
+            } else if (left.isConstant(1)) {
+                return new Simplified(right.expanded.copy(), right.factored);
+            } else if (right.isConstant(1)) {
+                return new Simplified(left.expanded.copy(), left.factored);
+            }
+            return new Simplified(Polynomial.constant(0), new Multiplication(left.toExpression(), right.toExpression()));
+        }
+
+        private boolean isConstant(double value) {
+            return factored == null && expanded.isConstant() && expanded.constantTerm() == value;
+        }
+
+        /**
+         * @return the simplified expression
+         */
+        Expression toExpression() {
+            if (factored == null) {
+                return expanded.toExpression();
+            }
+            return expanded.termCount() == 0 ? factored : new Addition(expanded.toExpression(), factored);
+        }
+    }
+
+    /**
+     * A term prepared for output, with its variables listed in name order.
+     */
+    private static final class Term {
+        private static final Comparator<Term> ORDER = new Comparator<Term>() {
+            @Override
+            public int compare(Term a, Term b) {
+                if (a.monomial.degree() != b.monomial.degree()) {
+                    return Integer.compare(a.monomial.degree(), b.monomial.degree());
+                }
+                for (int i = 0; i < a.factors.length; i++) {
+                    final int byName = a.factors[i].compareTo(b.factors[i]);
+                    if (byName != 0) {
+                        return byName;
+                    }
+                }
+                return 0;
+            }
+        };
+
+        private final Monomial monomial;
+        private final double coefficient;
+        private final String[] factors;
+
+        Term(Monomial monomial, double coefficient) {
+            this.monomial = monomial;
+            this.coefficient = coefficient;
+            this.factors = new String[monomial.degree()];
+            int k = 0;
+            for (int i = 0; i < monomial.variableCount(); i++) {
+                final String name = SymbolTable.global().name(monomial.variableId(i));
+                for (int e = 0; e < monomial.exponent(i); e++) {
+                    factors[k++] = name;
+                }
+            }
+            Arrays.sort(factors);
+        }
+
+        Expression toExpression() {
+            Expression product = factors.length == 0 || coefficient != 1 ? new Number(coefficient) : null;
+            for (String factor : factors) {
+                final Variable variable = new Variable(factor);
+                product = product == null ? variable : new Multiplication(product, variable);
+            }
+            return product;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package expressivo;
+
+import java.util.List;
+
+/**
+ * Flattened form of a left-grouped chain of Multiplications: operands[0] * operands[1] * ... * operands[n-1].
+ * A Product is structurally equal to that chain and hashes the same; see FlatOperation.
+ */
+public class Product extends FlatOperation {
+
+    /**
+     * @param operands at least two operands, in order
+     * @throws IllegalArgumentException if there are fewer than two operands
+     */
+    public Product(List<? extends Expression> operands) {
+        this(operands.toArray(new Expression[0]));
+    }
+
+    /**
+     * @param operands at least two operands, in order; the array is owned by the new Product
+     * @throws IllegalArgumentException if there are fewer than two operands
+     */
+    Product(Expression[] operands) {
+        super(operands);
+    }
+
+    private Product(Product longer, int size) {
+        super(longer, size);
+    }
+
+    @Override
+    Product prefix(int size) {
+        return new Product(this, size);
+    }
+
+    @Override
+    boolean isSameOperation(Object obj) {
+        return obj instanceof Product || obj instanceof Multiplication;
+    }
+}
@@ -0,0 +1,163 @@
+package expressivo;
+
+/**
+ * A fingerprint of the polynomial an expression denotes, so that equivalent expressions such
+ * as x + y and y + x, or (x + 1) * 2 and x * 2 + 2, can be recognized by comparing or hashing
+ * two longs instead of the expressions.
+ *
+ * The expression is evaluated exactly in the field of integers modulo the prime p = 2^61 - 1,
+ * with every variable replaced by a point derived from its name and a fixed seed, at two
+ * independent sets of points. Every finite double is a dyadic rational, and 2 has an inverse
+ * mod p, so constants map into the field exactly and equivalent expressions always get equal
+ * fingerprints. By the Schwartz-Zippel lemma, two different polynomials of degree at most d
+ * get equal fingerprints with probability at most (d / p)^2 over the choice of points. The
+ * points depend only on the variable names, so fingerprints are stable across runs.
+ *
+ * The bound says nothing once d nears p: x^(p + 1) and x^2 agree at every point, and sharing
+ * lets a DAG of 62 nodes denote x^(2^61). So the same pass bounds the degree, and expressions
+ * whose degree may exceed MAX_DEGREE = 2^32 are rejected, which keeps the collision
+ * probability below 2^-58. A tree's degree is at most its size, so only DAGs are affected.
+ *
+ * Constants are taken at their exact values rather than rounded like floating-point
+ * simplification, and an infinite or NaN constant only fingerprints consistently with itself.
+ * Computing a fingerprint takes time linear in the number of distinct subexpressions.
+ */
+public final class SemanticFingerprint {
+
+    private static final long P = (1L << 61) - 1;
+    private static final long FIRST_SEED = 0x9E3779B97F4A7C15L;
+    private static final long SECOND_SEED = 0xC2B2AE3D27D4EB4FL;
+    static final long MAX_DEGREE = 1L << 32;
+
+    private final long first;
+    private final long second;
+
+    private SemanticFingerprint(long first, long second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * @param expression any expression whose degree is at most MAX_DEGREE
+     * @return the fingerprint of the polynomial expression denotes
+     * @throws IllegalArgumentException if the degree of expression may exceed MAX_DEGREE
+     */
+    public static SemanticFingerprint of(Expression expression) {
+        final NodeTable table = new NodeTable(expression);
+        final int n = table.size();
+        // values at the first and second points mod P, and a degree bound saturating at MAX_DEGREE + 1
+        final long[] first = new long[n];
+        final long[] second = new long[n];
+        final long[] degree = new long[n];
+        for (int i = 0; i < n; i++) {
+            final Expression node = table.nodes[i];
+            if (node instanceof Number) {
+                first[i] = second[i] = residue(((Number) node).getValue());
+            } else if (node instanceof Variable) {
+                final String name = ((Variable) node).getName();
+                first[i] = point(name, FIRST_SEED);
+                second[i] = point(name, SECOND_SEED);
+                degree[i] = 1;
+            } else if (node instanceof Addition || node instanceof Sum) {
+                for (int operand : table.operands[i]) {
+                    first[i] = add(first[i], first[operand]);
+                    second[i] = add(second[i], second[operand]);
+                    degree[i] = Math.max(degree[i], degree[operand]);
+                }
+            } else {
+                first[i] = second[i] = 1;
+                for (int operand : table.operands[i]) {
+                    first[i] = multiply(first[i], first[operand]);
+                    second[i] = multiply(second[i], second[operand]);
+                    degree[i] = Math.min(MAX_DEGREE + 1, degree[i] + degree[operand]);
+                }
+            }
+        }
+        if (degree[n - 1] > MAX_DEGREE) {
+            throw new IllegalArgumentException("Degree too high to fingerprint: more than " + MAX_DEGREE);
+        }
+        return new SemanticFingerprint(first[n - 1], second[n - 1]);
+    }
+
+    /**
+     * @return the exact value of a finite double mod P, as a dyadic rational m * 2^e
+     */
+    static long residue(double value) {
+        if (value == 0) {
+            return 0;
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return Long.remainderUnsigned(mix(Double.doubleToLongBits(value)), P);
+        }
+        final long bits = Double.doubleToLongBits(value);
+        final int biasedExponent = (int) ((bits >>> 52) & 0x7FF);
+        long mantissa = bits & ((1L << 52) - 1);
+        int exponent;
+        if (biasedExponent == 0) {
+            exponent = -1074; // subnormal
+        } else {
+            mantissa |= 1L << 52;
+            exponent = biasedExponent - 1075;
+        }
+        // 2^61 = 1 mod P, so a power of two reduces by its exponent mod 61, negative or not
+        final long power = 1L << Math.floorMod(exponent, 61);
+        final long magnitude = multiply(mantissa % P, power);
+        return value < 0 && magnitude != 0 ? P - magnitude : magnitude;
+    }
+
+    /**
+     * @return the point for variable name under seed, in [0, P)
+     */
+    private static long point(String name, long seed) {
+        long hash = mix(seed);
+        for (int i = 0; i < name.length(); i++) {
+            hash = mix(hash ^ name.charAt(i));
+        }
+        return Long.remainderUnsigned(hash, P);
+    }
+
+    /** SplitMix64 finalizer. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long add(long a, long b) {
+        final long sum = a + b;
+        return sum >= P ? sum - P : sum;
+    }
+
+    /**
+     * @param a in [0, P)
+     * @param b in [0, P)
+     * @return a * b mod P
+     */
+    private static long multiply(long a, long b) {
+        final long high = Math.multiplyHigh(a, b);
+        final long low = a * b;
+        // a * b = high * 2^64 + low, and 2^64 = 8 mod P
+        long r = (low & P) + ((low >>> 61) | (high << 3));
+        r = (r & P) + (r >>> 61);
+        return r >= P ? r - P : r;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof SemanticFingerprint)) {
+            return false;
+        }
+        final SemanticFingerprint other = (SemanticFingerprint) obj;
+        return first == other.first && second == other.second;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(first * 31 + second);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", first, second);
+    }
+}
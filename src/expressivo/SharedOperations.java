@@ -0,0 +1,53 @@
+package expressivo;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Finds the operation nodes that an expression reaches through more than one path.
+ *
+ * A fold that reuses the result for an operand as the accumulator for its parent may only do
+ * so when the operand is not one of these, since a shared operand's result is reused by
+ * applyShared() wherever the operand appears again.
+ */
+final class SharedOperations {
+
+    private SharedOperations() {
+    }
+
+    /**
+     * @param root an expression
+     * @return the operations reachable from root through more than one path, compared by identity
+     */
+    static Set<Expression> of(Expression root) {
+        final Set<Expression> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<Expression> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<Expression> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            final Expression node = pending.pop();
+            if (node instanceof Number || node instanceof Variable) {
+                continue;
+            }
+            if (!seen.add(node)) {
+                shared.add(node);
+                continue;
+            }
+            if (node instanceof Addition) {
+                pending.push(((Addition) node).getRight());
+                pending.push(((Addition) node).getLeft());
+            } else if (node instanceof Multiplication) {
+                pending.push(((Multiplication) node).getRight());
+                pending.push(((Multiplication) node).getLeft());
+            } else if (node instanceof FlatOperation) {
+                for (Expression operand : ((FlatOperation) node).getOperands()) {
+                    pending.push(operand);
+                }
+            }
+        }
+        return shared;
+    }
+}
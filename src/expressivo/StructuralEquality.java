@@ -0,0 +1,124 @@
+package expressivo;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Structural equality of expressions, walking both trees with an explicit stack.
+ * A Sum or Product compares as the chain of Additions or Multiplications it flattens.
+ */
+final class StructuralEquality {
+
+    private StructuralEquality() {
+    }
+
+    /**
+     * @param first an expression
+     * @param second an expression
+     * @return true if and only if first and second are structurally equal, as specified by
+     *         Expression.equals()
+     */
+    static boolean test(Expression first, Expression second) {
+        // pairs of subexpressions still to compare, pushed two at a time
+        final Deque<Expression> pending = new ArrayDeque<>();
+        pending.push(second);
+        pending.push(first);
+        while (!pending.isEmpty()) {
+            final Expression a = pending.pop();
+            final Expression b = pending.pop();
+            if (a == b) {
+                continue;
+            }
+            if (a.hashCode() != b.hashCode()) {
+                return false;
+            }
+            if (a instanceof FlatOperation && a.getClass() == b.getClass()
+                    && ((FlatOperation) a).size() == ((FlatOperation) b).size()) {
+                final FlatOperation x = (FlatOperation) a;
+                final FlatOperation y = (FlatOperation) b;
+                for (int i = x.size() - 1; i >= 0; i--) {
+                    pending.push(y.getOperand(i));
+                    pending.push(x.getOperand(i));
+                }
+            } else if ((isSum(a) && isSum(b)) || (isProduct(a) && isProduct(b))) {
+                // compare as binary operations; a flattened chain splits into its prefix and last operand
+                pending.push(right(b));
+                pending.push(right(a));
+                pending.push(left(b));
+                pending.push(left(a));
+            } else if (isSum(a) || isProduct(a) || !a.equals(b)) {
+                // leaves compare by value; an operation never equals a leaf or the other operation
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param first an expression
+     * @param second an expression
+     * @return true if and only if first and second are structurally equal and are built from the
+     *         same variants, so that a flattened Sum or Product matches only another one of the
+     *         same size and never the chain of Additions or Multiplications it stands for
+     */
+    static boolean sameShape(Expression first, Expression second) {
+        final Deque<Expression> pending = new ArrayDeque<>();
+        pending.push(second);
+        pending.push(first);
+        while (!pending.isEmpty()) {
+            final Expression a = pending.pop();
+            final Expression b = pending.pop();
+            if (a == b) {
+                continue;
+            }
+            if (a.getClass() != b.getClass() || a.hashCode() != b.hashCode()) {
+                return false;
+            }
+            if (a instanceof FlatOperation) {
+                final FlatOperation x = (FlatOperation) a;
+                final FlatOperation y = (FlatOperation) b;
+                if (x.size() != y.size()) {
+                    return false;
+                }
+                for (int i = x.size() - 1; i >= 0; i--) {
+                    pending.push(y.getOperand(i));
+                    pending.push(x.getOperand(i));
+                }
+            } else if (a instanceof Addition || a instanceof Multiplication) {
+                pending.push(right(b));
+                pending.push(right(a));
+                pending.push(left(b));
+                pending.push(left(a));
+            } else if (!a.equals(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSum(Expression e) {
+        return e instanceof Addition || e instanceof Sum;
+    }
+
+    private static boolean isProduct(Expression e) {
+        return e instanceof Multiplication || e instanceof Product;
+    }
+
+    private static Expression left(Expression operation) {
+        if (operation instanceof Addition) {
+            return ((Addition) operation).getLeft();
+        } else if (operation instanceof Multiplication) {
+            return ((Multiplication) operation).getLeft();
+        }
+        return ((FlatOperation) operation).getLeft();
+    }
+
+    private static Expression right(Expression operation) {
+        if (operation instanceof Addition) {
+            return ((Addition) operation).getRight();
+        } else if (operation instanceof Multiplication) {
+            return ((Multiplication) operation).getRight();
+        }
+        return ((FlatOperation) operation).getRight();
+    }
+}
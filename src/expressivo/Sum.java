@@ -0,0 +1,40 @@
+package expressivo;
+
+import java.util.List;
+
+/**
+ * Flattened form of a left-grouped chain of Additions: operands[0] + operands[1] + ... + operands[n-1].
+ * A Sum is structurally equal to that chain and hashes the same; see FlatOperation.
+ */
+public class Sum extends FlatOperation {
+
+    /**
+     * @param operands at least two operands, in order
+     * @throws IllegalArgumentException if there are fewer than two operands
+     */
+    public Sum(List<? extends Expression> operands) {
+        this(operands.toArray(new Expression[0]));
+    }
+
+    /**
+     * @param operands at least two operands, in order; the array is owned by the new Sum
+     * @throws IllegalArgumentException if there are fewer than two operands
+     */
+    Sum(Expression[] operands) {
+        super(operands);
+    }
+
+    private Sum(Sum longer, int size) {
+        super(longer, size);
+    }
+
+    @Override
+    Sum prefix(int size) {
+        return new Sum(this, size);
+    }
+
+    @Override
+    boolean isSameOperation(Object obj) {
+        return obj instanceof Sum || obj instanceof Addition;
+    }
+}
@@ -0,0 +1,84 @@
+package expressivo;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns variable names as dense integer ids, so that algorithms over many variables can
+ * use arrays indexed by id instead of maps keyed by name.
+ *
+ * Ids are assigned in order of first use, starting at 0, and never change. Symbol tables are
+ * safe to use from multiple threads.
+ */
+public final class SymbolTable {
+
+    private static final SymbolTable GLOBAL = new SymbolTable();
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];
+    private int size;
+
+    /**
+     * @return the symbol table shared by the whole program
+     */
+    public static SymbolTable global() {
+        return GLOBAL;
+    }
+
+    /**
+     * @param name a variable name
+     * @return the id of name, assigning the next free id if name is new
+     */
+    public int id(String name) {
+        final Integer id = ids.get(name);
+        return id != null ? id : assign(name);
+    }
+
+    /**
+     * @param name a variable name
+     * @return the id of name, or -1 if name has none yet; never assigns an id
+     */
+    public int lookup(String name) {
+        final Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @param id an id assigned by this table
+     * @return the variable name with that id
+     * @throws IndexOutOfBoundsException if no variable has that id
+     */
+    public String name(int id) {
+        final String[] current = names;
+        if (id < 0 || id >= current.length || current[id] == null) {
+            throw new IndexOutOfBoundsException("No variable with id " + id);
+        }
+        return current[id];
+    }
+
+    /**
+     * @return number of ids assigned so far; every assigned id is less than size()
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized int assign(String name) {
+        final Integer existing = ids.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        final int id = size;
+        String[] current = names;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = name;
+        // publish the name before the id, so name(id) works for any id a reader can observe
+        names = current;
+        ids.put(name, id);
+        size++;
+        return id;
+    }
+}
@@ -0,0 +1,187 @@
+package expressivo;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Forward-mode differentiation: the value of an expression together with its derivatives with
+ * respect to one variable at a point, without building a derivative expression.
+ *
+ * Every node carries a truncated Taylor series in the chosen variable, the coefficients
+ * c_0 .. c_d with c_k = f^(k)(point) / k!. Constants and the other variables are series
+ * with only c_0, the chosen variable is its value plus 1 times the step, sums add
+ * coefficientwise and products multiply as truncated series. For d = 1 these are the dual
+ * numbers f + f' e with e*e = 0. The walk visits each distinct subexpression once, and the
+ * series live side by side in one double array that the evaluator keeps and reuses, so after
+ * the first call of a given order an evaluation allocates nothing.
+ *
+ * Because of that reused workspace, an evaluator must not be used by multiple threads at once;
+ * give each thread its own.
+ */
+public final class TaylorEvaluator {
+
+    private final NodeTable.Program program;
+
+    // series of node i occupy work[i * (order + 1)] .. work[i * (order + 1) + order],
+    // followed by one scratch series for products
+    private double[] work = new double[0];
+
+    private TaylorEvaluator(NodeTable.Program program) {
+        this.program = program;
+    }
+
+    /**
+     * Prepare an expression for forward-mode evaluation.
+     *
+     * @param expression the expression to evaluate
+     * @return an evaluator for expression
+     */
+    public static TaylorEvaluator of(Expression expression) {
+        return new TaylorEvaluator(new NodeTable(expression).program());
+    }
+
+    /**
+     * @return the variables of the expression, in order of first appearance; index i of the
+     *         values arrays taken by this evaluator belongs to variables().get(i)
+     */
+    public List<String> variables() {
+        return program.variables;
+    }
+
+    /**
+     * Compute the Taylor coefficients of the expression in one variable at a point.
+     *
+     * @param values values of the variables, in the order given by variables()
+     * @param variable index in variables() of the variable to expand in
+     * @param coefficients receives at index k the k-th derivative with respect to that variable
+     *                     divided by k factorial; its length, at least 1, sets the order
+     * @throws IllegalArgumentException if values has fewer entries than variables(), if variable
+     *                                  is not an index of variables(), or if coefficients is empty
+     */
+    public void taylor(double[] values, int variable, double[] coefficients) {
+        final List<String> variables = program.variables;
+        if (values.length < variables.size()) {
+            throw new IllegalArgumentException("Expected " + variables.size() + " values, got " + values.length);
+        }
+        if (variable < 0 || variable >= variables.size()) {
+            throw new IllegalArgumentException("No variable with index " + variable);
+        }
+        if (coefficients.length == 0) {
+            throw new IllegalArgumentException("Need room for at least one coefficient");
+        }
+        expand(values, variable, coefficients);
+    }
+
+    /**
+     * @param values values of the variables, in the order given by variables()
+     * @param variable index in variables() of the variable to differentiate by
+     * @return value of the expression and its first derivative with respect to that variable
+     * @throws IllegalArgumentException if values has fewer entries than variables(), or if variable
+     *                                  is not an index of variables()
+     */
+    public double[] valueAndDerivative(double[] values, int variable) {
+        final double[] dual = new double[2];
+        taylor(values, variable, dual);
+        return dual;
+    }
+
+    /**
+     * @param environment maps every variable of the expression to its value; other entries are ignored
+     * @param variable the variable to differentiate by; it need not occur in the expression
+     * @param order how many times to differentiate, 0 for the value itself
+     * @return the order-th derivative of the expression with respect to variable at environment
+     * @throws IllegalArgumentException if environment does not map some variable of the
+     *                                  expression, or if order is negative
+     */
+    public double derivative(Map<String, Double> environment, String variable, int order) {
+        return derivative(program.values(environment), variable, order);
+    }
+
+    /**
+     * @param environment binds every variable of the expression; other bindings are ignored
+     * @param variable the variable to differentiate by; it need not occur in the expression
+     * @param order how many times to differentiate, 0 for the value itself
+     * @return the order-th derivative of the expression with respect to variable at environment
+     * @throws IllegalArgumentException if environment does not bind some variable of the
+     *                                  expression, or if order is negative
+     */
+    public double derivative(Environment environment, String variable, int order) {
+        return derivative(program.values(environment), variable, order);
+    }
+
+    private double derivative(double[] values, String variable, int order) {
+        if (order < 0) {
+            throw new IllegalArgumentException("Order must be nonnegative: " + order);
+        }
+        final double[] coefficients = new double[order + 1];
+        // a variable that does not occur is expanded in as index -1, which matches no leaf
+        expand(values, program.variables.indexOf(variable), coefficients);
+        double factorial = 1;
+        for (int k = 2; k <= order; k++) {
+            factorial *= k;
+        }
+        return coefficients[order] * factorial;
+    }
+
+    private void expand(double[] values, int variable, double[] coefficients) {
+        final int width = coefficients.length;
+        final int[] kinds = program.kinds;
+        final int[] slots = program.slots;
+        final int[][] operands = program.operands;
+        final int n = kinds.length;
+        final int needed = (n + 1) * width;
+        if (work.length < needed) {
+            work = new double[needed];
+        }
+        final double[] w = work;
+        final int scratch = n * width;
+        for (int i = 0; i < n; i++) {
+            final int row = i * width;
+            switch (kinds[i]) {
+            case NodeTable.NUMBER:
+                w[row] = program.constants[i];
+                for (int k = 1; k < width; k++) {
+                    w[row + k] = 0;
+                }
+                break;
+            case NodeTable.VARIABLE:
+                w[row] = values[slots[i]];
+                for (int k = 1; k < width; k++) {
+                    w[row + k] = 0;
+                }
+                if (width > 1 && slots[i] == variable) {
+                    w[row + 1] = 1;
+                }
+                break;
+            case NodeTable.ADD: {
+                final int[] children = operands[i];
+                System.arraycopy(w, children[0] * width, w, row, width);
+                for (int c = 1; c < children.length; c++) {
+                    final int other = children[c] * width;
+                    for (int k = 0; k < width; k++) {
+                        w[row + k] += w[other + k];
+                    }
+                }
+                break;
+            }
+            default: {
+                final int[] children = operands[i];
+                System.arraycopy(w, children[0] * width, w, row, width);
+                for (int c = 1; c < children.length; c++) {
+                    // truncated series product: r_k = sum over j of a_j * b_(k-j)
+                    final int other = children[c] * width;
+                    for (int k = 0; k < width; k++) {
+                        double total = 0;
+                        for (int j = 0; j <= k; j++) {
+                            total += w[row + j] * w[other + k - j];
+                        }
+                        w[scratch + k] = total;
+                    }
+                    System.arraycopy(w, scratch, w, row, width);
+                }
+            }
+            }
+        }
+        System.arraycopy(w, (n - 1) * width, coefficients, 0, width);
+    }
+}
@@ -4,11 +4,44 @@ import java.util.Objects;
 
 public class Variable implements Expression {
     private final String name;
+    private int id = -1; // assigned on first use; racing threads assign the same id
 
     public Variable(String name) {
         this.name = name;
     }
 
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the slot of this variable's name in SymbolTable.global(), for looking it up in an
+     *         Environment; the name is given a slot by the first call, not by creating the variable
+     */
+    public int getId() {
+        if (id < 0 && name != null) {
+            id = SymbolTable.global().id(name);
+        }
+        return id;
+    }
+
+    /**
+     * @param name any string, or null
+     * @return true if and only if name is a case-sensitive nonempty string of letters
+     */
+    static boolean isValidName(String name) {
+        if (name == null || name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public String toString() {
         return name;
@@ -16,6 +49,9 @@ public class Variable implements Expression {
 
     @Override
     public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
         if (obj instanceof Variable) {
             Variable other = (Variable) obj;
             return name.equals(other.name);
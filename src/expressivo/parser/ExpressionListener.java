@@ -15,46 +15,39 @@ public interface ExpressionListener extends ParseTreeListener {
    * @param ctx the parse tree
    */
   void enterRoot(ExpressionParser.RootContext ctx);
-
   /**
    * Exit a parse tree produced by {@link ExpressionParser#root}.
    * @param ctx the parse tree
    */
   void exitRoot(ExpressionParser.RootContext ctx);
-
   /**
    * Enter a parse tree produced by {@link ExpressionParser#sum}.
    * @param ctx the parse tree
    */
   void enterSum(ExpressionParser.SumContext ctx);
-
   /**
    * Exit a parse tree produced by {@link ExpressionParser#sum}.
    * @param ctx the parse tree
    */
   void exitSum(ExpressionParser.SumContext ctx);
-
   /**
    * Enter a parse tree produced by {@link ExpressionParser#product}.
    * @param ctx the parse tree
    */
   void enterProduct(ExpressionParser.ProductContext ctx);
-
   /**
    * Exit a parse tree produced by {@link ExpressionParser#product}.
    * @param ctx the parse tree
    */
   void exitProduct(ExpressionParser.ProductContext ctx);
-
   /**
    * Enter a parse tree produced by {@link ExpressionParser#primitive}.
    * @param ctx the parse tree
    */
   void enterPrimitive(ExpressionParser.PrimitiveContext ctx);
-
   /**
    * Exit a parse tree produced by {@link ExpressionParser#primitive}.
    * @param ctx the parse tree
    */
   void exitPrimitive(ExpressionParser.PrimitiveContext ctx);
-}
+}
\ No newline at end of file
@@ -20,7 +20,7 @@ public class ExpressionParser extends Parser {
   protected static final PredictionContextCache _sharedContextCache =
     new PredictionContextCache();
   public static final int
-    T__0=1, T__1=2, T__2=3, NUMBER=4, SPACES=5;
+    NUMBER=1, VARIABLE=2, SPACES=3, T__0=4, T__1=5, T__2=6, T__3=7;
   public static final int
     RULE_root = 0, RULE_sum = 1, RULE_product = 2, RULE_primitive = 3;
   public static final String[] ruleNames = {
@@ -28,14 +28,40 @@ public class ExpressionParser extends Parser {
   };
 
   private static final String[] _LITERAL_NAMES = {
-    null, "'+'", "'('", "')'"
+    null, null, null, null, "'('", "')'", "'+'", "'*'"
   };
   private static final String[] _SYMBOLIC_NAMES = {
-    null, null, null, null, "NUMBER", "SPACES"
+    null, "NUMBER", "VARIABLE", "SPACES"
   };
   public static final Vocabulary VOCABULARY = new VocabularyImpl(_LITERAL_NAMES, _SYMBOLIC_NAMES);
 
+  /**
+   * @deprecated Use {@link #VOCABULARY} instead.
+   */
+  @Deprecated
+  public static final String[] tokenNames;
+  static {
+    tokenNames = new String[_SYMBOLIC_NAMES.length];
+    for (int i = 0; i < tokenNames.length; i++) {
+      tokenNames[i] = VOCABULARY.getLiteralName(i);
+      if (tokenNames[i] == null) {
+        tokenNames[i] = VOCABULARY.getSymbolicName(i);
+      }
+
+      if (tokenNames[i] == null) {
+        tokenNames[i] = "<INVALID>";
+      }
+    }
+  }
+
+  @Override
+  @Deprecated
+  public String[] getTokenNames() {
+    return tokenNames;
+  }
+
   @Override
+
   public Vocabulary getVocabulary() {
     return VOCABULARY;
   }
@@ -52,12 +78,27 @@ public class ExpressionParser extends Parser {
   @Override
   public ATN getATN() { return _ATN; }
 
-  // Constructor for the parser
+
+      // This method makes the lexer or parser stop running if it encounters
+      // invalid input and throw a ParseCancellationException.
+      public void reportErrorsAsExceptions() {
+          // To prevent any reports to standard error, add this line:
+          // removeErrorListeners();
+          
+          addErrorListener(new BaseErrorListener() {
+              public void syntaxError(Recognizer<?, ?> recognizer,
+                                       Object offendingSymbol,
+                                       int line, int charPositionInLine,
+                                       String msg, RecognitionException e) {
+                  throw new ParseCancellationException(msg, e);
+              }
+          });
+      }
+
   public ExpressionParser(TokenStream input) {
     super(input);
     _interp = new ParserATNSimulator(this,_ATN,_decisionToDFA,_sharedContextCache);
   }
-
   public static class RootContext extends ParserRuleContext {
     public SumContext sum() {
       return getRuleContext(SumContext.class,0);
@@ -83,9 +124,9 @@ public class ExpressionParser extends Parser {
     try {
       enterOuterAlt(_localctx, 1);
       {
-      setState(6);
+      setState(8);
       sum();
-      setState(7);
+      setState(9);
       match(EOF);
       }
     }
@@ -128,21 +169,21 @@ public class ExpressionParser extends Parser {
     try {
       enterOuterAlt(_localctx, 1);
       {
-      setState(9);
+      setState(11);
       product();
-      setState(14);
+      setState(16);
       _errHandler.sync(this);
       _la = _input.LA(1);
-      while (_la==T__0) {
+      while (_la==T__2) {
         {
         {
-        setState(10);
-        match(T__0);
-        setState(11);
+        setState(12);
+        match(T__2);
+        setState(13);
         product();
         }
         }
-        setState(16);
+        setState(18);
         _errHandler.sync(this);
         _la = _input.LA(1);
       }
@@ -187,21 +228,21 @@ public class ExpressionParser extends Parser {
     try {
       enterOuterAlt(_localctx, 1);
       {
-      setState(17);
+      setState(19);
       primitive();
-      setState(22);
+      setState(24);
       _errHandler.sync(this);
       _la = _input.LA(1);
-      while (_la==T__1) {
+      while (_la==T__3) {
         {
         {
-        setState(18);
-        match(T__1);
-        setState(19);
+        setState(20);
+        match(T__3);
+        setState(21);
         primitive();
         }
         }
-        setState(24);
+        setState(26);
         _errHandler.sync(this);
         _la = _input.LA(1);
       }
@@ -220,6 +261,7 @@ public class ExpressionParser extends Parser {
 
   public static class PrimitiveContext extends ParserRuleContext {
     public TerminalNode NUMBER() { return getToken(ExpressionParser.NUMBER, 0); }
+    public TerminalNode VARIABLE() { return getToken(ExpressionParser.VARIABLE, 0); }
     public SumContext sum() {
       return getRuleContext(SumContext.class,0);
     }
@@ -241,24 +283,31 @@ public class ExpressionParser extends Parser {
     PrimitiveContext _localctx = new PrimitiveContext(_ctx, getState());
     enterRule(_localctx, 6, RULE_primitive);
     try {
-      setState(22);
+      setState(33);
       switch (_input.LA(1)) {
       case NUMBER:
         enterOuterAlt(_localctx, 1);
         {
-        setState(17);
+        setState(27);
         match(NUMBER);
         }
         break;
-      case T__1:
+      case VARIABLE:
         enterOuterAlt(_localctx, 2);
         {
-        setState(18);
-        match(T__1);
-        setState(19);
+        setState(28);
+        match(VARIABLE);
+        }
+        break;
+      case T__0:
+        enterOuterAlt(_localctx, 3);
+        {
+        setState(29);
+        match(T__0);
+        setState(30);
         sum();
-        setState(20);
-        match(T__2);
+        setState(31);
+        match(T__1);
         }
         break;
       default:
@@ -277,14 +326,17 @@ public class ExpressionParser extends Parser {
   }
 
   public static final String _serializedATN =
-    "\3\u0430\ud6d1\u8206\uad2d\u4417\uaef1\u8d80\uaadd\3\7\33\4\2\t\2\4"+
-    "\3\t\3\4\4\t\4\3\2\3\2\3\2\3\3\3\3\3\3\7\3\17\n\3\f\3\16\3\22\13\3"+
-    "\3\4\3\4\3\4\3\4\3\4\5\4\31\n\4\3\4\2\2\5\2\4\6\2\2\31\2\b\3\2\2\2"+
-    "\4\13\3\2\2\2\6\30\3\2\2\2\b\t\5\4\3\2\t\n\7\2\2\3\n\3\3\2\2\2\13"+
-    "\20\5\6\4\2\f\r\7\3\2\2\r\17\5\6\4\2\16\f\3\2\2\2\17\22\3\2\2\2\20"+
-    "\16\3\2\2\2\20\21\3\2\2\2\21\5\3\2\2\2\22\20\3\2\2\2\23\31\7\6\2\2"+
-    "\24\25\7\4\2\2\25\26\5\4\3\2\26\27\7\5\2\2\27\31\3\2\2\2\30\23\3\2"+
-    "\2\2\30\24\3\2\2\2\31\7\3\2\2\2\4\20\30";
+    "\3\u0430\ud6d1\u8206\uad2d\u4417\uaef1\u8d80\uaadd\3\t&\4\2\t\2\4\3"+
+      "\t\3\4\4\t\4\4\5\t\5\3\2\3\2\3\2\3\3\3\3\3\3\7\3\21\n\3\f\3\16\3\24"+
+      "\13\3\3\4\3\4\3\4\7\4\31\n\4\f\4\16\4\34\13\4\3\5\3\5\3\5\3\5\3\5"+
+      "\3\5\5\5$\n\5\3\5\2\2\6\2\4\6\b\2\2%\2\n\3\2\2\2\4\r\3\2\2\2\6\25"+
+      "\3\2\2\2\b#\3\2\2\2\n\13\5\4\3\2\13\f\7\2\2\3\f\3\3\2\2\2\r\22\5\6"+
+      "\4\2\16\17\7\b\2\2\17\21\5\6\4\2\20\16\3\2\2\2\21\24\3\2\2\2\22\20"+
+      "\3\2\2\2\22\23\3\2\2\2\23\5\3\2\2\2\24\22\3\2\2\2\25\32\5\b\5\2\26"+
+      "\27\7\t\2\2\27\31\5\b\5\2\30\26\3\2\2\2\31\34\3\2\2\2\32\30\3\2\2"+
+      "\2\32\33\3\2\2\2\33\7\3\2\2\2\34\32\3\2\2\2\35$\7\3\2\2\36$\7\4\2"+
+      "\2\37 \7\6\2\2 !\5\4\3\2!\"\7\7\2\2\"$\3\2\2\2#\35\3\2\2\2#\36\3\2"+
+      "\2\2#\37\3\2\2\2$\t\3\2\2\2\5\22\32#";
   public static final ATN _ATN =
     new ATNDeserializer().deserialize(_serializedATN.toCharArray());
   static {
@@ -293,4 +345,4 @@ public class ExpressionParser extends Parser {
       _decisionToDFA[i] = new DFA(_ATN.getDecisionState(i), i);
     }
   }
-}
+}
\ No newline at end of file
@@ -0,0 +1,84 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for BatchEvaluator.
+ */
+public class BatchEvaluatorTest {
+
+    // Testing strategy:
+    //    - leaf expressions, fused and stack operations, operands on either side
+    //    - row counts below, at and above one block
+    //    - array and buffer columns
+    //    - missing and short columns
+
+    private static final String[] EXPRESSIONS = {
+        "x", "7", "x + 1", "1 + x", "x * y", "(x + 1) * (y + 2)", "2 * (x * y + 3) + y * y * x", "x + y + x * 4"
+    };
+
+    private static Map<String, double[]> columns(int rows) {
+        Map<String, double[]> columns = new HashMap<>();
+        double[] x = new double[rows];
+        double[] y = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            x[i] = i % 17;
+            y[i] = (i * 7) % 11;
+        }
+        columns.put("x", x);
+        columns.put("y", y);
+        return columns;
+    }
+
+    @Test
+    public void testMatchesRowByRowEvaluation() {
+        for (int rows : new int[] {0, 1, 511, 512, 1500}) {
+            Map<String, double[]> columns = columns(rows);
+            for (String input : EXPRESSIONS) {
+                Expression expr = Expression.parse(input);
+                double[] output = new double[rows];
+                expr.evaluateColumns(columns, output);
+                CompiledExpression compiled = expr.compile(Arrays.asList("x", "y"));
+                for (int i = 0; i < rows; i++) {
+                    double expected = compiled.evaluate(new double[] {columns.get("x")[i], columns.get("y")[i]});
+                    assertEquals(input + " row " + i, expected, output[i], 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBufferColumns() {
+        Map<String, double[]> arrays = columns(1000);
+        Map<String, DoubleBuffer> buffers = new HashMap<>();
+        for (Map.Entry<String, double[]> column : arrays.entrySet()) {
+            DoubleBuffer buffer = DoubleBuffer.allocate(1001);
+            buffer.put(-1).put(column.getValue()).position(1);
+            buffers.put(column.getKey(), buffer);
+        }
+        BatchEvaluator evaluator = BatchEvaluator.compile(Expression.parse("(x + 1) * (y + 2)"));
+        double[] fromArrays = new double[1000];
+        double[] fromBuffers = new double[1000];
+        evaluator.evaluate(arrays, fromArrays);
+        evaluator.evaluateBuffers(buffers, fromBuffers);
+        assertArrayEquals(fromArrays, fromBuffers, 0.0);
+        assertEquals(1, buffers.get("x").position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingColumn() {
+        Expression.parse("x + z").evaluateColumns(columns(10), new double[10]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShortColumn() {
+        Expression.parse("x + y").evaluateColumns(columns(10), new double[11]);
+    }
+}
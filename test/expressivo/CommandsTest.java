@@ -29,6 +29,11 @@ public class CommandsTest {
     //    - Simplify expressions to a constant (e.g., "x * 3", x=2).
     //    - Edge cases: no mappings, empty mappings, invalid expressions.
 
+    // 3. Commands.differentiate() with an environment:
+    //    - Every variable bound, so the result is a number; variable absent from the expression.
+    //    - Some variables bound, so the result is a simplified derivative.
+    //    - Edge cases: invalid variable, negative value.
+
     @Test(expected = AssertionError.class)
     public void testAssertionsEnabled() {
         assert false; // make sure assertions are enabled with VM argument: -ea
@@ -123,4 +128,35 @@ public class CommandsTest {
         environment.put("", 3.0); // Invalid variable in environment
         Commands.simplify("x + 2", environment);
     }
+
+    /** Tests for Commands.differentiate() with an environment */
+    @Test
+    public void testDifferentiateAtPoint() {
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 2.0);
+        environment.put("y", 3.0);
+        assertEquals("13.0", Commands.differentiate("x * x * y + y + x", "x", environment)); // 2xy + 1
+        assertEquals("5.0", Commands.differentiate("x * x * y + y + x", "y", environment)); // x^2 + 1
+        assertEquals("0.0", Commands.differentiate("x * y", "z", environment)); // Variable not in expression
+    }
+
+    @Test
+    public void testDifferentiatePartiallyBound() {
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("y", 3.0);
+        assertEquals(Expression.parse("x * x * y").differentiate("x").simplify(environment).toString(),
+                Commands.differentiate("x * x * y", "x", environment)); // Symbolic in x
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentiateAtPointInvalidVariable() {
+        Commands.differentiate("x", "x1", new HashMap<>()); // Invalid variable
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentiateAtPointNegativeValue() {
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", -1.0); // Negative values are invalid, as for simplify
+        Commands.differentiate("x", "x", environment);
+    }
 }
@@ -0,0 +1,172 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for Environment and the operations that accept it.
+ */
+public class EnvironmentTest {
+
+    // Testing strategy:
+    //    - set, replace, unset, clear; size and toMap after each
+    //    - slots: Variable.getId() agrees with the environment, many slots, interleaved sets and
+    //      unsets against a map
+    //    - names without a slot: creating a Variable, isBound(String) and unset() assign none;
+    //      set(), of(Map) and simplify() with names no expression uses assign none; a name bound
+    //      before it had a slot is found by slot afterwards, and replaced or unset once
+    //    - of(Map): valid, invalid name, negative value, null value
+    //    - simplify(Environment), Commands.simplify(String, Environment) and
+    //      ExpressionTape.evaluate(Environment) agree with the Map versions
+    //    - evaluate with an unbound variable
+
+    @Test
+    public void testSetUnsetClear() {
+        Environment environment = new Environment();
+        assertEquals(0, environment.size());
+        environment.set("x", 1).set("y", 2).set("x", 3);
+        assertEquals(2, environment.size());
+        assertTrue(environment.isBound("x"));
+        assertEquals(3.0, environment.get(new Variable("x").getId()), 0.0);
+        Map<String, Double> expected = new HashMap<>();
+        expected.put("x", 3.0);
+        expected.put("y", 2.0);
+        assertEquals(expected, environment.toMap());
+
+        environment.unset("x").unset("z");
+        assertEquals(1, environment.size());
+        assertFalse(environment.isBound("x"));
+        environment.clear();
+        assertEquals(0, environment.size());
+        assertFalse(environment.isBound("y"));
+    }
+
+    @Test
+    public void testManySlots() {
+        Environment environment = new Environment();
+        StringBuilder name = new StringBuilder("slot");
+        for (int i = 0; i < 300; i++) {
+            name.append((char) ('a' + i % 26));
+            environment.set(name.toString(), i);
+        }
+        assertEquals(300, environment.size());
+        assertEquals(299.0, environment.get(new Variable(name.toString()).getId()), 0.0);
+    }
+
+    @Test
+    public void testInterleavedSetAndUnset() {
+        Environment environment = new Environment();
+        Map<String, Double> expected = new HashMap<>();
+        String[] names = new String[40];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "n" + (char) ('a' + i / 26) + (char) ('a' + i % 26);
+        }
+        for (int step = 0; step < 2000; step++) {
+            String name = names[(step * 7 + step / 40) % names.length];
+            if (step % 3 == 0) {
+                environment.unset(name);
+                expected.remove(name);
+            } else {
+                environment.set(name, step);
+                expected.put(name, (double) step);
+            }
+            assertEquals(expected.size(), environment.size());
+        }
+        assertEquals(expected, environment.toMap());
+        for (String name : names) {
+            assertEquals(name, expected.containsKey(name), environment.isBound(name));
+        }
+    }
+
+    @Test
+    public void testLookupsAssignNoSlots() {
+        int before = SymbolTable.global().size();
+        Environment environment = new Environment();
+        assertFalse(environment.isBound("neverBoundAnywhere"));
+        environment.unset("neverBoundAnywhere");
+        new Variable("neverUsedAnywhere");
+        assertEquals(-1, SymbolTable.global().lookup("neverBoundAnywhere"));
+        assertEquals(before, SymbolTable.global().size());
+    }
+
+    @Test
+    public void testBindingAssignsNoSlots() {
+        new Variable("x").getId();
+        int before = SymbolTable.global().size();
+        Map<String, Double> map = new HashMap<>();
+        map.put("x", 2.0);
+        map.put("junkaaa", 1.0);
+        map.put("junkaab", 2.0);
+        Environment environment = Environment.of(map).set("junkaac", 3);
+        assertEquals(4, environment.size());
+        assertTrue(environment.isBound("junkaaa"));
+        assertEquals(Expression.parse("6"), Expression.parse("x * 3").simplify(map));
+        assertEquals(Expression.parse("6"), Expression.parse("x * 3").simplify(environment));
+        assertEquals(-1, SymbolTable.global().lookup("junkaaa"));
+        assertEquals(before, SymbolTable.global().size());
+    }
+
+    @Test
+    public void testBindingBeforeSlot() {
+        Environment environment = new Environment().set("boundBeforeSlot", 4).set("boundTwiceBeforeSlot", 1);
+        int slot = new Variable("boundBeforeSlot").getId();
+        assertTrue(environment.isBound(slot));
+        assertEquals(4.0, environment.get(slot), 0.0);
+        assertEquals(2, environment.size());
+
+        int other = new Variable("boundTwiceBeforeSlot").getId();
+        environment.set("boundTwiceBeforeSlot", 5);
+        assertEquals(2, environment.size());
+        assertEquals(5.0, environment.get(other), 0.0);
+        Map<String, Double> expected = new HashMap<>();
+        expected.put("boundBeforeSlot", 4.0);
+        expected.put("boundTwiceBeforeSlot", 5.0);
+        assertEquals(expected, environment.toMap());
+
+        environment.unset("boundTwiceBeforeSlot");
+        assertFalse(environment.isBound(other));
+        assertEquals(1, environment.size());
+    }
+
+    @Test
+    public void testSimplifyAgreesWithMap() {
+        Map<String, Double> map = new HashMap<>();
+        map.put("x", 2.0);
+        map.put("unused", 7.0);
+        Expression expression = Expression.parse("x * y + x * x + 3");
+        assertEquals(expression.simplify(map), expression.simplify(Environment.of(map)));
+        assertEquals(Commands.simplify("x * y + x * x + 3", map), Commands.simplify("x * y + x * x + 3", Environment.of(map)));
+        map.put("y", 5.0);
+        assertEquals(ExpressionTape.of(expression).evaluate(map), ExpressionTape.of(expression).evaluate(Environment.of(map)), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEvaluateUnbound() {
+        ExpressionTape.of(Expression.parse("x + y")).evaluate(new Environment().set("x", 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidName() {
+        new Environment().set("x1", 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeValue() {
+        new Environment().set("x", -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullValue() {
+        Environment.of(Collections.singletonMap("x", (Double) null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetUnbound() {
+        new Environment().get(new Variable("x").getId());
+    }
+}
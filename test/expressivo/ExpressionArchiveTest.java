@@ -0,0 +1,139 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for ExpressionArchive.
+ */
+public class ExpressionArchiveTest {
+
+    // Testing strategy:
+    //    - empty archive, a few expressions, enough expressions to span several write buffers
+    //    - binary and flattened expressions, constants and variables repeated across expressions
+    //    - materializing, evaluating and printing in place
+    //    - files that are not archives, adding after close
+    //    - corrupt headers: counts and offsets outside the file, bad index entries and names
+
+    private static final String[] EXPRESSIONS = {
+        "x", "7", "x + 1", "x * y", "(x + 1) * (y + 2)", "2 * (x * y + 3) + y * y * x", "z + 7 * x"
+    };
+
+    private static Path tempFile() throws IOException {
+        Path file = Files.createTempFile("expressions", ".bin");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path file = tempFile();
+        try (ExpressionArchive.Writer writer = ExpressionArchive.writer(file)) {
+            for (String input : EXPRESSIONS) {
+                writer.add(Expression.parse(input));
+            }
+            writer.add(Expression.parseFlattened("a + b + c * d * a"));
+        }
+        ExpressionArchive archive = ExpressionArchive.map(file);
+        assertEquals(EXPRESSIONS.length + 1, archive.size());
+
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 3.0);
+        environment.put("y", 5.0);
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            Expression expr = Expression.parse(EXPRESSIONS[i]);
+            assertEquals(expr, archive.get(i));
+            assertEquals(expr.toString(), archive.tape(i).toString());
+            if (!EXPRESSIONS[i].contains("z")) {
+                assertEquals(ExpressionTape.of(expr).evaluate(environment), archive.evaluate(i, environment), 0.0);
+            }
+        }
+        assertTrue(archive.get(EXPRESSIONS.length) instanceof Sum);
+        assertTrue(archive.tape(0).isDirect());
+    }
+
+    @Test
+    public void testManyExpressions() throws IOException {
+        Path file = tempFile();
+        try (ExpressionArchive.Writer writer = ExpressionArchive.writer(file)) {
+            for (int i = 0; i < 20000; i++) {
+                writer.add(new Addition(new Multiplication(new Number(i % 100), new Variable("x")), new Number(i)));
+            }
+        }
+        ExpressionArchive archive = ExpressionArchive.map(file);
+        assertEquals(20000, archive.size());
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 2.0);
+        for (int i = 0; i < 20000; i += 997) {
+            assertEquals((i % 100) * 2 + i, archive.evaluate(i, environment), 0.0);
+        }
+        assertEquals(new Addition(new Multiplication(new Number(99), new Variable("x")), new Number(19999)), archive.get(19999));
+    }
+
+    @Test
+    public void testEmptyArchive() throws IOException {
+        Path file = tempFile();
+        ExpressionArchive.writer(file).close();
+        assertEquals(0, ExpressionArchive.map(file).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAnArchive() throws IOException {
+        Path file = tempFile();
+        Files.write(file, "x + 1 is not binary at all".getBytes("US-ASCII"));
+        ExpressionArchive.map(file);
+    }
+
+    @Test
+    public void testCorruptHeader() throws IOException {
+        Path file = tempFile();
+        try (ExpressionArchive.Writer writer = ExpressionArchive.writer(file)) {
+            for (String input : EXPRESSIONS) {
+                writer.add(Expression.parse(input));
+            }
+        }
+        byte[] original = Files.readAllBytes(file);
+        int indexOffset = ByteBuffer.wrap(original).order(ByteOrder.LITTLE_ENDIAN).getInt(28);
+        int namesOffset = ByteBuffer.wrap(original).order(ByteOrder.LITTLE_ENDIAN).getInt(32);
+        int[][] corruptions = {
+            {8, -1},                       // expression count
+            {8, 1 << 28},                  // expression count past the index
+            {12, Integer.MAX_VALUE},       // instruction count
+            {16, 1 << 20},                 // constant count
+            {20, 1000},                    // name count
+            {24, Integer.MAX_VALUE - 4},   // constants offset
+            {32, original.length},         // names offset
+            {indexOffset, 1 << 20},        // first instruction of an expression
+            {indexOffset + 12, -1},        // stack depth
+            {namesOffset, 1 << 30},        // name length
+        };
+        for (int[] corruption : corruptions) {
+            byte[] bytes = original.clone();
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(corruption[0], corruption[1]);
+            Files.write(file, bytes);
+            try {
+                ExpressionArchive.map(file);
+                fail("expected IOException for " + Arrays.toString(corruption));
+            } catch (IOException expected) {
+                // corrupt archive rejected
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddAfterClose() throws IOException {
+        ExpressionArchive.Writer writer = ExpressionArchive.writer(tempFile());
+        writer.close();
+        writer.add(new Variable("x"));
+    }
+}
@@ -0,0 +1,221 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests for ExpressionServer, against a server on an ephemeral localhost port.
+ */
+public class ExpressionServerTest {
+
+    // Testing strategy:
+    //    - each endpoint: parse, differentiate, simplify, evaluate
+    //    - body of one line, of several lines (a batch), with and without a final newline
+    //    - invalid expression, missing parameter, invalid parameter value, unbound variable
+    //    - unknown path, method other than POST
+    //    - no free request permits, so the request is refused: no permits at all, or every
+    //      permit held by a request still sending its body
+    //    - a refused client that stalls mid-request does not delay later requests
+
+    /** Status and body of a response. */
+    private static final class Response {
+        private final int status;
+        private final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    /** Wait until server has exactly permits free permits, failing after TIMEOUT_MILLIS. */
+    private static void awaitPermits(ExpressionServer server, int permits) throws InterruptedException {
+        final long deadline = System.nanoTime() + TIMEOUT_MILLIS * 1_000_000L;
+        while (server.availablePermits() != permits) {
+            assertTrue("timed out waiting for " + permits + " free permits", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /** Start sending a request whose body is one byte short, so it holds its permit. */
+    private static OutputStream startSlowRequest(Socket socket) throws IOException {
+        final OutputStream out = socket.getOutputStream();
+        out.write(("POST /parse HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nx")
+                .getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return out;
+    }
+
+    /** Finish a request begun by startSlowRequest, and return its status line. */
+    private static String finishSlowRequest(Socket socket, OutputStream out) throws IOException {
+        out.write(" + 1".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+    }
+
+    private static ExpressionServer start(int maxConcurrentRequests) throws IOException {
+        return ExpressionServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), maxConcurrentRequests);
+    }
+
+    private static Response request(ExpressionServer server, String method, String pathAndQuery, String body)
+            throws IOException {
+        final URL url = new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), pathAndQuery);
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        try {
+            connection.setRequestMethod(method);
+            if (body != null) {
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            final int status = connection.getResponseCode();
+            final InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            if (in != null) {
+                try (InputStream closing = in) {
+                    final byte[] buffer = new byte[1024];
+                    int read;
+                    while ((read = closing.read(buffer)) >= 0) {
+                        bytes.write(buffer, 0, read);
+                    }
+                }
+            }
+            return new Response(status, new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void testParse() throws IOException {
+        try (ExpressionServer server = start(4)) {
+            final Response response = request(server, "POST", "/parse", "x * y + 1");
+            assertEquals(200, response.status);
+            assertEquals("((x * y) + 1.0)", response.body);
+        }
+    }
+
+    @Test
+    public void testDifferentiate() throws IOException {
+        try (ExpressionServer server = start(4)) {
+            final Response response = request(server, "POST", "/differentiate?variable=x", "x * y");
+            assertEquals(200, response.status);
+            assertEquals("((1.0 * y) + (x * 0.0))", response.body);
+        }
+    }
+
+    @Test
+    public void testSimplify() throws IOException {
+        try (ExpressionServer server = start(4)) {
+            final Response response = request(server, "POST", "/simplify?y=2", "x * y + 1");
+            assertEquals(200, response.status);
+            assertEquals(Expression.parse("x * y + 1").simplify(Collections.singletonMap("y", 2.0)).toString(),
+                    response.body);
+        }
+    }
+
+    @Test
+    public void testEvaluate() throws IOException {
+        try (ExpressionServer server = start(4)) {
+            final Response response = request(server, "POST", "/evaluate?x=3&y=2", "x * y + 1");
+            assertEquals(200, response.status);
+            assertEquals("7.0", response.body);
+        }
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        try (ExpressionServer server = start(4)) {
+            final Response response = request(server, "POST", "/evaluate?x=3", "x + 1\n(x\nx * x\ny\n");
+            assertEquals(200, response.status);
+            final String[] lines = response.body.split("\n", -1);
+            assertEquals(5, lines.length);
+            assertEquals("4.0", lines[0]);
+            assertTrue(lines[1].startsWith("Error: "));
+            assertEquals("9.0", lines[2]);
+            assertTrue(lines[3].startsWith("Error: "));
+            assertEquals("", lines[4]);
+        }
+    }
+
+    @Test
+    public void testInvalidRequests() throws IOException {
+        try (ExpressionServer server = start(4)) {
+            Response parse = request(server, "POST", "/parse", "(x");
+            assertEquals(400, parse.status);
+            assertEquals("Error: Invalid expression at offset 2: expected '+', '*' or ')'", parse.body.trim());
+            assertEquals(400, request(server, "POST", "/differentiate", "x").status);
+            assertEquals(400, request(server, "POST", "/simplify?x=abc", "x").status);
+            assertEquals(400, request(server, "POST", "/evaluate", "x").status);
+            assertEquals(404, request(server, "POST", "/parse/more", "x").status);
+            assertEquals(405, request(server, "GET", "/parse", null).status);
+        }
+    }
+
+    @Test
+    public void testBusy() throws IOException {
+        try (ExpressionServer server = start(0)) {
+            final Response response = request(server, "POST", "/parse", "x");
+            assertEquals(503, response.status);
+        }
+    }
+
+    @Test
+    public void testBusyWhilePermitHeld() throws IOException, InterruptedException {
+        try (ExpressionServer server = start(1);
+                Socket slow = new Socket(server.getAddress().getAddress(), server.getAddress().getPort())) {
+            slow.setSoTimeout(TIMEOUT_MILLIS);
+            final OutputStream out = startSlowRequest(slow);
+            awaitPermits(server, 0);
+            assertEquals(503, request(server, "POST", "/parse", "y").status);
+
+            assertEquals("HTTP/1.1 200 OK", finishSlowRequest(slow, out));
+            awaitPermits(server, 1);
+            assertEquals(200, request(server, "POST", "/parse", "y").status);
+        }
+    }
+
+    @Test
+    public void testStalledRefusalDoesNotBlock() throws IOException, InterruptedException {
+        try (ExpressionServer server = start(1);
+                Socket slow = new Socket(server.getAddress().getAddress(), server.getAddress().getPort());
+                Socket stalled = new Socket(server.getAddress().getAddress(), server.getAddress().getPort())) {
+            slow.setSoTimeout(TIMEOUT_MILLIS);
+            final OutputStream out = startSlowRequest(slow);
+            awaitPermits(server, 0);
+            // refused, and never finishes its request line
+            stalled.getOutputStream().write("POS".getBytes(StandardCharsets.US_ASCII));
+            stalled.getOutputStream().flush();
+            assertEquals(503, request(server, "POST", "/parse", "y").status);
+
+            assertEquals("HTTP/1.1 200 OK", finishSlowRequest(slow, out));
+            awaitPermits(server, 1);
+            assertEquals(200, request(server, "POST", "/parse", "y").status);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeConcurrency() throws IOException {
+        start(-1);
+    }
+}
@@ -0,0 +1,85 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for ExpressionTape.
+ */
+public class ExpressionTapeTest {
+
+    // Testing strategy:
+    //    - leaves, binary operations, flattened Sum and Product, nested groupings
+    //    - heap and direct storage
+    //    - round trip to Expression, printing and evaluation compared with the AST
+    //    - repeated constants and variables, missing variable values
+
+    private static final String[] EXPRESSIONS = {
+        "x", "7", "x + 1", "x * y", "(x + 1) * (y + 2)", "x + (y + x)", "2 * (x * y + 3) + y * y * x", "x + y + x * 4"
+    };
+
+    private static Map<String, Double> environment() {
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 3.0);
+        environment.put("y", 5.0);
+        return environment;
+    }
+
+    @Test
+    public void testRoundTripAndPrint() {
+        for (String input : EXPRESSIONS) {
+            for (Expression expr : Arrays.asList(Expression.parse(input), Expression.parseFlattened(input))) {
+                ExpressionTape tape = ExpressionTape.of(expr);
+                assertEquals(expr, tape.toExpression());
+                assertEquals(expr.toString(), tape.toString());
+                assertEquals(expr.toString(), tape.toDirect().toString());
+            }
+        }
+    }
+
+    @Test
+    public void testFlatNodesSurvive() {
+        Expression flat = Expression.parseFlattened("x * y * 2 + y + (x + 1)");
+        Expression decoded = ExpressionTape.of(flat).toExpression();
+        assertTrue(decoded instanceof Sum);
+        assertEquals(3, ((Sum) decoded).size());
+        assertTrue(((Sum) decoded).getOperand(0) instanceof Product);
+    }
+
+    @Test
+    public void testEvaluate() {
+        Map<String, Double> environment = environment();
+        for (String input : EXPRESSIONS) {
+            Expression expr = Expression.parse(input);
+            double expected = CommonSubexpressions.of(expr).evaluate(environment);
+            assertEquals(input, expected, ExpressionTape.of(expr).evaluate(environment), 0.0);
+            assertEquals(input, expected, ExpressionTape.of(Expression.parseFlattened(input)).toDirect().evaluate(environment), 0.0);
+        }
+    }
+
+    @Test
+    public void testCompactStorage() {
+        StringBuilder input = new StringBuilder("x");
+        for (int i = 0; i < 1000; i++) {
+            input.append(" + 2 * x * y");
+        }
+        ExpressionTape tape = ExpressionTape.of(Expression.parse(input.toString()));
+        assertEquals(6001, tape.length());
+        assertEquals(Arrays.asList("x", "y"), tape.variables());
+        // one constant in the pool, two variable ids
+        assertEquals(6001 * 4 + 8 + 2 * 4, tape.sizeInBytes());
+        assertFalse(tape.isDirect());
+        assertTrue(tape.toDirect().isDirect());
+        assertEquals(3 + 1000 * 2 * 3 * 5, tape.evaluate(new double[] { 3, 5 }), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingVariable() {
+        ExpressionTape.of(Expression.parse("x + y")).evaluate(new HashMap<String, Double>());
+    }
+}
@@ -1,6 +1,16 @@
 package expressivo;
 
 import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
 import org.junit.Test;
 
 public class ExpressionTest {
@@ -105,4 +115,377 @@ public class ExpressionTest {
         );
         assertEquals("((x + 3.0) * (y + 4.0))", expr.toString());
     }
+
+    // Tests for compile
+    @Test
+    public void testCompileEvaluatesInVariableOrder() {
+        Expression expr = new Addition(
+                new Multiplication(new Variable("x"), new Number(3)),
+                new Variable("y")
+        );
+        CompiledExpression compiled = expr.compile(Arrays.asList("y", "x"));
+        assertEquals(Arrays.asList("y", "x"), compiled.variables());
+        assertEquals(7.0, compiled.evaluate(new double[] {1, 2}), 0.0);
+        assertEquals(10.0, compiled.evaluate(new double[] {4, 2}), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompileMissingVariable() {
+        new Addition(new Variable("x"), new Variable("y")).compile(Arrays.asList("x"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompileTooFewValues() {
+        new Variable("x").compile(Arrays.asList("x", "y")).evaluate(new double[] {1});
+    }
+
+    // Tests for ExpressionInterner
+    @Test
+    public void testInternerSharesStructurallyEqualExpressions() {
+        ExpressionInterner interner = new ExpressionInterner();
+        Expression expr1 = interner.multiplication(
+                interner.addition(interner.variable("x"), interner.number(3)),
+                interner.variable("y")
+        );
+        Expression expr2 = interner.intern(new Multiplication(
+                new Addition(new Variable("x"), new Number(3)),
+                new Variable("y")
+        ));
+        assertSame(expr1, expr2);
+        assertSame(expr1, interner.intern(expr1));
+        assertEquals(new Multiplication(new Addition(new Variable("x"), new Number(3)), new Variable("y")), expr1);
+    }
+
+    @Test
+    public void testInternerDistinguishesOperators() {
+        ExpressionInterner interner = new ExpressionInterner();
+        Expression sum = interner.addition(new Variable("x"), new Number(5));
+        Expression product = interner.multiplication(new Variable("x"), new Number(5));
+        assertNotSame(sum, product);
+        assertFalse(sum.equals(product));
+    }
+
+    // Tests for very deep expressions
+    private static Expression deepSum(int terms) {
+        Expression sum = new Variable("x");
+        for (int i = 1; i < terms; i++) {
+            sum = new Addition(sum, i % 2 == 0 ? new Variable("x") : new Number(1));
+        }
+        return sum;
+    }
+
+    @Test
+    public void testDeepExpressionEqualsHashCodeToString() {
+        Expression expr1 = deepSum(200000);
+        Expression expr2 = deepSum(200000);
+        assertTrue(expr1.equals(expr2));
+        assertEquals(expr1.hashCode(), expr2.hashCode());
+        assertEquals(expr1.toString(), expr2.toString());
+        assertTrue(expr1.toString().contains("(((x + 1.0) + x) + 1.0) + x)"));
+    }
+
+    @Test
+    public void testDeepExpressionCompile() {
+        Expression expr = deepSum(200000);
+        assertEquals(300000.0, expr.compile(Arrays.asList("y", "x")).evaluate(new double[] {7, 2}), 0.0);
+        assertEquals(300000.0, expr.flatten().compile(Arrays.asList("x")).evaluate(new double[] {2}), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDeepExpressionCompileMissingVariable() {
+        new Addition(deepSum(1000), new Variable("y")).compile(Arrays.asList("x"));
+    }
+
+    @Test
+    public void testDeepExpressionDifferentiateSimplify() {
+        Expression derivative = deepSum(200000).differentiate("x");
+        assertEquals(new Number(100000), derivative.simplify(Collections.emptyMap()));
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 2.0);
+        assertEquals(new Number(300000), deepSum(200000).simplify(environment));
+    }
+
+    // Tests for parse
+    private static final String[] VALID_INPUTS = {
+        "3", "x", "x + 2", "x * 3 + y", "x + 3 * y", "(x + 1) * (y + 2)", "a + b + c", "a * b * c",
+        "((foo))", " 2 *\tx\r\n+ 1 ", "123456789012345678901234567890 * x"
+    };
+
+    private static final String[] INVALID_INPUTS = {
+        "", "   ", "x +", "+ x", "x y", "2x", "()", "(x + 1", "x + 1)", ")x(", "x - 1", "3.5 * x",
+        "x \u000B+ 1", "x * * y"
+    };
+
+    @Test
+    public void testParseBackendsAgree() {
+        for (String input : VALID_INPUTS) {
+            assertEquals(input, Expression.parse(input, ParserBackend.ANTLR),
+                    Expression.parse(input, ParserBackend.HANDWRITTEN));
+        }
+        assertEquals(new Addition(new Multiplication(new Variable("x"), new Number(3)), new Variable("y")),
+                Expression.parse("x * 3 + y"));
+        assertEquals(new Multiplication(new Multiplication(new Variable("a"), new Variable("b")), new Variable("c")),
+                Expression.parse("a * b * c"));
+    }
+
+    @Test
+    public void testParseBackendsReportSameErrors() {
+        for (String input : INVALID_INPUTS) {
+            String antlrMessage = null;
+            String handwrittenMessage = null;
+            try {
+                Expression.parse(input, ParserBackend.ANTLR);
+            } catch (IllegalArgumentException e) {
+                antlrMessage = e.getMessage();
+            }
+            try {
+                Expression.parse(input, ParserBackend.HANDWRITTEN);
+            } catch (IllegalArgumentException e) {
+                handwrittenMessage = e.getMessage();
+            }
+            assertNotNull(input, antlrMessage);
+            assertEquals(input, antlrMessage, handwrittenMessage);
+        }
+    }
+
+    @Test
+    public void testParseDeeplyNested() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            input.append('(');
+        }
+        input.append('x');
+        for (int i = 0; i < 100000; i++) {
+            input.append(" + 1)");
+        }
+        Expression expr = Expression.parse(input.toString());
+        assertEquals(new Number(100001), expr.simplify(Collections.singletonMap("x", 1.0)));
+    }
+
+    // Tests for differentiating nested products
+    @Test
+    public void testDifferentiateNestedProductsShared() {
+        // x * (x + 1)^n, as ((x * (x + 1)) * (x + 1)) * ...
+        final int n = 40;
+        Expression expr = new Variable("x");
+        for (int i = 0; i < n; i++) {
+            expr = new Multiplication(expr, new Addition(new Variable("x"), new Number(1)));
+        }
+        Expression second = expr.differentiate("x").differentiate("x");
+        // f''(1) = 2^(n-2) * n * (n + 3)
+        assertEquals(new Number(Math.pow(2, n - 2) * n * (n + 3)),
+                second.simplify(Collections.singletonMap("x", 1.0)));
+        Expression equal = new Multiplication(((Multiplication) expr).getLeft(), new Addition(new Variable("x"), new Number(1)));
+        assertSame(second, equal.differentiate("x").differentiate("x"));
+    }
+
+    // Tests for CommonSubexpressions
+    @Test
+    public void testCommonSubexpressionsSharesRepeatedSubtrees() {
+        Expression expr = Expression.parse("(x + 1) * (x + 1) + (x + 1) * y");
+        CommonSubexpressions cse = CommonSubexpressions.of(expr);
+        assertEquals(13, cse.getTreeSize());
+        // x, 1, x + 1, (x + 1) * (x + 1), y, (x + 1) * y, sum
+        assertEquals(7, cse.getSlotCount());
+        assertEquals(6, cse.getReduction());
+        assertEquals(expr, cse.getDag());
+        assertEquals("let t0 = (x + 1.0) in ((t0 * t0) + (t0 * y))", cse.toLetString());
+
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 2.0);
+        environment.put("y", 5.0);
+        assertEquals(24.0, cse.evaluate(environment), 0.0);
+        assertEquals(Polynomial.of(expr.differentiate("x")), Polynomial.of(cse.differentiate("x")));
+    }
+
+    @Test
+    public void testCommonSubexpressionsOfDerivative() {
+        Expression expr = new Variable("x");
+        for (int i = 0; i < 60; i++) {
+            expr = new Multiplication(expr, new Addition(new Variable("x"), new Number(1)));
+        }
+        CommonSubexpressions cse = CommonSubexpressions.of(expr.differentiate("x").differentiate("x"));
+        assertTrue(cse.getTreeSize() > 100000);
+        assertTrue(cse.getSlotCount() < 1000);
+        assertEquals(Math.pow(2, 58) * 60 * 63, cse.evaluate(Collections.singletonMap("x", 1.0)), 0.0);
+    }
+
+    // Tests for Sum and Product
+    @Test
+    public void testFlatSumEqualsChain() {
+        Expression flat = new Sum(Arrays.asList(new Variable("x"), new Number(1), new Variable("y")));
+        Expression chain = new Addition(new Addition(new Variable("x"), new Number(1)), new Variable("y"));
+        assertEquals(chain, flat);
+        assertEquals(flat, chain);
+        assertEquals(chain.hashCode(), flat.hashCode());
+        assertEquals("(x + 1.0 + y)", flat.toString());
+        assertFalse(flat.equals(new Addition(new Variable("x"), new Addition(new Number(1), new Variable("y")))));
+        assertFalse(flat.equals(new Product(Arrays.asList(new Variable("x"), new Number(1), new Variable("y")))));
+    }
+
+    @Test
+    public void testFlattenWideExpression() {
+        StringBuilder input = new StringBuilder("x");
+        for (int i = 1; i < 10000; i++) {
+            input.append(i % 2 == 0 ? " + x" : " + 2 * y * x");
+        }
+        Expression chain = Expression.parse(input.toString());
+        Expression flat = chain.flatten();
+        assertTrue(flat instanceof Sum);
+        assertEquals(10000, ((Sum) flat).size());
+        assertTrue(((Sum) flat).getOperand(1) instanceof Product);
+        assertEquals(chain, flat);
+        assertEquals(chain.hashCode(), flat.hashCode());
+        assertEquals(flat, Expression.parseFlattened(input));
+        assertTrue(Expression.parseFlattened(input) instanceof Sum);
+        assertEquals(chain.simplify(Collections.<String, Double>emptyMap()),
+                flat.simplify(Collections.<String, Double>emptyMap()));
+        assertEquals(chain.differentiate("x"), flat.differentiate("x"));
+    }
+
+    @Test
+    public void testParseFlattenedKeepsGrouping() {
+        for (String input : VALID_INPUTS) {
+            assertEquals(Expression.parse(input), Expression.parseFlattened(input));
+        }
+        Expression grouped = Expression.parseFlattened("a + (b + c) + d");
+        assertEquals(3, ((Sum) grouped).size());
+        assertTrue(((Sum) grouped).getOperand(1) instanceof Sum);
+        assertEquals(grouped, Expression.parse(grouped.toString()));
+    }
+
+    @Test
+    public void testFlatProductDerivative() {
+        Expression flat = Expression.parseFlattened("x * x * y * x");
+        assertTrue(flat instanceof Product);
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 2.0);
+        environment.put("y", 3.0);
+        // d/dx 3x^3 = 9x^2
+        assertEquals(new Number(36), flat.differentiate("x").simplify(environment));
+        assertEquals(Polynomial.of(Expression.parse("x * x * y * x")), Polynomial.of(flat));
+        assertEquals(new DerivativeCache(0).differentiate(Expression.parse("x * x * y * x"), "x").toString(),
+                flat.differentiate("x").toString());
+    }
+
+    @Test
+    public void testDefaultFoldOfFlatOperations() {
+        Expression flat = Expression.parseFlattened("a + b * c * d + e");
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), new ArrayList<>(flat.variables()));
+        assertEquals(12.0, flat.compile(Arrays.asList("a", "b", "c", "d", "e")).evaluate(new double[] {1, 1, 2, 5, 1}), 0.0);
+    }
+
+    @Test
+    public void testDerivativeCacheKeepsShape() {
+        String input = "x * y + x * x + 1";
+        String binary = new DerivativeCache(0).differentiate(Expression.parse(input), "x").toString();
+        String flat = new DerivativeCache(0).differentiate(Expression.parseFlattened(input), "x").toString();
+        assertNotEquals(binary, flat);
+
+        DerivativeCache cache = new DerivativeCache(16);
+        assertEquals(flat, cache.differentiate(Expression.parseFlattened(input), "x").toString());
+        assertEquals(binary, cache.differentiate(Expression.parse(input), "x").toString());
+        assertEquals(flat, cache.differentiate(Expression.parseFlattened(input), "x").toString());
+        assertEquals(2, cache.size());
+
+        Expression.parseFlattened(input).differentiate("x");
+        assertEquals(binary, Commands.differentiate(input, "x"));
+    }
+
+    // Tests for ExpressionPrinter
+    @Test
+    public void testPrintMinimalParentheses() {
+        Expression expr = new Addition(
+                new Multiplication(new Variable("x"), new Addition(new Number(2), new Variable("y"))),
+                new Addition(new Variable("z"), new Number(1)));
+        assertEquals("x * (2 + y) + (z + 1)", ExpressionPrinter.print(expr, true));
+        assertEquals(expr.toString(), ExpressionPrinter.print(expr, false));
+        assertEquals("a + b * c * d", ExpressionPrinter.print(Expression.parseFlattened("a + b * c * d"), true));
+        assertEquals("(a + b) * c + d * (e * f)", ExpressionPrinter.print(Expression.parse("(a + b) * c + d * (e * f)"), true));
+    }
+
+    @Test
+    public void testPrintMinimalParsesBack() {
+        String[] inputs = { "a * (b + c)", "a + (b + c)", "(a + b) + c", "a * (b * c) * d", "((a * b) + (c * (d + e))) * f" };
+        for (String input : inputs) {
+            for (Expression expr : Arrays.asList(Expression.parse(input), Expression.parseFlattened(input))) {
+                assertEquals(input, expr, Expression.parse(ExpressionPrinter.print(expr, true)));
+            }
+        }
+    }
+
+    @Test
+    public void testPrintMinimalNumbersParseBack() {
+        String[] inputs = { "2 * x + 1", "0 + 7 * (y + 123456789012)", "x * 9007199254740993", "12345678901234567890123" };
+        for (String input : inputs) {
+            Expression expr = Expression.parse(input);
+            assertEquals(input, expr, Expression.parse(ExpressionPrinter.print(expr, true)));
+        }
+        Expression large = new Multiplication(new Number(1e300), new Number(Math.scalb(1.0, 70)));
+        assertEquals(large, Expression.parse(ExpressionPrinter.print(large, true)));
+        // not integral: written as Double.toString, which the parser rejects
+        assertEquals("0.5 * x", ExpressionPrinter.print(new Multiplication(new Number(0.5), new Variable("x")), true));
+        assertEquals("((2.0 * x) + 1.0)", ExpressionPrinter.print(Expression.parse("2 * x + 1"), false));
+    }
+
+    @Test
+    public void testPrintToAppendable() throws IOException {
+        Expression expr = deepSum(200000);
+        StringWriter out = new StringWriter();
+        ExpressionPrinter.print(expr, true, out);
+        String minimal = out.toString();
+        assertFalse(minimal.contains("("));
+        assertTrue(minimal.length() < expr.toString().length());
+    }
+
+    // Tests for tryParse
+    @Test
+    public void testTryParseValid() {
+        ParseResult result = Expression.tryParse("x * (y + 2)");
+        assertTrue(result.isSuccess());
+        assertEquals(Expression.parse("x * (y + 2)"), result.getExpression());
+        assertEquals(-1, result.getErrorOffset());
+        assertNull(result.getExpected());
+        assertNull(result.getMessage());
+    }
+
+    @Test
+    public void testTryParseErrorPositions() {
+        // offending character, or the input length when the input ends too early
+        String[] inputs = { "x + * y", "x y", "(x + 1", "x + 1)", "3 + 4.5", "x +", "", "  ", "x + $" };
+        int[] offsets = { 4, 2, 6, 5, 5, 3, 0, 2, 4 };
+        for (int i = 0; i < inputs.length; i++) {
+            ParseResult result = Expression.tryParse(inputs[i]);
+            assertFalse(inputs[i], result.isSuccess());
+            assertEquals(inputs[i], offsets[i], result.getErrorOffset());
+            assertNotNull(result.getExpected());
+        }
+        assertEquals("'+', '*' or ')'", Expression.tryParse("(x + 1").getExpected());
+        assertEquals("number, variable or '('", Expression.tryParse("x + * y").getExpected());
+        assertEquals("Invalid expression at offset 6: expected '+', '*' or ')'", Expression.tryParse("(x + 1").getShortMessage());
+        assertNull(Expression.tryParse("x").getShortMessage());
+        assertFalse(Expression.tryParse(null).isSuccess());
+    }
+
+    @Test
+    public void testTryParseMessageMatchesParse() {
+        for (String input : new String[] { "(x + 1", "x + $", "x y", "" }) {
+            try {
+                Expression.parse(input);
+                fail("expected IllegalArgumentException for " + input);
+            } catch (IllegalArgumentException e) {
+                assertEquals(e.getMessage(), Expression.tryParse(input).getMessage());
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTryParseOrElseThrow() {
+        Expression.tryParse("x +").orElseThrow();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testTryParseGetExpressionOnFailure() {
+        Expression.tryParse("x +").getExpression();
+    }
 }
@@ -0,0 +1,89 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for Gradient.
+ */
+public class GradientTest {
+
+    // Testing strategy:
+    //    - expressions: constant, single variable, sums and products, repeated variables,
+    //      shared subexpressions, flattened Sum and Product, products with a zero operand
+    //    - numeric gradient agrees with differentiate() then simplify() for every variable
+    //    - symbolic gradient simplifies to the same polynomial as differentiate()
+    //    - value returned along with the gradient
+    //    - environment missing a variable; arrays too short
+
+    private static final Map<String, Double> ENVIRONMENT = new HashMap<>();
+    static {
+        ENVIRONMENT.put("x", 2.0);
+        ENVIRONMENT.put("y", 3.0);
+        ENVIRONMENT.put("z", 0.0);
+    }
+
+    private static void assertMatchesDifferentiate(Expression expression) {
+        Gradient gradient = Gradient.of(expression);
+        Map<String, Double> numeric = gradient.evaluate(ENVIRONMENT);
+        Map<String, Expression> symbolic = Gradient.symbolic(expression);
+        assertEquals(gradient.variables(), Arrays.asList(numeric.keySet().toArray()));
+        assertEquals(numeric.keySet(), symbolic.keySet());
+        for (String variable : expression.variables()) {
+            Expression derivative = expression.differentiate(variable);
+            double expected = ((Number) derivative.simplify(ENVIRONMENT)).getValue();
+            assertEquals(expression + " by " + variable, expected, numeric.get(variable), 1e-9);
+            assertEquals(expression + " by " + variable,
+                    Polynomial.of(derivative), Polynomial.of(symbolic.get(variable)));
+        }
+    }
+
+    @Test
+    public void testAgreesWithDifferentiate() {
+        for (String source : new String[] {"x", "x + y", "x * y", "x * x * x + 2 * x * y + z",
+                "(x + 1) * (y + z) * (x + y)", "x * z * y", "3 * (x + x * y) * z + y"}) {
+            assertMatchesDifferentiate(Expression.parse(source));
+            assertMatchesDifferentiate(Expression.parseFlattened(source));
+        }
+    }
+
+    @Test
+    public void testSharedSubexpressions() {
+        Expression shared = Expression.parse("x * y + 1");
+        Expression expression = new Multiplication(shared, new Multiplication(shared, shared));
+        assertMatchesDifferentiate(expression);
+    }
+
+    @Test
+    public void testValueAndArrays() {
+        Gradient gradient = Gradient.of(Expression.parse("x * x + y"));
+        assertEquals(Arrays.asList("x", "y"), gradient.variables());
+        double[] partials = {99, 99};
+        assertEquals(7.0, gradient.evaluate(new double[] {2, 3}, partials), 0.0);
+        assertArrayEquals(new double[] {4, 1}, partials, 0.0);
+    }
+
+    @Test
+    public void testConstant() {
+        Gradient gradient = Gradient.of(Expression.parse("2 * 3"));
+        assertTrue(gradient.variables().isEmpty());
+        assertEquals(6.0, gradient.evaluate(new double[0], new double[0]), 0.0);
+        assertTrue(Gradient.symbolic(Expression.parse("2 * 3")).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingVariable() {
+        Gradient.of(Expression.parse("x + y")).evaluate(Collections.singletonMap("x", 1.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShortArray() {
+        Gradient.of(Expression.parse("x + y")).evaluate(new double[] {1, 2}, new double[1]);
+    }
+}
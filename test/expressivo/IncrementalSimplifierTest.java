@@ -0,0 +1,129 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for IncrementalSimplifier.
+ */
+public class IncrementalSimplifierTest {
+
+    // Testing strategy:
+    //    - first call, repeated call with the same environment, changed value, newly bound
+    //      and newly unbound variables, variables not in the expression
+    //    - expressions: single leaf, nested tree, shared subexpressions, flattened chains,
+    //      chains nested to the right, products too large to expand
+    //    - recomputation limited to the chains above changed variables
+    //    - invalid environment
+
+    private static Map<String, Double> env(Object... bindings) {
+        Map<String, Double> environment = new HashMap<>();
+        for (int i = 0; i < bindings.length; i += 2) {
+            environment.put((String) bindings[i], ((java.lang.Number) bindings[i + 1]).doubleValue());
+        }
+        return environment;
+    }
+
+    @Test
+    public void testMatchesSimplifyAcrossUpdates() {
+        Expression expression = Expression.parse("(x + 1) * (y + 2) + x * z + 3 * y");
+        IncrementalSimplifier simplifier = new IncrementalSimplifier(expression);
+        List<Map<String, Double>> environments = Arrays.asList(
+            env(), env("x", 1), env("x", 2), env("x", 2, "y", 5), env("y", 5), env("x", 1, "y", 1, "z", 1),
+            env("x", 1, "y", 1, "z", 1), env("w", 7), env("z", 0)
+        );
+        for (Map<String, Double> environment : environments) {
+            assertEquals(environment.toString(), expression.simplify(environment), simplifier.simplify(environment));
+        }
+    }
+
+    @Test
+    public void testLeaf() {
+        IncrementalSimplifier simplifier = new IncrementalSimplifier(new Variable("x"));
+        assertEquals(new Variable("x"), simplifier.simplify(env()));
+        assertEquals(new Number(4), simplifier.simplify(env("x", 4)));
+        assertEquals(new Variable("x"), simplifier.simplify(env("y", 4)));
+    }
+
+    @Test
+    public void testUnchangedEnvironmentRecomputesNothing() {
+        IncrementalSimplifier simplifier = new IncrementalSimplifier(Expression.parse("x * y + z"));
+        Expression first = simplifier.simplify(env("x", 3));
+        // x * y and the root
+        assertEquals(2, simplifier.recomputed());
+        assertSame(first, simplifier.simplify(env("x", 3, "unused", 1)));
+        assertEquals(0, simplifier.recomputed());
+    }
+
+    @Test
+    public void testOnlyAffectedRegionRecomputed() {
+        StringBuilder source = new StringBuilder("xz * v");
+        for (int i = 0; i < 200; i++) {
+            source.append(" + x").append((char) ('a' + i / 26)).append((char) ('a' + i % 26)).append(" * v");
+        }
+        Expression expression = Expression.parse(source.toString());
+        IncrementalSimplifier simplifier = new IncrementalSimplifier(Expression.parse("(a + b) * c + (d * e + f)"));
+        simplifier.simplify(env("a", 1, "d", 1));
+        simplifier.simplify(env("a", 2, "d", 1));
+        // a + b, (a + b) * c, and the root, whose chain includes d * e + f
+        assertEquals(3, simplifier.recomputed());
+        assertEquals(Expression.parse("(a + b) * c + (d * e + f)").simplify(env("a", 2, "d", 1)),
+                simplifier.simplify(env("a", 2, "d", 1)));
+
+        IncrementalSimplifier wide = new IncrementalSimplifier(expression.flatten());
+        wide.simplify(env("v", 1));
+        wide.simplify(env("v", 1, "xz", 2));
+        // xz * v and the flattened sum
+        assertEquals(2, wide.recomputed());
+    }
+
+    @Test
+    public void testSharedSubexpressions() {
+        Expression shared = Expression.parse("x + y");
+        Expression expression = new Multiplication(shared, new Addition(shared, new Variable("z")));
+        IncrementalSimplifier simplifier = new IncrementalSimplifier(expression);
+        assertEquals(expression.simplify(env("x", 1)), simplifier.simplify(env("x", 1)));
+        assertEquals(expression.simplify(env("x", 1, "y", 2)), simplifier.simplify(env("x", 1, "y", 2)));
+        // x + y, the addition with z, and the root; the shared node is recomputed once
+        assertEquals(3, simplifier.recomputed());
+        assertEquals(expression.simplify(env("z", 3)), simplifier.simplify(env("z", 3)));
+    }
+
+    @Test
+    public void testRightNestedChain() {
+        Expression expression = new Variable("v");
+        for (int i = 0; i < 500; i++) {
+            expression = new Addition(new Multiplication(new Variable("v"), new Number(i)), expression);
+        }
+        IncrementalSimplifier simplifier = new IncrementalSimplifier(expression);
+        assertEquals(expression.simplify(env()), simplifier.simplify(env()));
+        assertEquals(expression.simplify(env("v", 2)), simplifier.simplify(env("v", 2)));
+        // the 500 products, and the whole sum as a single chain
+        assertEquals(501, simplifier.recomputed());
+    }
+
+    @Test
+    public void testProductTooLargeToExpand() {
+        StringBuilder source = new StringBuilder("(a + p)");
+        for (int i = 1; i < 10; i++) {
+            source.append(" * (").append((char) ('a' + i)).append(" + ").append((char) ('p' + i)).append(')');
+        }
+        Expression expression = Expression.parse(source.toString());
+        IncrementalSimplifier simplifier = new IncrementalSimplifier(expression);
+        assertEquals(expression.simplify(env()), simplifier.simplify(env()));
+        assertEquals(expression.simplify(env("d", 1)), simplifier.simplify(env("d", 1)));
+        assertEquals(expression.simplify(env("d", 1, "p", 2)), simplifier.simplify(env("d", 1, "p", 2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeValue() {
+        new IncrementalSimplifier(new Variable("x")).simplify(Collections.singletonMap("x", -1.0));
+    }
+}
@@ -0,0 +1,86 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * Tests for Main's batch mode.
+ */
+public class MainTest {
+
+    // Testing strategy:
+    //    - one and several threads
+    //    - expressions, !d/d and !simplify commands, commands before any expression
+    //    - !d/d with assignments, which gives a result but keeps the current expression
+    //    - invalid expressions and commands, which keep the previous expression current
+    //    - input ending at end of stream or at an empty line
+    //    - enough chains to fill the in-flight queue
+
+    private static final String SCRIPT = String.join("\n",
+            "!d/dx",
+            "x * y",
+            "!d/dx",
+            "!simplify y=2",
+            "(x + 1",
+            "!d/dy",
+            "!simplify x=1 y=3",
+            "a + b",
+            "!d/d1",
+            "!simplify a=1");
+
+    private static final String EXPECTED = String.join(System.lineSeparator(),
+            "Error: must enter an expression before using this command.",
+            "(x * y)",
+            "((1.0 * y) + (x * 0.0))",
+            "2.0",
+            "Error: Invalid expression at offset 6: expected '+', '*' or ')'",
+            "(((0.0 * y) + (1.0 * 1.0)) + ((0.0 * 0.0) + (x * 0.0)))",
+            "1.0",
+            "(a + b)",
+            "Error: usage: !d/d must be followed by a variable name.",
+            "(1.0 + b)") + System.lineSeparator();
+
+    private static String run(String input, int threads) throws IOException {
+        StringWriter out = new StringWriter();
+        Main.runBatch(new BufferedReader(new StringReader(input)), out, threads);
+        return out.toString();
+    }
+
+    @Test
+    public void testBatchSequential() throws IOException {
+        assertEquals(EXPECTED, run(SCRIPT, 1));
+    }
+
+    @Test
+    public void testBatchParallelKeepsOrderAndSemantics() throws IOException {
+        assertEquals(EXPECTED, run(SCRIPT, 4));
+    }
+
+    @Test
+    public void testBatchStopsAtEmptyLine() throws IOException {
+        assertEquals("x" + System.lineSeparator(), run("x\n\ny\n", 1));
+        assertEquals("x" + System.lineSeparator(), run("x\n\ny\n", 2));
+    }
+
+    @Test
+    public void testBatchManyChains() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            input.append("x * ").append(i).append('\n').append(i % 3 == 0 ? "(\n" : "").append("!simplify x=2\n");
+        }
+        assertEquals(run(input.toString(), 1), run(input.toString(), 3));
+    }
+
+    @Test
+    public void testDifferentiateAtPoint() throws IOException {
+        String nl = System.lineSeparator();
+        assertEquals("(x * x)" + nl + "6.0" + nl + "(x * x)" + nl,
+                run("x * x\n!d/dx x=3\n!simplify\n", 1));
+    }
+}
@@ -0,0 +1,125 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Tests for OperationMetrics.
+ */
+public class OperationMetricsTest {
+
+    // Testing strategy:
+    //    - Histogram: empty, small values recorded exactly, large values within resolution,
+    //      quantiles 0, 0.5 and 1, invalid quantile
+    //    - Call: successful and failed calls, totals per operation, other operations untouched
+    //    - countNodes: leaves, tree, shared subexpressions, flattened chains
+    //    - JFR: events are committed to a recording that enables them
+    //    - DerivativeCache statistics: miss then hit
+
+    @Test
+    public void testHistogramEmpty() {
+        OperationMetrics.Histogram histogram = new OperationMetrics.Histogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtQuantile(0.5));
+    }
+
+    @Test
+    public void testHistogramSmallValuesExact() {
+        OperationMetrics.Histogram histogram = new OperationMetrics.Histogram();
+        for (int i = 1; i <= 20; i++) {
+            histogram.record(i);
+        }
+        assertEquals(20, histogram.getCount());
+        assertEquals(1, histogram.getValueAtQuantile(0));
+        assertEquals(10, histogram.getValueAtQuantile(0.5));
+        assertEquals(20, histogram.getValueAtQuantile(1));
+    }
+
+    @Test
+    public void testHistogramLargeValuesWithinResolution() {
+        OperationMetrics.Histogram histogram = new OperationMetrics.Histogram();
+        for (long value = 1; value < 1_000_000_000_000L; value = value * 3 + 1) {
+            histogram.record(value);
+            OperationMetrics.Histogram single = new OperationMetrics.Histogram();
+            single.record(value);
+            single.record(Long.MAX_VALUE);
+            long reported = single.getValueAtQuantile(0.5);
+            assertTrue(value + " reported as " + reported, reported >= value && reported <= value + value / 32);
+            assertEquals(Long.MAX_VALUE, single.getValueAtQuantile(1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHistogramInvalidQuantile() {
+        new OperationMetrics.Histogram().getValueAtQuantile(1.5);
+    }
+
+    @Test
+    public void testCallsRecorded() {
+        OperationMetrics metrics = new OperationMetrics();
+        metrics.begin(OperationMetrics.Operation.PARSE, 5).end(Expression.parse("x + 1"));
+        metrics.begin(OperationMetrics.Operation.PARSE, 2).fail();
+        OperationMetrics.Snapshot parse = metrics.snapshot(OperationMetrics.Operation.PARSE);
+        assertEquals(2, parse.getCalls());
+        assertEquals(1, parse.getFailures());
+        assertEquals(7, parse.getInputSize());
+        assertEquals(3, parse.getOutputNodes());
+        assertEquals(2, parse.getLatency().getCount());
+        assertEquals(0, metrics.snapshot(OperationMetrics.Operation.SIMPLIFY).getCalls());
+        assertTrue(metrics.report().contains("parse: calls=2 failures=1"));
+    }
+
+    @Test
+    public void testCountNodes() {
+        assertEquals(1, OperationMetrics.countNodes(new Variable("x")));
+        assertEquals(7, OperationMetrics.countNodes(Expression.parse("x * y + 2 * z")));
+        Expression shared = Expression.parse("x * y");
+        assertEquals(4, OperationMetrics.countNodes(new Addition(shared, shared)));
+        assertEquals(5, OperationMetrics.countNodes(Expression.parseFlattened("a + b + c + d")));
+    }
+
+    @Test
+    public void testFlightRecorderEvents() throws IOException {
+        Path file = Files.createTempFile("operations", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("expressivo.Operation").withThreshold(Duration.ZERO);
+            recording.start();
+            OperationMetrics metrics = new OperationMetrics();
+            metrics.begin(OperationMetrics.Operation.SIMPLIFY, 9).end(Expression.parse("2"));
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            // with metrics enabled globally, the parse also emits an event
+            events.removeIf(event -> !event.getEventType().getName().equals("expressivo.Operation")
+                    || !"SIMPLIFY".equals(event.getString("operation")));
+            assertEquals(1, events.size());
+            assertEquals(9, events.get(0).getInt("inputSize"));
+            assertEquals(1, events.get(0).getInt("outputNodes"));
+            assertFalse(events.get(0).getBoolean("failed"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testDerivativeCacheStats() {
+        DerivativeCache cache = new DerivativeCache(8);
+        Expression expression = Expression.parse("x * x");
+        cache.differentiate(expression, "x");
+        cache.differentiate(Expression.parse("x * x"), "x");
+        assertEquals(1, cache.stats().getHits());
+        assertEquals(1, cache.stats().getMisses());
+        assertEquals(1, cache.stats().getSize());
+    }
+}
@@ -0,0 +1,85 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Tests for ParallelEvaluator and Commands.simplifyAll().
+ */
+public class ParallelEvaluatorTest {
+
+    // Testing strategy:
+    //    - results keep environment order, for lists smaller and much larger than one chunk
+    //    - parallelism 1 and greater than 1
+    //    - unbound variable
+    //    - expression nested too deep for recursive evaluation
+    //    - simplify with partial environments
+
+    private static List<Map<String, Double>> environments(int count) {
+        List<Map<String, Double>> environments = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Double> environment = new HashMap<>();
+            environment.put("x", (double) i);
+            environment.put("y", (double) (i % 5));
+            environments.add(environment);
+        }
+        return environments;
+    }
+
+    @Test
+    public void testEvaluateKeepsOrder() {
+        Expression expr = Expression.parse("x * 2 + y");
+        for (int parallelism : new int[] {1, 4}) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                for (int count : new int[] {0, 3, 10000}) {
+                    double[] results = new ParallelEvaluator(pool).evaluate(expr, environments(count));
+                    assertEquals(count, results.length);
+                    for (int i = 0; i < count; i++) {
+                        assertEquals(i * 2 + i % 5, results[i], 0.0);
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testEvaluateDeepExpression() {
+        Expression expr = new Variable("x");
+        for (int i = 1; i < 200000; i++) {
+            expr = new Addition(expr, i % 2 == 0 ? new Variable("y") : new Number(1));
+        }
+        double[] results = new ParallelEvaluator(new ForkJoinPool(2)).evaluate(expr, environments(3));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 99999 * (i % 5) + 100000, results[i], 0.0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEvaluateUnboundVariable() {
+        new ParallelEvaluator().evaluate(Expression.parse("x + z"), environments(100));
+    }
+
+    @Test
+    public void testSimplifyAll() {
+        List<Map<String, Double>> environments = new ArrayList<>();
+        environments.add(Collections.singletonMap("x", 2.0));
+        environments.add(Collections.singletonMap("y", 3.0));
+        environments.add(Collections.<String, Double>emptyMap());
+        List<String> results = Commands.simplifyAll("x * y", environments);
+        assertEquals(3, results.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Commands.simplify("x * y", environments.get(i)), results.get(i));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for ParseCache.
+ */
+public class ParseCacheTest {
+
+    // Testing strategy:
+    //    - hit after miss returns the same instance and is counted
+    //    - size never exceeds the maximum; evictions are counted
+    //    - frequently used inputs survive a burst of one-off inputs
+    //    - maximum size 0 disables caching
+    //    - invalid input throws and is not cached
+    //    - tryParse shares entries with parse and reports invalid input without caching it
+
+    @Test
+    public void testHitReturnsCachedExpression() {
+        ParseCache cache = new ParseCache(16);
+        Expression first = cache.parse("x * 3 + y");
+        Expression second = cache.parse("x * 3 + y");
+        assertSame(first, second);
+        assertEquals(Expression.parse("x * 3 + y"), first);
+        assertEquals(1, cache.stats().getHits());
+        assertEquals(1, cache.stats().getMisses());
+        assertEquals(0.5, cache.stats().getHitRate(), 0.0);
+    }
+
+    @Test
+    public void testBoundedWithEvictions() {
+        ParseCache cache = new ParseCache(100);
+        for (int i = 0; i < 1000; i++) {
+            cache.parse("x + " + i);
+        }
+        assertTrue(cache.size() <= 100);
+        assertEquals(1000 - cache.size(), cache.stats().getEvictions());
+    }
+
+    @Test
+    public void testFrequentEntrySurvivesScan() {
+        ParseCache cache = new ParseCache(100);
+        Expression hot = cache.parse("x * y");
+        cache.parse("x * y");
+        for (int i = 0; i < 1000; i++) {
+            cache.parse("x + " + i);
+        }
+        assertSame(hot, cache.parse("x * y"));
+    }
+
+    @Test
+    public void testZeroSizeDisablesCaching() {
+        ParseCache cache = new ParseCache(0);
+        assertNotSame(cache.parse("x"), cache.parse("x"));
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.stats().getMisses());
+    }
+
+    @Test
+    public void testInvalidInputNotCached() {
+        ParseCache cache = new ParseCache(16);
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.parse("x +");
+                fail("expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testTryParse() {
+        ParseCache cache = new ParseCache(16);
+        Expression parsed = cache.parse("x + 1");
+        assertSame(parsed, cache.tryParse("x + 1").getExpression());
+        assertFalse(cache.tryParse("x + ").isSuccess());
+        assertEquals(4, cache.tryParse("x + ").getErrorOffset());
+        assertEquals(1, cache.size());
+        assertTrue(cache.tryParse("y").isSuccess());
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,133 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+/**
+ * Tests for PartialEvaluator.
+ */
+public class PartialEvaluatorTest {
+
+    // Testing strategy:
+    //    - bound: no variables, some variables, every variable, variables not in the expression
+    //    - evaluate by array and by map; map missing a free variable; map with extra entries
+    //    - residual: has only free variables, keeps the shape of the original expression,
+    //      folds constant subexpressions and identities, keeps shared subexpressions shared
+    //    - expressions: binary and flattened operations, wide products of sums, expressions
+    //      nested too deep for recursive evaluation
+    //    - invalid bound environment
+
+    @Test
+    public void testSomeVariablesBound() {
+        Expression expression = Expression.parse("a * x * x + b * x + a * b + y");
+        Map<String, Double> bound = new HashMap<>();
+        bound.put("a", 2.0);
+        bound.put("b", 3.0);
+        PartialEvaluator evaluator = PartialEvaluator.specialize(expression, bound);
+        assertEquals(Expression.parse("2 * x * x + 3 * x + 6 + y"), evaluator.residual());
+        assertEquals(Arrays.asList("x", "y"), evaluator.variables().stream().sorted().collect(Collectors.toList()));
+
+        Map<String, Double> environment = new HashMap<>(bound);
+        environment.put("x", 4.0);
+        environment.put("y", 5.0);
+        // 2*16 + 3*4 + 6 + 5
+        assertEquals(55.0, evaluator.evaluate(environment), 0.0);
+        double[] values = new double[2];
+        values[evaluator.variables().indexOf("x")] = 4.0;
+        values[evaluator.variables().indexOf("y")] = 5.0;
+        assertEquals(55.0, evaluator.evaluate(values), 0.0);
+    }
+
+    @Test
+    public void testAllVariablesBound() {
+        PartialEvaluator evaluator = PartialEvaluator.specialize(Expression.parse("x * (y + 1)"),
+                Map.of("x", 2.0, "y", 3.0, "z", 9.0));
+        assertEquals(new Number(8), evaluator.residual());
+        assertTrue(evaluator.variables().isEmpty());
+        assertEquals(8.0, evaluator.evaluate(new double[0]), 0.0);
+        assertEquals(8.0, evaluator.evaluate(Collections.<String, Double>emptyMap()), 0.0);
+    }
+
+    @Test
+    public void testNothingBound() {
+        Expression expression = Expression.parse("x + x");
+        PartialEvaluator evaluator = PartialEvaluator.specialize(expression, Collections.<String, Double>emptyMap());
+        assertEquals(Arrays.asList("x"), evaluator.variables());
+        assertEquals(6.0, evaluator.evaluate(new double[] {3.0}), 0.0);
+    }
+
+    @Test
+    public void testIdentitiesFolded() {
+        Map<String, Double> bound = Map.of("a", 0.0, "b", 1.0);
+        assertEquals(Expression.parse("x * y"),
+                PartialEvaluator.specialize(Expression.parse("(x + a) * (b * y) + a * z"), bound).residual());
+        assertEquals(Expression.parse("x * (y + 6)"),
+                PartialEvaluator.specialize(Expression.parse("x * (y + 3 + 1 + 2)").flatten(), bound).residual());
+        assertEquals(new Number(0),
+                PartialEvaluator.specialize(Expression.parse("x * y * a * z").flatten(), bound).residual());
+    }
+
+    @Test
+    public void testFlattenedOperations() {
+        Expression expression = Expression.parse("x + a + y + a * b").flatten();
+        PartialEvaluator evaluator = PartialEvaluator.specialize(expression, Map.of("a", 2.0, "b", 3.0));
+        assertTrue(evaluator.residual() instanceof Sum);
+        assertEquals(Expression.parse("x + y + 8"), evaluator.residual());
+        assertEquals(15.0, evaluator.evaluate(Map.of("x", 3.0, "y", 4.0)), 0.0);
+
+        Expression unchanged = Expression.parse("x * y * z").flatten();
+        assertSame(unchanged, PartialEvaluator.specialize(unchanged, Map.of("a", 2.0)).residual());
+    }
+
+    @Test
+    public void testWideProductOfSumsNotExpanded() {
+        StringBuilder source = new StringBuilder("(a + w)");
+        for (int i = 1; i < 20; i++) {
+            source.append(" * (").append((char) ('a' + i)).append(" + w)");
+        }
+        PartialEvaluator evaluator = PartialEvaluator.specialize(Expression.parse(source.toString()),
+                Collections.singletonMap("w", 1.0));
+        assertEquals(Expression.parse(source.toString().replace("w", "1")), evaluator.residual());
+        double[] values = new double[20];
+        assertEquals(1.0, evaluator.evaluate(values), 0.0);
+    }
+
+    @Test
+    public void testSharedSubexpressionsStayShared() {
+        Expression shared = Expression.parse("x * a + y");
+        Expression expression = new Multiplication(shared, new Addition(shared, new Variable("z")));
+        Expression residual = PartialEvaluator.specialize(expression, Collections.singletonMap("a", 2.0)).residual();
+        Multiplication product = (Multiplication) residual;
+        assertSame(product.getLeft(), ((Addition) product.getRight()).getLeft());
+        assertEquals(Expression.parse("(x * 2 + y) * ((x * 2 + y) + z)"), residual);
+    }
+
+    @Test
+    public void testDeepExpression() {
+        Expression expression = new Variable("x");
+        for (int i = 1; i < 200000; i++) {
+            expression = new Addition(expression, i % 2 == 0 ? new Variable("x") : new Variable("a"));
+        }
+        PartialEvaluator evaluator = PartialEvaluator.specialize(expression, Collections.singletonMap("a", 1.0));
+        assertEquals(Arrays.asList("x"), evaluator.variables());
+        assertEquals(300000.0, evaluator.evaluate(new double[] {2}), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingFreeVariable() {
+        PartialEvaluator.specialize(Expression.parse("x + y"), Collections.singletonMap("x", 1.0))
+                .evaluate(Collections.singletonMap("x", 1.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeBoundValue() {
+        PartialEvaluator.specialize(Expression.parse("x"), Collections.singletonMap("x", -1.0));
+    }
+}
@@ -0,0 +1,131 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for Polynomial and the simplify() it backs.
+ */
+public class PolynomialTest {
+
+    // Testing strategy:
+    //    - constant folding, partial and full substitution
+    //    - like-term collection, including cancellation to zero terms
+    //    - expansion of products of sums
+    //    - canonical form: equal polynomials from differently written expressions
+    //    - sums nested to the left and to the right
+    //    - products too large to expand: kept factored, still substituted and folded
+    //    - invalid environments
+
+    @Test
+    public void testSimplifyFoldsAllConstants() {
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 1.0);
+        environment.put("y", 2.0);
+        assertEquals(new Number(5), Expression.parse("x + 2 + y").simplify(environment));
+    }
+
+    @Test
+    public void testSimplifyCollectsLikeTerms() {
+        Expression expected = new Addition(new Number(4), new Multiplication(new Number(3), new Variable("x")));
+        assertEquals(expected, Expression.parse("x + x * 2 + 1 + 3").simplify(new HashMap<>()));
+    }
+
+    @Test
+    public void testSimplifyPartialSubstitution() {
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 2.0);
+        assertEquals(new Addition(new Number(2), new Variable("y")), Expression.parse("x + y").simplify(environment));
+    }
+
+    @Test
+    public void testExpandProductOfSums() {
+        // (x + 1) * (x + 1) = 1 + 2x + x*x
+        Expression expected = new Addition(
+                new Addition(new Number(1), new Multiplication(new Number(2), new Variable("x"))),
+                new Multiplication(new Variable("x"), new Variable("x")));
+        assertEquals(expected, Polynomial.of(Expression.parse("(x + 1) * (x + 1)")).toExpression());
+    }
+
+    @Test
+    public void testCanonicalFormIgnoresWriting() {
+        Polynomial p = Polynomial.of(Expression.parse("(x + 1) * 2 * y"));
+        Polynomial q = Polynomial.of(Expression.parse("y * 2 + x * y * 2"));
+        assertEquals(p, q);
+        assertEquals(p.hashCode(), q.hashCode());
+        assertEquals(p.toExpression(), q.toExpression());
+        assertNotEquals(p, Polynomial.of(Expression.parse("y * 2 + x * y")));
+    }
+
+    @Test
+    public void testAddMultiply() {
+        Polynomial x = Polynomial.variable("x");
+        Polynomial one = Polynomial.constant(1);
+        Polynomial square = x.add(one).multiply(x.add(one));
+        assertEquals(3, square.termCount());
+        assertEquals(1.0, square.constantTerm(), 0.0);
+        assertFalse(square.isConstant());
+        assertTrue(x.multiply(Polynomial.constant(0)).isConstant());
+        assertEquals(new Number(0), x.multiply(Polynomial.constant(0)).toExpression());
+    }
+
+    @Test
+    public void testRightNestedSum() {
+        Expression sum = new Variable("z");
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            name.setLength(0);
+            for (int n = i; n > 0; n /= 26) {
+                name.append((char) ('a' + n % 26));
+            }
+            sum = new Addition(new Variable("v" + name), sum);
+        }
+        assertEquals(20001, Polynomial.of(sum).termCount());
+    }
+
+    @Test
+    public void testWideProductOfSumsStaysFactored() {
+        // (xa + ya) * (xb + yb) * ... has 2^24 terms when expanded
+        StringBuilder input = new StringBuilder();
+        Map<String, Double> ones = new HashMap<>();
+        Map<String, Double> twos = new HashMap<>();
+        for (char c = 'a'; c < 'a' + 24; c++) {
+            input.append(input.length() == 0 ? "" : " * ").append("(x").append(c).append(" + y").append(c).append(")");
+            ones.put("x" + c, 1.0);
+            ones.put("y" + c, 1.0);
+            twos.put("y" + c, 2.0);
+        }
+        Expression product = Expression.parse(input.toString());
+
+        Expression simplified = product.simplify(new HashMap<>());
+        assertTrue(simplified.toString().length() < 100 * input.length());
+        assertEquals(new Number(1 << 24), product.simplify(ones));
+        assertEquals(new Number(1 << 24), simplified.simplify(ones));
+
+        // every y bound: each factor folds to x + 2, and the result is still small
+        Expression partial = product.simplify(twos);
+        assertTrue(partial.toString().length() < 100 * input.length());
+        assertFalse(partial.toString().contains("y"));
+        Map<String, Double> xs = new HashMap<>(ones);
+        xs.keySet().removeIf(name -> name.startsWith("y"));
+        assertEquals(new Number(Math.pow(3, 24)), partial.simplify(xs));
+    }
+
+    @Test
+    public void testSmallProductExpands() {
+        Expression simplified = Expression.parse("(a + b) * (c + d) * (e + f)").simplify(new HashMap<>());
+        assertEquals(Polynomial.of(Expression.parse("(a + b) * (c + d) * (e + f)")).toExpression(), simplified);
+        Expression zero = Expression.parse("(a + b) * (c + d) * (e + f) * (g + h) * (i + j) * (k + l) * (m + n) * (o + p) * (q + r) * 0");
+        assertEquals(new Number(0), zero.simplify(new HashMap<>()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidEnvironmentValue() {
+        Expression.parse("x").simplify(Collections.singletonMap("x", -1.0));
+    }
+}
@@ -0,0 +1,147 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+/**
+ * Tests for SemanticFingerprint and EquivalenceIndex.
+ */
+public class SemanticFingerprintTest {
+
+    // Testing strategy:
+    //    - equivalent expressions: commuted, regrouped, distributed, like terms collected,
+    //      constants folded, flattened, shared subexpressions, simplify() results
+    //    - inequivalent expressions: different variables, coefficients, degrees, constants
+    //    - constants: integers, fractions, large values, zero
+    //    - degree: shared squarings up to MAX_DEGREE, beyond it (where x^(p + 1) = x^2 mod p)
+    //    - EquivalenceIndex: add new and equivalent expressions, find present and absent,
+    //      concurrent adds
+
+    private static void assertEquivalent(String a, String b) {
+        assertEquals(a + " vs " + b, SemanticFingerprint.of(Expression.parse(a)), SemanticFingerprint.of(Expression.parse(b)));
+    }
+
+    private static void assertInequivalent(String a, String b) {
+        assertFalse(a + " vs " + b, SemanticFingerprint.of(Expression.parse(a)).equals(SemanticFingerprint.of(Expression.parse(b))));
+    }
+
+    @Test
+    public void testEquivalentExpressions() {
+        assertEquivalent("x + y", "y + x");
+        assertEquivalent("(x + 1) * 2", "x * 2 + 2");
+        assertEquivalent("x * (y * z)", "(z * x) * y");
+        assertEquivalent("x + x + x", "3 * x");
+        assertEquivalent("(x + y) * (x + y)", "x * x + 2 * x * y + y * y");
+        assertEquivalent("2 * 3 + 4", "10");
+        assertEquivalent("x * 0 + y", "y");
+        assertEquivalent("a + b + c + d", "d + (c + (b + a))");
+    }
+
+    @Test
+    public void testInequivalentExpressions() {
+        assertInequivalent("x", "y");
+        assertInequivalent("x + y", "x * y");
+        assertInequivalent("2 * x", "3 * x");
+        assertInequivalent("x * x", "x");
+        assertInequivalent("1", "2");
+        assertInequivalent("(x + 1) * (x + 1)", "x * x + 1");
+        assertInequivalent("xy", "x * y");
+    }
+
+    @Test
+    public void testForms() {
+        Expression expression = Expression.parse("(x + 2) * (y + 3) * x + y");
+        SemanticFingerprint fingerprint = SemanticFingerprint.of(expression);
+        assertEquals(fingerprint, SemanticFingerprint.of(expression.flatten()));
+        assertEquals(fingerprint, SemanticFingerprint.of(expression.simplify(new HashMap<>())));
+        assertEquals(fingerprint.hashCode(), SemanticFingerprint.of(expression.flatten()).hashCode());
+        assertEquals(32, fingerprint.toString().length());
+
+        Expression shared = Expression.parse("x + y");
+        assertEquals(SemanticFingerprint.of(Expression.parse("(x + y) * (x + y)")),
+                SemanticFingerprint.of(new Multiplication(shared, shared)));
+    }
+
+    @Test
+    public void testExactConstants() {
+        assertEquals(SemanticFingerprint.of(new Number(1)),
+                SemanticFingerprint.of(new Multiplication(new Number(0.5), new Number(2))));
+        assertEquals(SemanticFingerprint.of(new Number(0.75)),
+                SemanticFingerprint.of(new Addition(new Number(0.5), new Number(0.25))));
+        assertNotEquals(SemanticFingerprint.of(new Number(0.5)), SemanticFingerprint.of(new Number(0.25)));
+        assertEquals(SemanticFingerprint.of(new Number(Math.scalb(1.0, 200))),
+                SemanticFingerprint.of(new Multiplication(new Number(Math.scalb(1.0, 100)), new Number(Math.scalb(1.0, 100)))));
+        assertEquals(0, SemanticFingerprint.residue(0.0));
+        assertEquals(12345, SemanticFingerprint.residue(12345.0));
+    }
+
+    /** @return x squared count times, each square sharing its operand */
+    private static Expression squarings(int count) {
+        Expression expression = new Variable("x");
+        for (int i = 0; i < count; i++) {
+            expression = new Multiplication(expression, expression);
+        }
+        return expression;
+    }
+
+    @Test
+    public void testHighDegree() {
+        assertEquals(SemanticFingerprint.of(new Multiplication(squarings(31), squarings(31))), SemanticFingerprint.of(squarings(32)));
+        assertFalse(SemanticFingerprint.of(squarings(32)).equals(SemanticFingerprint.of(squarings(1))));
+        for (int count : new int[] { 33, 61, 200 }) {
+            try {
+                SemanticFingerprint.of(squarings(count));
+                fail("expected IllegalArgumentException for " + count + " squarings");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        EquivalenceIndex index = new EquivalenceIndex();
+        index.add(Expression.parse("x * x"));
+        try {
+            index.add(squarings(61));
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testIndex() {
+        EquivalenceIndex index = new EquivalenceIndex();
+        Expression first = Expression.parse("x * (y + 1)");
+        assertSame(first, index.add(first));
+        assertSame(first, index.add(Expression.parse("y * x + x")));
+        assertEquals(1, index.size());
+        assertSame(first, index.find(Expression.parse("x + x * y")).get());
+        assertFalse(index.find(Expression.parse("x + y")).isPresent());
+        index.add(Expression.parse("x + y"));
+        assertEquals(2, index.size());
+        assertEquals(2, index.representatives().size());
+    }
+
+    @Test
+    public void testIndexConcurrentAdds() {
+        EquivalenceIndex index = new EquivalenceIndex();
+        List<Expression> expressions = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            // 100 classes, each written 10 ways
+            int k = i % 100;
+            expressions.add(i % 2 == 0
+                    ? Expression.parse("x * " + k + " + y")
+                    : Expression.parse("y + " + k + " * x"));
+        }
+        IntStream.range(0, expressions.size()).parallel().forEach(i -> index.add(expressions.get(i)));
+        assertEquals(100, index.size());
+        for (Expression expression : expressions) {
+            assertEquals(SemanticFingerprint.of(expression), SemanticFingerprint.of(index.find(expression).get()));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for TaylorEvaluator.
+ */
+public class TaylorEvaluatorTest {
+
+    // Testing strategy:
+    //    - order 0, 1 and higher; order beyond the degree gives zeros
+    //    - expressions: constant, variable, sums, products, repeated and shared subexpressions,
+    //      flattened Sum and Product
+    //    - derivative agrees with differentiate() then simplify()
+    //    - variable not in the expression
+    //    - reuse of one evaluator with different orders
+    //    - invalid arguments
+
+    private static final Map<String, Double> ENVIRONMENT = new HashMap<>();
+    static {
+        ENVIRONMENT.put("x", 2.0);
+        ENVIRONMENT.put("y", 3.0);
+    }
+
+    @Test
+    public void testFirstDerivativeAgreesWithDifferentiate() {
+        for (String source : new String[] {"5", "x", "x + y", "x * y", "x * x * x + 2 * x * y",
+                "(x + 1) * (y + x) * (x + y)", "3 * (x + x * y) + y"}) {
+            for (Expression expression : Arrays.asList(Expression.parse(source), Expression.parseFlattened(source))) {
+                TaylorEvaluator evaluator = TaylorEvaluator.of(expression);
+                for (String variable : new String[] {"x", "y"}) {
+                    double expected = ((Number) expression.differentiate(variable).simplify(ENVIRONMENT)).getValue();
+                    assertEquals(source + " by " + variable, expected, evaluator.derivative(ENVIRONMENT, variable, 1), 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTaylorCoefficients() {
+        // x^3 + x at x = 2: value 10, f' = 3x^2 + 1 = 13, f''/2 = 3x = 6, f'''/6 = 1
+        TaylorEvaluator evaluator = TaylorEvaluator.of(Expression.parse("x * x * x + x"));
+        double[] coefficients = new double[5];
+        evaluator.taylor(new double[] {2}, 0, coefficients);
+        assertArrayEquals(new double[] {10, 13, 6, 1, 0}, coefficients, 0.0);
+        assertArrayEquals(new double[] {10, 13}, evaluator.valueAndDerivative(new double[] {2}, 0), 0.0);
+        assertEquals(12.0, evaluator.derivative(Collections.singletonMap("x", 2.0), "x", 2), 0.0);
+        assertEquals(6.0, evaluator.derivative(Collections.singletonMap("x", 2.0), "x", 3), 0.0);
+        assertEquals(10.0, evaluator.derivative(Collections.singletonMap("x", 2.0), "x", 0), 0.0);
+    }
+
+    @Test
+    public void testSharedSubexpressions() {
+        Expression square = Expression.parse("x * x");
+        TaylorEvaluator evaluator = TaylorEvaluator.of(new Multiplication(square, square));
+        // x^4 at x = 2: f' = 4x^3 = 32, f'' = 12x^2 = 48
+        assertEquals(32.0, evaluator.derivative(ENVIRONMENT, "x", 1), 0.0);
+        assertEquals(48.0, evaluator.derivative(ENVIRONMENT, "x", 2), 0.0);
+    }
+
+    @Test
+    public void testMixedVariables() {
+        TaylorEvaluator evaluator = TaylorEvaluator.of(Expression.parse("x * y * y"));
+        assertEquals(Arrays.asList("x", "y"), evaluator.variables());
+        assertEquals(9.0, evaluator.derivative(ENVIRONMENT, "x", 1), 0.0);
+        assertEquals(12.0, evaluator.derivative(ENVIRONMENT, "y", 1), 0.0);
+        assertEquals(4.0, evaluator.derivative(ENVIRONMENT, "y", 2), 0.0);
+        assertEquals(0.0, evaluator.derivative(ENVIRONMENT, "z", 1), 0.0);
+        assertEquals(18.0, evaluator.derivative(ENVIRONMENT, "z", 0), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingValue() {
+        TaylorEvaluator.of(Expression.parse("x + y")).derivative(Collections.singletonMap("x", 1.0), "x", 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadVariableIndex() {
+        TaylorEvaluator.of(Expression.parse("x")).taylor(new double[] {1}, 1, new double[2]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeOrder() {
+        TaylorEvaluator.of(Expression.parse("x")).derivative(ENVIRONMENT, "x", -1);
+    }
+}